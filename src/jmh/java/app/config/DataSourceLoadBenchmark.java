@@ -0,0 +1,117 @@
+package app.config;
+
+import app.core.TestDatabase;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feed queries from as many threads as Tomcat serves requests with, through
+ * a pool configured like application.properties and through a pool with a
+ * connection for every thread. If the pool were the bottleneck, the larger
+ * pool would get through the queries markedly faster; with the pool sized
+ * to the database, the extra connections only add contention on the server
+ * and the threads wait for a connection instead. The time spent waiting for
+ * a connection is printed after each run. Runs against the scratch database
+ * of {@link TestDatabase}:
+ *
+ *   TEST_DB_URL=jdbc:mysql://localhost:3306/twoter_test gradle jmh -Pjmh='DataSourceLoadBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(200)
+@Fork(1)
+public class DataSourceLoadBenchmark {
+
+    private static final int USERS = 100;
+    private static final int UPDATES_PER_USER = 50;
+
+    @Param({"20", "200"})
+    public int poolSize;
+
+    private DataSourceMetrics metrics;
+    private HikariDataSource pool;
+    private JdbcTemplate db;
+
+    @Setup
+    public void migrateAndSeed() {
+        final DriverManagerDataSource database = TestDatabase.migrated();
+        final JdbcTemplate seed = new JdbcTemplate(database);
+        final List<Object[]> users = new ArrayList<>();
+        final List<Object[]> updates = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"user" + i, i});
+            for (int j = 0; j < UPDATES_PER_USER; j++) {
+                updates.add(new Object[]{"update " + j, i, i * UPDATES_PER_USER + j});
+            }
+        }
+        seed.batchUpdate("INSERT INTO `users` (`first_name`, `last_name`, `username`, `password`, `created_at`) VALUES ('f', 'l', ?, 'p', ?)", users);
+        seed.batchUpdate("INSERT INTO `updates` (`content`, `user_id`, `created_at`) VALUES (?, ?, ?)", updates);
+
+        metrics = new DataSourceMetrics();
+        pool = (HikariDataSource) metrics.postProcessAfterInitialization(pool(database, poolSize), "dataSource");
+        db = new JdbcTemplate(pool);
+    }
+
+    @TearDown
+    public void close() {
+        System.out.println(String.format(
+                "pool of %d: %d us average wait for a connection, %d timeouts",
+                poolSize, metric("datasource.pool.acquire.avg.micros"), metric("datasource.pool.acquire.timeouts")
+        ));
+        pool.close();
+    }
+
+    /**
+     * A page of one user's updates, the query behind most feed requests.
+     */
+    @Benchmark
+    public Object feedPage() {
+        return db.queryForList(
+                "SELECT * FROM `updates` WHERE `user_id` = ? ORDER BY `created_at` DESC, `id` DESC LIMIT 10",
+                1 + ThreadLocalRandom.current().nextInt(USERS)
+        );
+    }
+
+    /**
+     * The pool of application.properties with the given size.
+     */
+    private static HikariDataSource pool(final DriverManagerDataSource database, final int size) {
+        final HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl(database.getUrl());
+        pool.setUsername(database.getUsername());
+        pool.setPassword(database.getPassword());
+        pool.setPoolName("load-" + size);
+        pool.setMaximumPoolSize(size);
+        pool.setMinimumIdle(size);
+        pool.setConnectionTimeout(3000);
+        pool.addDataSourceProperty("cachePrepStmts", "true");
+        pool.addDataSourceProperty("prepStmtCacheSize", "250");
+        pool.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        pool.addDataSourceProperty("useServerPrepStmts", "true");
+        pool.addDataSourceProperty("rewriteBatchedStatements", "true");
+
+        return pool;
+    }
+
+    private long metric(final String name) {
+        for (final Metric<?> metric : metrics.metrics()) {
+            if (name.equals(metric.getName())) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+}
@@ -0,0 +1,118 @@
+package app.core.repos;
+
+import app.core.DB;
+import app.core.TestDatabase;
+import app.core.cache.UserCache;
+import app.http.pojos.CursorPage;
+import app.http.pojos.Page;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one page of the global feed by page depth: the LIMIT offset
+ * query findPaged runs against the keyset query of findByCursor, for the
+ * same rows. Runs against the scratch database of {@link TestDatabase},
+ * seeded with enough updates for the deepest page:
+ *
+ *   TEST_DB_URL=jdbc:mysql://localhost:3306/twoter_test gradle jmh -Pjmh='UpdatePagingBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdatePagingBenchmark {
+
+    private static final int PAGES = 10000;
+    private static final int USERS = 100;
+    private static final int UPDATES_PER_SECOND = 4;
+    private static final int ROWS_PER_INSERT = 1000;
+
+    @Param({"1", "100", "1000", "10000"})
+    public int page;
+
+    private AnnotationConfigApplicationContext context;
+    private UpdateRepository updates;
+    private Page offsetPage;
+    private CursorPage cursorPage;
+
+    @Setup
+    public void migrateAndSeed() {
+        final DriverManagerDataSource dataSource = TestDatabase.migrated();
+        final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        seed(jdbc);
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("db", new DB(dataSource));
+        context.register(UserCache.class);
+        context.scan("app.core.repos");
+        context.refresh();
+        updates = context.getBean(UpdateRepository.class);
+
+        offsetPage = new Page();
+        offsetPage.setPage(page);
+        cursorPage = new CursorPage();
+        if (1 < page) {
+            // the cursor the previous page would have handed out
+            final Map<String, Object> last = jdbc.queryForMap(
+                    "SELECT `created_at`, `id` FROM `updates` ORDER BY `created_at` DESC, `id` DESC LIMIT ?, 1",
+                    (page - 1) * UpdateRepository.PAGE_SIZE - 1
+            );
+            cursorPage = new CursorPage(CursorPage.encode(
+                    ((Number) last.get("created_at")).longValue(),
+                    ((Number) last.get("id")).intValue()
+            ));
+        }
+    }
+
+    @TearDown
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object offset() {
+        return updates.findPaged(offsetPage);
+    }
+
+    @Benchmark
+    public Object cursor() {
+        return updates.findByCursor(cursorPage, null);
+    }
+
+    /**
+     * A few updates per second, so that pages end inside a second and the
+     * cursor needs its id tie-break.
+     */
+    private static void seed(final JdbcTemplate jdbc) {
+        final List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"user" + i, i});
+        }
+        jdbc.batchUpdate("INSERT INTO `users` (`first_name`, `last_name`, `username`, `password`, `created_at`) VALUES ('f', 'l', ?, 'p', ?)", users);
+
+        final int rows = PAGES * UpdateRepository.PAGE_SIZE;
+        for (int from = 0; from < rows; from += ROWS_PER_INSERT) {
+            final int to = Math.min(rows, from + ROWS_PER_INSERT);
+            final StringBuilder sql = new StringBuilder("INSERT INTO `updates` (`content`, `user_id`, `created_at`) VALUES ");
+            final List<Object> params = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                sql.append(i == from ? "" : ", ").append("(?, ?, ?)");
+                params.add("update " + i);
+                params.add(1 + i % USERS);
+                params.add(i / UPDATES_PER_SECOND);
+            }
+            jdbc.update(sql.toString(), params.toArray());
+        }
+        jdbc.queryForList("ANALYZE TABLE `updates`");
+    }
+
+}
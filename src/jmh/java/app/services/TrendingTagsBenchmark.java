@@ -0,0 +1,176 @@
+package app.services;
+
+import app.core.TestDatabase;
+import app.core.repos.TagRepository;
+import app.pojo.Tag;
+import app.pojo.TrendWindow;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Popular tags: the GROUP BY over update_tags that TagRepository.findMostPopular
+ * ran on every request, against TrendingTags. For the engine it times the
+ * request path, recording one link, and the background refresh that
+ * recomputes the top tags every few seconds.
+ *
+ * The SQL path runs against the scratch database of {@link TestDatabase}
+ * seeded with the given number of update_tags rows. Seeding 10M rows takes
+ * a few minutes; pass -p rows=... for a quicker run:
+ *
+ *   TEST_DB_URL=jdbc:mysql://localhost:3306/twoter_test gradle jmh -Pjmh='TrendingTagsBenchmark'
+ *
+ * The engine needs no database: its startup rebuild is fed links spread
+ * over the last day from a stub repository.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrendingTagsBenchmark {
+
+    private static final int TAGS = 10000;
+    private static final int DAY = 24 * 60 * 60;
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        private static final int FIRST_ROWS = 1000;
+
+        @Param({"10000000"})
+        public int rows;
+
+        private JdbcTemplate jdbc;
+
+        @Setup
+        public void migrateAndSeed() {
+            jdbc = new JdbcTemplate(TestDatabase.migrated());
+            final List<Object[]> tags = new ArrayList<>();
+            for (int i = 1; i <= TAGS; i++) {
+                tags.add(new Object[]{"tag" + i, i});
+            }
+            jdbc.batchUpdate("INSERT INTO `tags` (`name`, `created_at`) VALUES (?, ?)", tags);
+
+            // a skewed first batch, then copies of it under new update ids
+            final Random random = new Random(7);
+            final List<Object[]> links = new ArrayList<>();
+            for (int i = 1; i <= FIRST_ROWS; i++) {
+                links.add(new Object[]{1 + (int) (TAGS * Math.pow(random.nextDouble(), 3)), i});
+            }
+            jdbc.batchUpdate("INSERT INTO `update_tags` (`tag_id`, `update_id`) VALUES (?, ?)", links);
+            int count = jdbc.queryForObject("SELECT count(*) FROM `update_tags`", Integer.class);
+            int offset = FIRST_ROWS;
+            while (count < rows) {
+                final int copied = jdbc.update(
+                        "INSERT INTO `update_tags` (`tag_id`, `update_id`) SELECT `tag_id`, `update_id` + ? FROM `update_tags` LIMIT ?",
+                        offset,
+                        Math.min(count, rows - count)
+                );
+                count += copied;
+                offset *= 2;
+            }
+            jdbc.queryForList("ANALYZE TABLE `update_tags`");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+        private static final int LINKS = 1_000_000;
+
+        @Param({"10000"})
+        public int tracked;
+
+        private TrendingTags trendingTags;
+        private List<List<Tag>> links;
+        private int next;
+
+        @Setup
+        public void rebuild() {
+            final Random random = new Random(7);
+            final List<Tag> tags = new ArrayList<>(tracked);
+            for (int i = 1; i <= tracked; i++) {
+                final Tag tag = new Tag();
+                tag.setId(i);
+                tag.setName("tag" + i);
+                tags.add(tag);
+            }
+            trendingTags = new TrendingTags(new TagRepository() {
+                @Override
+                public List<Tag> findMostUsed(final int limit) {
+                    return tags.subList(0, limit);
+                }
+
+                @Override
+                public void forEachLinkBetween(final long since, final long until, final BiConsumer<Tag, Long> consumer) {
+                    // an hour short of a day, so nothing is evicted while measuring
+                    for (int i = 0; i < LINKS; i++) {
+                        consumer.accept(skewed(tags, random), until - random.nextInt(DAY - 3600));
+                    }
+                }
+            });
+            trendingTags.rebuild();
+
+            links = new ArrayList<>(1024);
+            for (int i = 0; i < 1024; i++) {
+                links.add(Collections.singletonList(skewed(tags, random)));
+            }
+        }
+
+        @TearDown
+        public void shutdown() {
+            trendingTags.shutdown();
+        }
+
+        private List<Tag> nextLink() {
+            next = (next + 1) & (links.size() - 1);
+
+            return links.get(next);
+        }
+
+        private static Tag skewed(final List<Tag> tags, final Random random) {
+            return tags.get((int) (tags.size() * Math.pow(random.nextDouble(), 3)));
+        }
+    }
+
+    /**
+     * TagRepository.findMostPopular before the engine.
+     */
+    @Benchmark
+    public List<Map<String, Object>> sql(final Database database) {
+        return database.jdbc.queryForList(
+                "SELECT t.id, t.name, t.created_at, t1.count " +
+                "FROM tags t " +
+                "JOIN (" +
+                    "SELECT tag_id, count(*) count " +
+                    "FROM update_tags " +
+                    "GROUP BY tag_id " +
+                    "ORDER BY count DESC" +
+                ") t1 ON t.id = t1.tag_id " +
+                "ORDER BY t1.count " +
+                "DESC LIMIT 5"
+        );
+    }
+
+    @Benchmark
+    public List<Tag> findTop(final Engine engine) {
+        return engine.trendingTags.findTop(TrendWindow.day);
+    }
+
+    @Benchmark
+    public void record(final Engine engine) {
+        engine.trendingTags.record(engine.nextLink(), System.currentTimeMillis() / 1000);
+    }
+
+    @Benchmark
+    public void refresh(final Engine engine) {
+        engine.trendingTags.refresh();
+    }
+
+}
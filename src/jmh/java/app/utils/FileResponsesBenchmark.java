@@ -0,0 +1,127 @@
+package app.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One image request: the byte[] response the controller used to return
+ * against FileResponses.send, with and without sendfile. Responses go to an
+ * output stream that discards them, so only the serving path is measured.
+ * Run with -prof gc to see the heap allocated per request, which is the
+ * point of FileResponses:
+ *
+ *   gradle jmh -Pjmh='FileResponsesBenchmark -prof gc'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileResponsesBenchmark {
+
+    @Param({"2097152"})
+    public int fileSize;
+
+    private File file;
+
+    @Setup
+    public void writeFile() throws IOException {
+        file = File.createTempFile("image", ".png");
+        final byte[] data = new byte[fileSize];
+        new Random(21).nextBytes(data);
+        try (final OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    @TearDown
+    public void deleteFile() {
+        file.delete();
+    }
+
+    /**
+     * ImageService.getFile and the ResponseEntity<byte[]> the controller
+     * returned before FileResponses.
+     */
+    @Benchmark
+    public long byteArray() throws IOException {
+        final DiscardingResponse response = new DiscardingResponse();
+        final byte[] data = new byte[(int) file.length()];
+        try (final InputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                read += in.read(data, read, data.length - read);
+            }
+        }
+        response.setContentType("image/png");
+        response.setContentLength(data.length);
+        response.getOutputStream().write(data);
+
+        return response.written;
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        final DiscardingResponse response = new DiscardingResponse();
+        FileResponses.send(new MockHttpServletRequest(), response, new FileSystemResource(file), "image/png");
+
+        return response.written;
+    }
+
+    @Benchmark
+    public Object sendfile() throws IOException {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        FileResponses.send(request, new DiscardingResponse(), new FileSystemResource(file), "image/png");
+
+        return request.getAttribute("org.apache.tomcat.sendfile.end");
+    }
+
+    private static class DiscardingResponse extends HttpServletResponseWrapper {
+        private long written;
+
+        private DiscardingResponse() {
+            super(new MockHttpServletResponse());
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(final int b) {
+                    written++;
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) {
+                    written += len;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(final WriteListener writeListener) {
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package app.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tag extraction from post-sized content: the scanner against the
+ * regex-per-character parser it replaced. Run with -prof gc to see the
+ * allocation per post as well:
+ *
+ *   gradle jmh -Pjmh='HashtagsBenchmark -prof gc'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashtagsBenchmark {
+
+    private static final String[] WORDS = {
+            "the", "release", "is", "out", "today", "and", "we", "finally", "fixed", "that", "bug",
+            "caf\u00e9", "\u65e5\u672c", "with", "friends", "at", "the", "beach", "\ud83d\ude00"
+    };
+    private static final String[] TAGS = {"#java", "#spring", "#summer", "#tbt", "#\u00e9t\u00e9", "#nofilter"};
+
+    @Param({"280"})
+    public int length;
+
+    private String[] posts;
+    private int next;
+
+    @Setup
+    public void createPosts() {
+        final Random random = new Random(8);
+        posts = new String[1024];
+        for (int i = 0; i < posts.length; i++) {
+            final StringBuilder post = new StringBuilder();
+            if (random.nextInt(4) == 0) {
+                post.append(TAGS[random.nextInt(TAGS.length)]);
+            }
+            while (post.length() < length) {
+                post.append(0 == post.length() ? "" : " ");
+                post.append(random.nextInt(8) == 0 ? TAGS[random.nextInt(TAGS.length)] : WORDS[random.nextInt(WORDS.length)]);
+            }
+            posts[i] = post.toString();
+        }
+    }
+
+    @Benchmark
+    public void scanner(final Blackhole blackhole) {
+        blackhole.consume(Hashtags.names(post()));
+    }
+
+    @Benchmark
+    public void legacy(final Blackhole blackhole) {
+        blackhole.consume(HashtagsTest.legacyTags(post()));
+    }
+
+    private String post() {
+        next = (next + 1) & (posts.length - 1);
+
+        return posts[next];
+    }
+
+}
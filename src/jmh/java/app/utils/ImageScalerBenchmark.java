@@ -0,0 +1,117 @@
+package app.utils;
+
+import app.pojo.ImageSize;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling one upload into every {@link ImageSize} variant: ImageScaler as
+ * ImagePipeline uses it against the single drawImage of the old
+ * ImageService.resize. Decoding and encoding are left out, they are the
+ * same for both.
+ *
+ * Sources are the JPEGs and PNGs in the directory given by -Dphotos, or
+ * else generated photo-like images: smooth gradients with sensor noise, in
+ * the 3-byte BGR layout ImageIO decodes JPEGs into.
+ *
+ *   gradle jmh -Pjmh='ImageScalerBenchmark -jvmArgs -Dphotos=/path/to/photos'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageScalerBenchmark {
+
+    private static final int MAX_SIDE = ImageSize.big.getSide();
+
+    @Param({"4032x3024", "1920x1080"})
+    public String generated;
+
+    private final List<BufferedImage> photos = new ArrayList<>();
+    private int next;
+
+    @Setup
+    public void loadPhotos() throws IOException {
+        ImageScaler.keepScratch();
+        final String directory = System.getProperty("photos");
+        final File[] files = null == directory ? null : new File(directory).listFiles();
+        if (null != files) {
+            for (final File file : files) {
+                final BufferedImage photo = ImageIO.read(file);
+                if (null != photo) {
+                    photos.add(photo);
+                }
+            }
+        }
+        if (photos.isEmpty()) {
+            final String[] size = generated.split("x");
+            for (int seed = 0; seed < 4; seed++) {
+                photos.add(photo(Integer.parseInt(size[0]), Integer.parseInt(size[1]), seed));
+            }
+        }
+    }
+
+    @Benchmark
+    public void scaler(final Blackhole blackhole) {
+        final BufferedImage source = ImageScaler.reduce(next(), MAX_SIDE, MAX_SIDE);
+        for (final ImageSize size : ImageSize.values()) {
+            blackhole.consume(ImageScaler.scale(source, size.getSide(), size.getSide(), ImageScaler.Mode.CROP));
+        }
+    }
+
+    @Benchmark
+    public void legacy(final Blackhole blackhole) {
+        final BufferedImage source = next();
+        for (final ImageSize size : ImageSize.values()) {
+            // ImageService.resize before the scaler, without the file IO
+            final BufferedImage output = new BufferedImage(size.getSide(), size.getSide(), source.getType());
+            final Graphics2D g2d = output.createGraphics();
+            g2d.drawImage(source, 0, 0, size.getSide(), size.getSide(), null);
+            g2d.dispose();
+            blackhole.consume(output);
+        }
+    }
+
+    private BufferedImage next() {
+        next = (next + 1) % photos.size();
+
+        return photos.get(next);
+    }
+
+    private static BufferedImage photo(final int width, final int height, final int seed) {
+        final Random random = new Random(seed);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        final int[] row = new int[width];
+        final int r = random.nextInt(128);
+        final int g = random.nextInt(128);
+        final int b = random.nextInt(128);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int noise = random.nextInt(17) - 8;
+                row[x] = clamp(r + 127 * x / width + noise) << 16
+                        | clamp(g + 127 * y / height + noise) << 8
+                        | clamp(b + 64 * (x + y) / (width + height) + noise);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+
+        return image;
+    }
+
+    private static int clamp(final int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+}
@@ -0,0 +1,143 @@
+package app.websocket.notification;
+
+import app.http.pojos.CustomUserDetails;
+import app.http.pojos.NotificationResponse;
+import app.pojo.Notification;
+import app.pojo.NotificationType;
+import app.pojo.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One post's notification fanned out to 100k followers, every one of them
+ * connected to this node: broadcast against serializing the whole response
+ * for every follower, as NotificationHandler.sendMessage did. Frames stop
+ * at sendMessage, so only building them is measured. Run with -prof gc to
+ * see the allocation per fan-out as well:
+ *
+ *   gradle jmh -Pjmh='NotificationBroadcastBenchmark -prof gc'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationBroadcastBenchmark {
+
+    @Param({"100000"})
+    public int followers;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private OutboundDispatcher outbound;
+    private NotificationHandler handler;
+    private List<WebSocketSession> sessions;
+    private List<Notification> targets;
+    private NotificationResponse shared;
+    private Blackhole blackhole;
+
+    @Setup
+    public void connectFollowers() throws Exception {
+        outbound = new OutboundDispatcher(256, OverflowPolicy.DROP_OLDEST, 1, 10_000);
+        handler = new NotificationHandler(outbound, new InMemoryNotificationBus()) {
+            @Override
+            protected void sendMessage(final WebSocketSession session, final TextMessage frame) {
+                blackhole.consume(frame);
+            }
+        };
+        sessions = new ArrayList<>(followers);
+        targets = new ArrayList<>(followers);
+        for (int i = 1; i <= followers; i++) {
+            final WebSocketSession session = session("s" + i, i);
+            handler.afterConnectionEstablished(session);
+            sessions.add(session);
+            final Notification target = new Notification();
+            target.setId(1_000_000 + i);
+            target.setToUserId(i);
+            targets.add(target);
+        }
+
+        final User from = new User();
+        from.setId(1);
+        from.setFirstName("Ada");
+        from.setLastName("Lovelace");
+        from.setUsername("ada");
+        shared = new NotificationResponse();
+        shared.setFromUserId(1);
+        shared.setRelId(42);
+        shared.setType(NotificationType.UPDATE_POSTED);
+        shared.setCreatedAt(1_500_000_000L);
+        shared.setFrom(from);
+    }
+
+    @TearDown
+    public void shutdown() {
+        outbound.shutdown();
+    }
+
+    @Benchmark
+    public void broadcast(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+        handler.broadcast(shared, targets);
+    }
+
+    /**
+     * NotificationHandler.sendMessage before broadcast, called for every
+     * follower with that follower's copy of the response.
+     */
+    @Benchmark
+    public void perFollower(final Blackhole blackhole) throws Exception {
+        for (int i = 0; i < targets.size(); i++) {
+            final Notification target = targets.get(i);
+            final NotificationResponse response = NotificationResponse.createFromNotification(target);
+            response.setFromUserId(shared.getFromUserId());
+            response.setRelId(shared.getRelId());
+            response.setType(shared.getType());
+            response.setCreatedAt(shared.getCreatedAt());
+            response.setFrom(shared.getFrom());
+            blackhole.consume(sessions.get(i));
+            blackhole.consume(new TextMessage(objectMapper.writeValueAsString(response)));
+        }
+    }
+
+    private static WebSocketSession session(final String id, final int userId) {
+        final UsernamePasswordAuthenticationToken principal = new UsernamePasswordAuthenticationToken(
+                new CustomUserDetails(userId, "user" + userId, "p", Collections.emptyList()),
+                null
+        );
+
+        return (WebSocketSession) Proxy.newProxyInstance(
+                NotificationBroadcastBenchmark.class.getClassLoader(),
+                new Class[]{WebSocketSession.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "isOpen":
+                            return true;
+                        case "getPrincipal":
+                            return principal;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return id;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+        );
+    }
+
+}
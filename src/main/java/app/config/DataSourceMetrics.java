@@ -0,0 +1,84 @@
+package app.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exports connection pool gauges (active, idle, total and pending
+ * connections) and connection acquire times of the Hikari pool.
+ */
+@SuppressWarnings("unused")
+@Component
+public class DataSourceMetrics implements BeanPostProcessor, MetricsTrackerFactory, PublicMetrics {
+
+    private volatile PoolStats poolStats;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Override
+    public Object postProcessBeforeInitialization(final Object bean, final String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+        if (bean instanceof HikariDataSource) {
+            ((HikariDataSource) bean).setMetricsTrackerFactory(this);
+        }
+
+        return bean;
+    }
+
+    @Override
+    public MetricsTracker create(final String poolName, final PoolStats poolStats) {
+        this.poolStats = poolStats;
+
+        return new MetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(final long elapsedAcquiredNanos) {
+                acquired.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                maxAcquireNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        final PoolStats stats = poolStats;
+        if (null == stats) {
+            return metrics;
+        }
+        final long count = acquired.sum();
+        metrics.add(new Metric<>("datasource.pool.active", stats.getActiveConnections()));
+        metrics.add(new Metric<>("datasource.pool.idle", stats.getIdleConnections()));
+        metrics.add(new Metric<>("datasource.pool.total", stats.getTotalConnections()));
+        metrics.add(new Metric<>("datasource.pool.pending", stats.getPendingThreads()));
+        metrics.add(new Metric<>("datasource.pool.acquire.count", count));
+        metrics.add(new Metric<>("datasource.pool.acquire.timeouts", timeouts.sum()));
+        metrics.add(new Metric<>("datasource.pool.acquire.avg.micros", 0 == count ? 0 : acquireNanos.sum() / count / 1000));
+        metrics.add(new Metric<>("datasource.pool.acquire.max.micros", maxAcquireNanos.get() / 1000));
+
+        return metrics;
+    }
+
+}
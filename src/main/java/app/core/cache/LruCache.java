@@ -0,0 +1,237 @@
+package app.core.cache;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Weight-bounded, access-ordered cache with an optional time to live. By
+ * default every entry weighs 1, which makes the bound an entry count.
+ * Values are shared between callers and must be treated as read-only.
+ *
+ * Loaders run outside the lock. A key invalidated while its value is being
+ * loaded may have been loaded from the state before the change, so every
+ * invalidation bumps the generation of the key's stripe and a loaded value
+ * is only cached if its stripe's generation is unchanged.
+ */
+public class LruCache<K, V> {
+
+    private static final int STRIPES = 1024;
+
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    // bumped under the lock by every invalidation of a key in the stripe
+    private final long[] generations = new long[STRIPES];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruCache(final int maxSize, final long ttlMillis) {
+        this(maxSize, ttlMillis, value -> 1);
+    }
+
+    public LruCache(final long maxWeight, final long ttlMillis, final ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+    }
+
+    public V get(final K key) {
+        final V value;
+        synchronized (entries) {
+            value = getFresh(key);
+        }
+        (null == value ? misses : hits).incrementAndGet();
+
+        return value;
+    }
+
+    public V get(final K key, final Function<K, V> loader) {
+        final V cached = get(key);
+        if (null != cached) {
+            return cached;
+        }
+        final long generation;
+        synchronized (entries) {
+            generation = generations[stripe(key)];
+        }
+        final V loaded = loader.apply(key);
+        if (null != loaded) {
+            synchronized (entries) {
+                if (generations[stripe(key)] == generation) {
+                    putLocked(key, loaded);
+                    evictOverweight();
+                }
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Returns every cached value for the given keys and loads the missing
+     * ones with a single call to the loader. Loaded values of keys
+     * invalidated during the load are returned but not cached.
+     */
+    public Map<K, V> getAll(final Collection<K> keys, final Function<Set<K>, Map<K, V>> loader) {
+        final Map<K, V> result = new HashMap<>();
+        final Set<K> missing = new HashSet<>();
+        final Map<K, Long> loading = new HashMap<>();
+        synchronized (entries) {
+            for (final K key : keys) {
+                final V value = getFresh(key);
+                if (null == value) {
+                    missing.add(key);
+                    loading.put(key, generations[stripe(key)]);
+                } else {
+                    result.put(key, value);
+                }
+            }
+        }
+        hits.addAndGet(result.size());
+        misses.addAndGet(missing.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        final Map<K, V> loaded = loader.apply(missing);
+        synchronized (entries) {
+            for (final Map.Entry<K, V> entry : loaded.entrySet()) {
+                final Long generation = loading.get(entry.getKey());
+                if (null != generation && generations[stripe(entry.getKey())] == generation) {
+                    putLocked(entry.getKey(), entry.getValue());
+                }
+            }
+            evictOverweight();
+        }
+        result.putAll(loaded);
+
+        return result;
+    }
+
+    public void put(final K key, final V value) {
+        synchronized (entries) {
+            putLocked(key, value);
+            evictOverweight();
+        }
+    }
+
+    /**
+     * Re-weighs an entry whose value changed size in place.
+     */
+    public void reweigh(final K key) {
+        synchronized (entries) {
+            final Entry<V> entry = entries.get(key);
+            if (null == entry) {
+                return;
+            }
+            final long updated = weigher.applyAsLong(entry.value);
+            weight += updated - entry.weight;
+            entry.weight = updated;
+            evictOverweight();
+        }
+    }
+
+    public void invalidate(final K key) {
+        synchronized (entries) {
+            generations[stripe(key)]++;
+            remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            for (int i = 0; i < STRIPES; i++) {
+                generations[i]++;
+            }
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long weight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private V getFresh(final K key) {
+        final Entry<V> entry = entries.get(key);
+        if (null == entry) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            remove(key);
+            evictions.incrementAndGet();
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    private void putLocked(final K key, final V value) {
+        final Entry<V> entry = new Entry<>(value, weigher.applyAsLong(value), expiresAt());
+        final Entry<V> previous = entries.put(key, entry);
+        weight += entry.weight - (null == previous ? 0 : previous.weight);
+    }
+
+    private void remove(final K key) {
+        final Entry<V> removed = entries.remove(key);
+        if (null != removed) {
+            weight -= removed.weight;
+        }
+    }
+
+    private void evictOverweight() {
+        final Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static int stripe(final Object key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private long expiresAt() {
+        return 0 < ttlMillis ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private long weight;
+        private final long expiresAt;
+
+        private Entry(final V value, final long weight, final long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
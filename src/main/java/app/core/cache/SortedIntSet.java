@@ -0,0 +1,71 @@
+package app.core.cache;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of ints kept as a sorted primitive array: 4 bytes per element
+ * plus growth slack, O(log n) lookups and O(n) updates. Meant for sets that
+ * are read far more often than they change.
+ */
+public class SortedIntSet {
+
+    // header, array reference and size, then the array's header, with compressed references
+    private static final int OBJECT_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private int[] values;
+    private int size;
+
+    public SortedIntSet(final int[] values, final int size) {
+        this.values = values;
+        this.size = size;
+        Arrays.sort(this.values, 0, size);
+    }
+
+    public synchronized boolean contains(final int value) {
+        return 0 <= Arrays.binarySearch(values, 0, size, value);
+    }
+
+    public synchronized boolean add(final int value) {
+        final int index = Arrays.binarySearch(values, 0, size, value);
+        if (0 <= index) {
+            return false;
+        }
+        final int insertAt = -index - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        values[insertAt] = value;
+        size++;
+
+        return true;
+    }
+
+    public synchronized boolean remove(final int value) {
+        final int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Heap used by the set and its array, including the unused capacity.
+     */
+    public synchronized long bytes() {
+        return OBJECT_BYTES + align(ARRAY_HEADER_BYTES + 4L * values.length);
+    }
+
+    private static long align(final long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+}
@@ -0,0 +1,45 @@
+package app.core.cache;
+
+import app.pojo.User;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Small user projection (id, names, username, created_at) used to hydrate
+ * feed, comment and notification responses.
+ */
+@Component
+public class UserCache implements PublicMetrics {
+
+    private static final int MAX_SIZE = 50_000;
+    private static final long TTL = 10 * 60 * 1000;
+
+    private final LruCache<Integer, User> cache = new LruCache<>(MAX_SIZE, TTL);
+
+    public Map<Integer, User> getAll(final Set<Integer> ids, final Function<Set<Integer>, Map<Integer, User>> loader) {
+        return cache.getAll(ids, loader);
+    }
+
+    public void invalidate(final int userId) {
+        cache.invalidate(userId);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("cache.user.size", cache.size()));
+        metrics.add(new Metric<>("cache.user.hit", cache.getHits()));
+        metrics.add(new Metric<>("cache.user.miss", cache.getMisses()));
+        metrics.add(new Metric<>("cache.user.eviction", cache.getEvictions()));
+
+        return metrics;
+    }
+
+}
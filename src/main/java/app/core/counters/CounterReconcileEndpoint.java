@@ -0,0 +1,45 @@
+package app.core.counters;
+
+import org.springframework.boot.actuate.endpoint.mvc.AbstractMvcEndpoint;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.*;
+
+/**
+ * POST /counters/reconcile on the management port starts correcting every
+ * counter, or the ones given as type parameters, in the background; e.g.
+ * after a node crashed with buffered deltas. Progress is reported by the
+ * counters.reconcile.* metrics.
+ */
+@SuppressWarnings("unused")
+@Component
+public class CounterReconcileEndpoint extends AbstractMvcEndpoint {
+
+    private final WriteBehindCounters counters;
+
+    CounterReconcileEndpoint(final WriteBehindCounters counters) {
+        super("/counters/reconcile", true);
+        this.counters = counters;
+    }
+
+    @PostMapping
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> reconcile(
+            final @RequestParam(value = "type", required = false) List<CounterType> types
+    ) {
+        final boolean started = counters.reconcile(
+                null == types || types.isEmpty() ? Arrays.asList(CounterType.values()) : types
+        );
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("started", started);
+        body.put("running", counters.isReconciling());
+
+        return new ResponseEntity<>(body, started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT);
+    }
+
+}
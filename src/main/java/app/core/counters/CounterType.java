@@ -0,0 +1,61 @@
+package app.core.counters;
+
+public enum CounterType {
+    UPDATE_LIKES("updates", "likes", "update_likes", "update_id", null),
+    UPDATE_COMMENTS("updates", "comments", "comments", "update_id", null),
+    COMMENT_LIKES("comments", "likes", "comment_likes", "comment_id", null),
+    USER_FOLLOWERS("users", "followers", "followers", "followed_id", null),
+    USER_FOLLOWING("users", "following", "followers", "follower_id", null),
+    USER_UNREAD_NOTIFICATIONS("users", "unread_notifications", "notifications", "to_user_id", "`seen` = 0"),
+    TAG_USES("tags", "uses", "update_tags", "tag_id", null);
+
+    private final String table;
+    private final String column;
+    private final String sourceTable;
+    private final String sourceColumn;
+    private final String sourceCondition;
+
+    CounterType(
+            final String table,
+            final String column,
+            final String sourceTable,
+            final String sourceColumn,
+            final String sourceCondition
+    ) {
+        this.table = table;
+        this.column = column;
+        this.sourceTable = sourceTable;
+        this.sourceColumn = sourceColumn;
+        this.sourceCondition = sourceCondition;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Table holding the rows the counter counts.
+     */
+    public String getSourceTable() {
+        return sourceTable;
+    }
+
+    /**
+     * Column of the source table referencing the counter's row; it is
+     * indexed, so the source rows of an id range are read without a scan.
+     */
+    public String getSourceColumn() {
+        return sourceColumn;
+    }
+
+    /**
+     * Extra condition a source row has to meet to be counted, or null.
+     */
+    public String getSourceCondition() {
+        return sourceCondition;
+    }
+}
@@ -0,0 +1,422 @@
+package app.core.counters;
+
+import app.core.repos.CounterRepository;
+import app.core.repos.CounterRepository.Drift;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Buffers increments of hot counter columns (likes, comments, followers) in
+ * per-row LongAdders and writes them as one batched UPDATE per counter type
+ * every FLUSH_MILLIS, so concurrent likes on one update no longer queue on
+ * its row lock.
+ *
+ * Deltas are added only after the surrounding transaction commits. Pending
+ * and in-flight deltas are visible through {@link #pending}, so readers can
+ * merge them into values read from the database. A type's in-flight deltas
+ * keep counting from the moment its batch is sent until it has settled,
+ * i.e. they are taken out of pending() some time after the commit, or are
+ * buffered again. A load in between may already see the commit and count
+ * them twice, so values are merged through {@link #read}, which does not
+ * use a load that overlapped a batch.
+ *
+ * Each type's batch is applied in one transaction, so a failed batch is
+ * rolled back as a whole and its deltas are buffered again. Deltas buffered
+ * at the time of a crash are lost, and a batch whose commit outcome is
+ * unknown may be applied twice; {@link #reconcile} corrects such rows when
+ * it is started through CounterReconcileEndpoint.
+ */
+@SuppressWarnings("unused")
+@Component
+public class WriteBehindCounters implements PublicMetrics {
+
+    private static final long FLUSH_MILLIS = 1000;
+    // every node flushes what it buffered within this time
+    private static final long SETTLE_MILLIS = 3 * FLUSH_MILLIS;
+    private static final int RECONCILE_CHUNK = 10_000;
+    private static final int MAX_READS = 3;
+    private static final long SETTLE_WAIT_MILLIS = 200;
+
+    private final CounterRepository counterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService reconciler;
+
+    // swapped and settled under swapLock's write lock, read under its read lock
+    private volatile Map<Key, LongAdder> pending = new ConcurrentHashMap<>();
+    private final Map<Key, Long> flushing = new HashMap<>();
+    // batches sent so far, counted before apply(), and batches settled so
+    // far, counted when their deltas leave flushing; they differ while a
+    // batch is in flight
+    private final AtomicLong applying = new AtomicLong();
+    private final AtomicLong settled = new AtomicLong();
+    private final Object settledSignal = new Object();
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+    private final AtomicLong corrected = new AtomicLong();
+    private final AtomicLong unsettled = new AtomicLong();
+
+    WriteBehindCounters(final CounterRepository counterRepository, final PlatformTransactionManager transactionManager) {
+        this.counterRepository = counterRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "counter-flusher");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        this.reconciler = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "counter-reconciler");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    public void increment(final CounterType type, final int id) {
+        add(type, id, 1);
+    }
+
+    public void decrement(final CounterType type, final int id) {
+        add(type, id, -1);
+    }
+
+    public void add(final CounterType type, final int id, final long delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            addNow(new Key(type, id), delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                addNow(new Key(type, id), delta);
+            }
+        });
+    }
+
+    /**
+     * Adds a delta whose transaction has already committed, e.g. from an
+     * afterCommit callback, where add() would wait for a commit that has
+     * already happened.
+     */
+    public void addCommitted(final CounterType type, final int id, final long delta) {
+        addNow(new Key(type, id), delta);
+    }
+
+    /**
+     * Delta not yet visible in the database for the given row.
+     */
+    public long pending(final CounterType type, final int id) {
+        final Key key = new Key(type, id);
+        swapLock.readLock().lock();
+        try {
+            final LongAdder adder = pending.get(key);
+            final Long inFlight = flushing.get(key);
+
+            return (null == adder ? 0 : adder.sum()) + (null == inFlight ? 0 : inFlight);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads stored values and merges their deltas through pending(). While
+     * a batch is between apply() and settling, a load may or may not see its
+     * commit while pending() still holds its deltas, so a batch in flight is
+     * waited for first, up to SETTLE_WAIT_MILLIS, and the load is repeated
+     * when a batch was sent meanwhile, up to MAX_READS times; the last
+     * result may then still be off by that batch until the next read. Both
+     * functions may run more than once.
+     */
+    public <T, R> R read(final Supplier<T> load, final Function<T, R> withPending) {
+        for (int reads = 1; ; reads++) {
+            final long settledBefore = settled.get();
+            final long applyingBefore = applying.get();
+            final boolean inFlight = applyingBefore != settledBefore;
+            if (inFlight && MAX_READS > reads) {
+                awaitSettled(settledBefore);
+                continue;
+            }
+            final R merged = withPending.apply(load.get());
+            if ((!inFlight && applying.get() == applyingBefore) || MAX_READS <= reads) {
+                return merged;
+            }
+        }
+    }
+
+    /**
+     * Changes whenever a batch is sent or settles, and is odd while one is
+     * in flight. A caller that keeps a value merged through read() can take
+     * it in the load and keep the value only if it is even and unchanged
+     * after the merge.
+     */
+    public long epoch() {
+        final long settledBefore = settled.get();
+
+        return settledBefore + applying.get();
+    }
+
+    private void awaitSettled(final long settledBefore) {
+        final long until = System.currentTimeMillis() + SETTLE_WAIT_MILLIS;
+        synchronized (settledSignal) {
+            try {
+                long left = SETTLE_WAIT_MILLIS;
+                while (settled.get() == settledBefore && 0 < left) {
+                    settledSignal.wait(left);
+                    left = until - System.currentTimeMillis();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts correcting the given counters in the background, unless a
+     * reconciliation is already running. Rows are read RECONCILE_CHUNK ids
+     * at a time without locking them, and add() is never blocked.
+     *
+     * The difference between a row's source count and its stored value also
+     * holds deltas that are committed but still buffered, here or on another
+     * node. Those are flushed within SETTLE_MILLIS and change the stored
+     * value or the count, so a row is corrected only if both are unchanged
+     * when read again after SETTLE_MILLIS and nothing is buffered for it
+     * here. The correction is added like any other delta rather than
+     * overwriting the column, so concurrent flushes still count.
+     */
+    public boolean reconcile(final Collection<CounterType> types) {
+        if (!reconciling.compareAndSet(false, true)) {
+            return false;
+        }
+        final List<CounterType> queued = new ArrayList<>(types);
+        try {
+            reconciler.execute(() -> {
+                try {
+                    for (final CounterType type : queued) {
+                        reconcile(type);
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (final Exception e) {
+                    System.out.println(e.getMessage());
+                } finally {
+                    reconciling.set(false);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            reconciling.set(false);
+            return false;
+        }
+
+        return true;
+    }
+
+    public boolean isReconciling() {
+        return reconciling.get();
+    }
+
+    private void reconcile(final CounterType type) throws InterruptedException {
+        final int maxId = counterRepository.findMaxId(type);
+        for (int fromId = 0; fromId <= maxId; fromId += RECONCILE_CHUNK) {
+            final int toId = fromId + RECONCILE_CHUNK;
+            final List<Drift> drifted = counterRepository.findDrifted(type, fromId, toId);
+            if (drifted.isEmpty()) {
+                continue;
+            }
+            Thread.sleep(SETTLE_MILLIS);
+            final Set<Drift> settled = new HashSet<>(counterRepository.findDrifted(type, fromId, toId));
+            final Map<Integer, Long> corrections = new TreeMap<>();
+            for (final Drift drift : drifted) {
+                if (settled.contains(drift) && 0 == pending(type, drift.getId())) {
+                    corrections.put(drift.getId(), drift.getCounted() - drift.getStored());
+                } else {
+                    unsettled.incrementAndGet();
+                }
+            }
+            apply(type, corrections);
+            corrected.addAndGet(corrections.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reconciler.shutdownNow();
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    private void addNow(final Key key, final long delta) {
+        swapLock.readLock().lock();
+        try {
+            pending.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final Exception e) {
+            failedFlushes.incrementAndGet();
+            System.out.println(e.getMessage());
+        }
+    }
+
+    synchronized void flush() {
+        final Map<Key, Long> snapshot = new HashMap<>();
+        swapLock.writeLock().lock();
+        try {
+            final Map<Key, LongAdder> swapped = pending;
+            pending = new ConcurrentHashMap<>();
+            for (final Map.Entry<Key, LongAdder> entry : swapped.entrySet()) {
+                final long delta = entry.getValue().sum();
+                if (0 != delta) {
+                    snapshot.put(entry.getKey(), delta);
+                }
+            }
+            flushing.putAll(snapshot);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        if (snapshot.isEmpty()) {
+            return;
+        }
+
+        // ids in order, so concurrent flushes from several nodes lock rows in the same order
+        final Map<CounterType, Map<Integer, Long>> byType = new EnumMap<>(CounterType.class);
+        for (final Map.Entry<Key, Long> entry : snapshot.entrySet()) {
+            byType.computeIfAbsent(entry.getKey().type, t -> new TreeMap<>()).put(entry.getKey().id, entry.getValue());
+        }
+        RuntimeException failure = null;
+        try {
+            for (final Map.Entry<CounterType, Map<Integer, Long>> deltas : byType.entrySet()) {
+                applying.incrementAndGet();
+                try {
+                    apply(deltas.getKey(), deltas.getValue());
+                    settle(deltas.getKey(), deltas.getValue(), false);
+                    flushedRows.addAndGet(deltas.getValue().size());
+                } catch (final RuntimeException e) {
+                    // rolled back as a whole, so none of these deltas were applied
+                    settle(deltas.getKey(), deltas.getValue(), true);
+                    failure = null == failure ? e : failure;
+                }
+            }
+        } finally {
+            swapLock.writeLock().lock();
+            try {
+                flushing.clear();
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        }
+        if (null != failure) {
+            throw failure;
+        }
+        flushes.incrementAndGet();
+    }
+
+    /**
+     * Takes a type's deltas out of the in-flight map once its batch has
+     * committed, or moves them back into pending if it was rolled back, in
+     * one step for readers of pending(), and wakes reads waiting for it.
+     */
+    private void settle(final CounterType type, final Map<Integer, Long> deltas, final boolean rebuffer) {
+        swapLock.writeLock().lock();
+        try {
+            for (final Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+                final Key key = new Key(type, delta.getKey());
+                flushing.remove(key);
+                if (rebuffer) {
+                    pending.computeIfAbsent(key, k -> new LongAdder()).add(delta.getValue());
+                }
+            }
+            settled.incrementAndGet();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        synchronized (settledSignal) {
+            settledSignal.notifyAll();
+        }
+    }
+
+    private void apply(final CounterType type, final Map<Integer, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        transactionTemplate.execute(status -> {
+            counterRepository.applyDeltas(type, deltas);
+
+            return null;
+        });
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("counters.pending", pending.size()));
+        metrics.add(new Metric<>("counters.flushes", flushes.get()));
+        metrics.add(new Metric<>("counters.flushed.rows", flushedRows.get()));
+        metrics.add(new Metric<>("counters.flushes.failed", failedFlushes.get()));
+        metrics.add(new Metric<>("counters.reconcile.running", reconciling.get() ? 1 : 0));
+        metrics.add(new Metric<>("counters.reconcile.corrected", corrected.get()));
+        metrics.add(new Metric<>("counters.reconcile.unsettled", unsettled.get()));
+
+        return metrics;
+    }
+
+    private static class Key {
+        private final CounterType type;
+        private final int id;
+
+        private Key(final CounterType type, final int id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+
+            return id == key.id && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + id;
+        }
+    }
+
+}
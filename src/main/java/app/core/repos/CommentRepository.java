@@ -55,7 +55,7 @@ public class CommentRepository extends BaseRepository implements CommentReposito
 
     @Override
     public List<Comment> findByUpdateId(final int updateId) {
-        final String sql = "SELECT `id`, `content`, `user_id`, `update_id` " +
+        final String sql = "SELECT * " +
                 " FROM `comments` " +
                 " WHERE `update_id` = :updateId " +
                 " ORDER BY `created_at` DESC ";
@@ -90,17 +90,17 @@ public class CommentRepository extends BaseRepository implements CommentReposito
     }
 
     @Override
-    public void incrementCommentLikes(final int commentId) {
-        final String sql = "UPDATE `comments` SET `likes` = `likes` + 1 WHERE `id` = :id";
-
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", commentId));
-    }
-
-    @Override
-    public void decrementCommentLikes(final int commentId) {
-        final String sql = "UPDATE `comments` SET `likes` = `likes` - 1 WHERE `id` = :id";
-
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", commentId));
+    public Integer findOwnerId(final int id) {
+        final String sql = "SELECT `user_id` FROM `comments` WHERE `id` = :id LIMIT 1";
+        try {
+            return db.getJdbcTemplate().queryForObject(
+                    sql,
+                    new MapSqlParameterSource("id", id),
+                    Integer.class
+            );
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     @Override
@@ -0,0 +1,94 @@
+package app.core.repos;
+
+import app.core.DB;
+import app.core.counters.CounterType;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+@SuppressWarnings("unused")
+@Component
+public class CounterRepository extends BaseRepository {
+
+    private final DB db;
+
+    CounterRepository(final DB db) {
+        this.db = db;
+    }
+
+    public void applyDeltas(final CounterType type, final Map<Integer, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        final String sql = String.format(
+                "UPDATE `%1$s` SET `%2$s` = `%2$s` + :delta WHERE `id` = :id",
+                type.getTable(),
+                type.getColumn()
+        );
+        final SqlParameterSource[] batch = new SqlParameterSource[deltas.size()];
+        int i = 0;
+        for (final Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+            batch[i++] = new MapSqlParameterSource("id", delta.getKey())
+                    .addValue("delta", delta.getValue());
+        }
+
+        db.getJdbcTemplate().batchUpdate(sql, batch);
+    }
+
+    public int findMaxId(final CounterType type) {
+        final String sql = String.format("SELECT IFNULL(MAX(`id`), 0) FROM `%s`", type.getTable());
+
+        return db.getJdbcTemplate().queryForObject(sql, new MapSqlParameterSource(), Integer.class);
+    }
+
+    /**
+     * Rows with fromId <= id < toId whose stored counter differs from the
+     * number of their source rows. Both come from one consistent read and
+     * no row is locked.
+     */
+    public List<Drift> findDrifted(final CounterType type, final int fromId, final int toId) {
+        final String condition = null == type.getSourceCondition() ? "" : " AND " + type.getSourceCondition();
+        final String sql = String.format(
+                " SELECT t.`id`, t.`%2$s` AS stored, IFNULL(s.c, 0) AS counted " +
+                " FROM `%1$s` t " +
+                " LEFT JOIN ( " +
+                "     SELECT `%4$s` AS id, count(*) AS c " +
+                "     FROM `%3$s` " +
+                "     WHERE `%4$s` >= :fromId AND `%4$s` < :toId %5$s " +
+                "     GROUP BY `%4$s` " +
+                " ) s ON s.id = t.`id` " +
+                " WHERE t.`id` >= :fromId AND t.`id` < :toId AND t.`%2$s` <> IFNULL(s.c, 0) ",
+                type.getTable(),
+                type.getColumn(),
+                type.getSourceTable(),
+                type.getSourceColumn(),
+                condition
+        );
+        final MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("fromId", fromId)
+                .addValue("toId", toId);
+
+        return db.query(
+                sql,
+                params,
+                (final ResultSet rs, final int row) -> new Drift(rs.getInt("id"), rs.getLong("stored"), rs.getLong("counted"))
+        );
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Drift {
+        private final int id;
+        private final long stored;
+        private final long counted;
+    }
+
+}
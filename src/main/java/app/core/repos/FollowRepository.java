@@ -27,12 +27,17 @@ public class FollowRepository extends BaseRepository implements FollowRepository
         this.db = db;
     }
 
+    /**
+     * Returns false when the follow already exists; the unique
+     * (follower_id, followed_id) key makes a repeated follow insert nothing,
+     * so FollowService moves the counters once.
+     */
     @Override
     public boolean follow(final int followerId, final int followedId) {
         final String sql =
-                " INSERT INTO `followers` (`follower_id`, `followed_id`, `followed_at`) " +
+                " INSERT IGNORE INTO `followers` (`follower_id`, `followed_id`, `followed_at`) " +
                 "                  VALUES (:followerId, :followedId, :followedAt)";
-        final int followedAt = (int) System.currentTimeMillis() / 1000;
+        final int followedAt = (int) (System.currentTimeMillis() / 1000);
         final Map<String, Integer> params = new HashMap<>();
         params.put("followerId", followerId);
         params.put("followedId", followedId);
@@ -76,14 +81,52 @@ public class FollowRepository extends BaseRepository implements FollowRepository
         }
     }
 
+    /**
+     * One page of a user's followers in follower id order, starting after
+     * the given follower id (0 for the first page).
+     */
     @Override
-    public List<Integer> getFollowersOf(final int userId) {
-        final String sql = "SELECT `follower_id` FROM `followers` WHERE `followed_id` = :userId";
+    public List<Integer> getFollowersOf(final int userId, final int afterFollowerId, final int limit) {
+        final String sql =
+                " SELECT `follower_id` " +
+                " FROM `followers` " +
+                " WHERE `followed_id` = :userId AND `follower_id` > :afterFollowerId " +
+                " ORDER BY `follower_id` " +
+                " LIMIT :limit ";
+        final MapSqlParameterSource params = new MapSqlParameterSource("userId", userId)
+                .addValue("afterFollowerId", afterFollowerId)
+                .addValue("limit", limit);
+
+        return db.query(sql, params, (final ResultSet rs, final int row) -> rs.getInt("follower_id"));
+    }
+
+    /**
+     * The number of a user's followers, counted up to the given limit.
+     */
+    @Override
+    public int countFollowersOf(final int userId, final int limit) {
+        final String sql =
+                " SELECT count(*) FROM (" +
+                "     SELECT 1 FROM `followers` WHERE `followed_id` = :userId LIMIT :limit" +
+                " ) f ";
+        final MapSqlParameterSource params = new MapSqlParameterSource("userId", userId)
+                .addValue("limit", limit);
+
+        return db.getJdbcTemplate().queryForObject(sql, params, Integer.class);
+    }
+
+    @Override
+    public List<Integer> getFollowedFannedOutOnRead(final int userId) {
+        final String sql =
+                " SELECT f.`followed_id` " +
+                " FROM `followers` f " +
+                " JOIN `users` u ON u.`id` = f.`followed_id` " +
+                " WHERE f.`follower_id` = :userId AND u.`fan_out_on_read` = 1 ";
         try {
             final List<Integer> result = db.query(
                     sql,
                     new MapSqlParameterSource("userId", userId),
-                    (final ResultSet rs, final int row) -> rs.getInt("follower_id")
+                    (final ResultSet rs, final int row) -> rs.getInt("followed_id")
             );
 
             return result;
@@ -4,11 +4,11 @@ import app.core.DB;
 import app.core.repos.intefaces.ImageRepositoryInterface;
 import app.core.repos.intefaces.UserRepositoryInterface;
 import app.pojo.Image;
+import app.pojo.ImageStatus;
 import app.pojo.Tag;
 import app.pojo.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -25,12 +25,20 @@ public class ImageRepository extends BaseRepository implements ImageRepositoryIn
     private DB db;
 
     public int add(final Image image) {
-        final String sql = "INSERT INTO `images` (`mime_type`, `user_id`, created_at) VALUES " +
-                "(:mimeType, :userId, :createdAt)";
+        final String sql = "INSERT INTO `images` (`mime_type`, `user_id`, created_at, `status`) VALUES " +
+                "(:mimeType, :userId, :createdAt, :status)";
         image.setCreatedAt(System.currentTimeMillis() / 1000);
+        final ImageStatus status = null == image.getStatus() ? ImageStatus.READY : image.getStatus();
 
         KeyHolder holder = new GeneratedKeyHolder();
-        db.getJdbcTemplate().update(sql, new BeanPropertySqlParameterSource(image), holder);
+        db.getJdbcTemplate().update(
+                sql,
+                new MapSqlParameterSource("mimeType", image.getMimeType())
+                        .addValue("userId", image.getUserId())
+                        .addValue("createdAt", image.getCreatedAt())
+                        .addValue("status", status.name()),
+                holder
+        );
 
         return Integer.parseInt(holder.getKeys().get("GENERATED_KEY").toString());
     }
@@ -65,11 +73,41 @@ public class ImageRepository extends BaseRepository implements ImageRepositoryIn
         }
     }
 
-    public List<Image> findForUsers(final Set<Integer> userIds) {
+    public void setStatus(final int imageId, final ImageStatus status) {
+        final String sql = "UPDATE `images` SET `status` = :status WHERE `id` = :id";
+
+        db.getJdbcTemplate().update(
+                sql,
+                new MapSqlParameterSource("id", imageId)
+                        .addValue("status", status.name())
+        );
+    }
+
+    public List<Integer> findIdsByStatus(final ImageStatus status) {
+        final String sql = "SELECT `id` FROM `images` WHERE `status` = :status";
+
+        return db.getJdbcTemplate().queryForList(sql, new MapSqlParameterSource("status", status.name()), Integer.class);
+    }
+
+    public void setCurrentForUser(final int userId, final int imageId) {
+        final String sql = "UPDATE `users` SET `image_id` = :imageId WHERE `id` = :userId";
+
+        db.getJdbcTemplate().update(
+                sql,
+                new MapSqlParameterSource("userId", userId)
+                        .addValue("imageId", imageId)
+        );
+    }
+
+    public List<Image> findCurrentForUsers(final Set<Integer> userIds) {
         if (userIds.isEmpty()) {
             return getEmptyList(Image.class);
         }
-        final String sql = "SELECT * FROM `images` WHERE `user_id` IN (:userIds)";
+        final String sql =
+                " SELECT i.* " +
+                " FROM `users` u " +
+                " JOIN `images` i ON i.`id` = u.`image_id` " +
+                " WHERE u.`id` IN (:userIds)";
         try {
             final List<Image> result = db.query(
                     sql,
@@ -90,6 +128,7 @@ public class ImageRepository extends BaseRepository implements ImageRepositoryIn
             image.setMimeType(rs.getString("mime_type"));
             image.setUserId(rs.getInt("user_id"));
             image.setCreatedAt(rs.getInt("created_at"));
+            image.setStatus(ImageStatus.valueOf(rs.getString("status")));
 
             return image;
         };
@@ -6,8 +6,6 @@ import app.pojo.Like;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 
 import java.sql.ResultSet;
@@ -22,45 +20,27 @@ public class LikeRepository extends BaseRepository implements LikeRepositoryInte
     private DB db;
 
     @Override
-    public Like addCommentLike(final int commentId, final int userId) {
-        final String sql = "INSERT INTO `comment_likes` (`comment_id`, `user_id`, `liked_at`) VALUES " +
+    public boolean addCommentLike(final int commentId, final int userId) {
+        final String sql = "INSERT IGNORE INTO `comment_likes` (`comment_id`, `user_id`, `liked_at`) VALUES " +
                 "(:commentId, :userId, :likedAt)";
-        final int likedAt = (int) System.currentTimeMillis() / 1000;
         final Map<String, Integer> params = new HashMap<>();
         params.put("commentId", commentId);
         params.put("userId", userId);
-        params.put("likedAt", likedAt);
+        params.put("likedAt", (int) (System.currentTimeMillis() / 1000));
 
-        KeyHolder holder = new GeneratedKeyHolder();
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params), holder);
-
-        final int likeId = Integer.parseInt(holder.getKeys().get("GENERATED_KEY").toString());
-        final Like like = Like.createCommentLike(commentId, userId);
-        like.setLikedAt(likedAt);
-        like.setId(likeId);
-
-        return like;
+        return 0 < db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params));
     }
 
     @Override
-    public Like addUpdateLike(final int commentId, final int userId) {
-        final String sql = "INSERT INTO `update_likes` (`update_id`, `user_id`, `liked_at`) VALUES " +
-                "(:commentId, :userId, :likedAt)";
-        final int likedAt = (int) System.currentTimeMillis() / 1000;
+    public boolean addUpdateLike(final int updateId, final int userId) {
+        final String sql = "INSERT IGNORE INTO `update_likes` (`update_id`, `user_id`, `liked_at`) VALUES " +
+                "(:updateId, :userId, :likedAt)";
         final Map<String, Integer> params = new HashMap<>();
-        params.put("commentId", commentId);
+        params.put("updateId", updateId);
         params.put("userId", userId);
-        params.put("likedAt", likedAt);
-
-        KeyHolder holder = new GeneratedKeyHolder();
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params), holder);
-
-        final int likeId = Integer.parseInt(holder.getKeys().get("GENERATED_KEY").toString());
-        final Like like = Like.createUpdateLike(commentId, userId);
-        like.setLikedAt(likedAt);
-        like.setId(likeId);
+        params.put("likedAt", (int) (System.currentTimeMillis() / 1000));
 
-        return like;
+        return 0 < db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params));
     }
 
     @Override
@@ -145,23 +125,47 @@ public class LikeRepository extends BaseRepository implements LikeRepositoryInte
     }
 
     @Override
-    public void deleteCommentLike(final int commentId, final int userId) {
+    public List<Integer> findLikedUpdateIds(final int userId, final int limit) {
+        final String sql = "SELECT `update_id` FROM `update_likes` WHERE `user_id` = :userId LIMIT :limit";
+
+        return db.query(
+                sql,
+                new MapSqlParameterSource("userId", userId)
+                        .addValue("limit", limit),
+                (ResultSet rs, int rowNum) -> rs.getInt("update_id")
+        );
+    }
+
+    @Override
+    public List<Integer> findLikedCommentIds(final int userId, final int limit) {
+        final String sql = "SELECT `comment_id` FROM `comment_likes` WHERE `user_id` = :userId LIMIT :limit";
+
+        return db.query(
+                sql,
+                new MapSqlParameterSource("userId", userId)
+                        .addValue("limit", limit),
+                (ResultSet rs, int rowNum) -> rs.getInt("comment_id")
+        );
+    }
+
+    @Override
+    public boolean deleteCommentLike(final int commentId, final int userId) {
         final String sql = "DELETE FROM `comment_likes` WHERE `comment_id` = :commentId AND `user_id` = :userId";
         final Map<String, Integer> params = new HashMap<>();
         params.put("commentId", commentId);
         params.put("userId", userId);
 
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params));
+        return 0 < db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params));
     }
 
     @Override
-    public void deleteUpdateLike(final int updateId, final int userId) {
+    public boolean deleteUpdateLike(final int updateId, final int userId) {
         final String sql = "DELETE FROM `update_likes` WHERE `update_id` = :updateId AND `user_id` = :userId";
         final Map<String, Integer> params = new HashMap<>();
         params.put("updateId", updateId);
         params.put("userId", userId);
 
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params));
+        return 0 < db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params));
     }
 
     private RowMapper<Like> getUpdateLikeMapper() {
@@ -16,15 +16,14 @@ import org.springframework.stereotype.Component;
 
 import java.sql.ResultSet;
 import java.sql.Types;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 @SuppressWarnings("unused")
 @Component
 public class NotificationRepository extends BaseRepository implements NotificationRepositoryInterface {
 
     private static final int PAGE_SIZE = 20;
+    public static final int RECENT_ACTORS = 3;
     private final DB db;
 
     NotificationRepository(final DB db) {
@@ -46,18 +45,226 @@ public class NotificationRepository extends BaseRepository implements Notificati
     }
 
     @Override
-    public void see(final int notificationId, final int userId) {
-        final String sql = "UPDATE `notifications` SET seen = 1 WHERE `id` = :id AND `to_user_id` = :userId";
+    public void addAll(final List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        final StringBuilder sql = new StringBuilder(
+                " INSERT INTO `notifications` (`to_user_id`, `from_user_id`, `rel_id`, `rel_type`, `seen`, `created_at`) VALUES ");
+        final MapSqlParameterSource params = new MapSqlParameterSource();
+        final long createdAt = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < notifications.size(); i++) {
+            final Notification notification = notifications.get(i);
+            notification.setCreatedAt(createdAt);
+            sql.append(0 == i ? "" : ", ")
+                    .append(String.format("(:toUserId%1$d, :fromUserId%1$d, :relId%1$d, :relType%1$d, :seen%1$d, :createdAt%1$d)", i));
+            params.addValue("toUserId" + i, notification.getToUserId());
+            params.addValue("fromUserId" + i, notification.getFromUserId());
+            params.addValue("relId" + i, notification.getRelId());
+            params.addValue("relType" + i, notification.getRelType());
+            params.addValue("seen" + i, notification.isSeen());
+            params.addValue("createdAt" + i, createdAt);
+        }
+
+        final KeyHolder holder = new GeneratedKeyHolder();
+        db.getJdbcTemplate().update(sql.toString(), params, holder);
+
+        final List<Map<String, Object>> keys = holder.getKeyList();
+        for (int i = 0; i < keys.size() && i < notifications.size(); i++) {
+            notifications.get(i).setId(Integer.parseInt(keys.get(i).get("GENERATED_KEY").toString()));
+        }
+    }
+
+    /**
+     * Writes aggregated notifications with one statement. A notification
+     * without a row for its (to_user_id, rel_id, rel_type) is inserted and a
+     * seen row is reopened with only the new actors; both get the given
+     * open_token, so the caller can tell which rows became unseen by this
+     * statement. An unseen row only gets the newest actor and time; its
+     * actor count and recent actors are left to updateActors().
+     */
+    @Override
+    public void upsertAggregated(final List<Notification> notifications, final long openToken) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        final StringBuilder sql = new StringBuilder(
+                " INSERT INTO `notifications` (`to_user_id`, `from_user_id`, `rel_id`, `rel_type`, `seen`, `created_at`, `actor_count`, `recent_actors`, `open_token`) VALUES ");
+        final MapSqlParameterSource params = new MapSqlParameterSource("openToken", openToken);
+        for (int i = 0; i < notifications.size(); i++) {
+            final Notification notification = notifications.get(i);
+            sql.append(0 == i ? "" : ", ")
+                    .append(String.format("(:toUserId%1$d, :fromUserId%1$d, :relId%1$d, :relType%1$d, 0, :createdAt%1$d, :actorCount%1$d, :recentActors%1$d, :openToken)", i));
+            params.addValue("toUserId" + i, notification.getToUserId());
+            params.addValue("fromUserId" + i, notification.getFromUserId());
+            params.addValue("relId" + i, notification.getRelId());
+            params.addValue("relType" + i, notification.getRelType());
+            params.addValue("createdAt" + i, notification.getCreatedAt());
+            params.addValue("actorCount" + i, notification.getActorCount());
+            params.addValue("recentActors" + i, joinActors(notification.getRecentActorIds()));
+        }
+        // assignments are evaluated in order, so `seen` has to be reset last
+        sql.append(" ON DUPLICATE KEY UPDATE ")
+                .append(" `open_token` = IF(`seen` = 1, VALUES(`open_token`), `open_token`), ")
+                .append(" `actor_count` = IF(`seen` = 1, VALUES(`actor_count`), `actor_count`), ")
+                .append(" `recent_actors` = IF(`seen` = 1, VALUES(`recent_actors`), `recent_actors`), ")
+                .append(" `from_user_id` = VALUES(`from_user_id`), ")
+                .append(" `created_at` = VALUES(`created_at`), ")
+                .append(" `seen` = 0 ");
+
+        db.getJdbcTemplate().update(sql.toString(), params);
+    }
+
+    /**
+     * Current rows for the (to_user_id, rel_id, rel_type) of the given
+     * notifications, matched as exact tuples.
+     */
+    @Override
+    public List<Notification> findByKeys(final List<Notification> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final StringBuilder sql = new StringBuilder(" SELECT * FROM `notifications` WHERE ");
+        final MapSqlParameterSource params = new MapSqlParameterSource();
+        for (int i = 0; i < keys.size(); i++) {
+            final Notification key = keys.get(i);
+            sql.append(0 == i ? "" : " OR ")
+                    .append(String.format("(`to_user_id` = :toUserId%1$d AND `rel_id` = :relId%1$d AND `rel_type` = :relType%1$d)", i));
+            params.addValue("toUserId" + i, key.getToUserId());
+            params.addValue("relId" + i, key.getRelId());
+            params.addValue("relType" + i, key.getRelType());
+        }
+
+        return db.query(sql.toString(), params, getMapper());
+    }
+
+    /**
+     * Which of the given actors are already recorded, per notification id.
+     */
+    @Override
+    public Map<Integer, Set<Integer>> findActors(final Map<Integer, ? extends Collection<Integer>> actorsByNotification) {
+        final Map<Integer, Set<Integer>> result = new HashMap<>();
+        if (actorsByNotification.isEmpty()) {
+            return result;
+        }
+        final StringBuilder sql = new StringBuilder(" SELECT `notification_id`, `actor_id` FROM `notification_actors` WHERE ");
+        final MapSqlParameterSource params = new MapSqlParameterSource();
+        int i = 0;
+        for (final Map.Entry<Integer, ? extends Collection<Integer>> entry : actorsByNotification.entrySet()) {
+            sql.append(0 == i ? "" : " OR ")
+                    .append(String.format("(`notification_id` = :notificationId%1$d AND `actor_id` IN (:actorIds%1$d))", i));
+            params.addValue("notificationId" + i, entry.getKey());
+            params.addValue("actorIds" + i, entry.getValue());
+            i++;
+        }
+
+        db.getJdbcTemplate().query(sql.toString(), params, (ResultSet rs) -> {
+            result.computeIfAbsent(rs.getInt("notification_id"), id -> new HashSet<>()).add(rs.getInt("actor_id"));
+        });
+
+        return result;
+    }
+
+    @Override
+    public void addActors(final Map<Integer, ? extends Collection<Integer>> actorsByNotification) {
+        final StringBuilder sql = new StringBuilder(" INSERT IGNORE INTO `notification_actors` (`notification_id`, `actor_id`) VALUES ");
+        final MapSqlParameterSource params = new MapSqlParameterSource();
+        int i = 0;
+        for (final Map.Entry<Integer, ? extends Collection<Integer>> entry : actorsByNotification.entrySet()) {
+            for (final Integer actorId : entry.getValue()) {
+                sql.append(0 == i ? "" : ", ").append(String.format("(:notificationId%1$d, :actorId%1$d)", i));
+                params.addValue("notificationId" + i, entry.getKey());
+                params.addValue("actorId" + i, actorId);
+                i++;
+            }
+        }
+        if (0 == i) {
+            return;
+        }
+
+        db.getJdbcTemplate().update(sql.toString(), params);
+    }
+
+    /**
+     * Forgets the actors of reopened notifications, which start counting
+     * again from their new actors.
+     */
+    @Override
+    public void resetActors(final Collection<Integer> notificationIds) {
+        if (notificationIds.isEmpty()) {
+            return;
+        }
+        final String sql = "DELETE FROM `notification_actors` WHERE `notification_id` IN (:ids)";
+
+        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("ids", notificationIds));
+    }
+
+    @Override
+    public void updateActors(final List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        final String sql = "UPDATE `notifications` SET `actor_count` = :actorCount, `recent_actors` = :recentActors WHERE `id` = :id";
+        final MapSqlParameterSource[] batch = new MapSqlParameterSource[notifications.size()];
+        for (int i = 0; i < notifications.size(); i++) {
+            batch[i] = new MapSqlParameterSource("id", notifications.get(i).getId())
+                    .addValue("actorCount", notifications.get(i).getActorCount())
+                    .addValue("recentActors", joinActors(notifications.get(i).getRecentActorIds()));
+        }
+
+        db.getJdbcTemplate().batchUpdate(sql, batch);
+    }
+
+    @Override
+    public boolean see(final int notificationId, final int userId) {
+        final String sql = "UPDATE `notifications` SET seen = 1 WHERE `id` = :id AND `to_user_id` = :userId AND `seen` = 0";
         final Map<String, Integer> params = new HashMap<>();
         params.put("id", notificationId);
         params.put("userId", userId);
 
-        db.getJdbcTemplate().update(sql, params);
+        return 0 < db.getJdbcTemplate().update(sql, params);
+    }
+
+    /**
+     * Marks every unseen notification created up to the given time as seen.
+     * The aggregation upsert moves created_at forward whenever it reopens or
+     * extends a row, so a row changed after the client's newest notification
+     * is left unseen.
+     */
+    @Override
+    public int seeUpToCreatedAt(final int userId, final long upToCreatedAt) {
+        final String sql =
+                " UPDATE `notifications` SET seen = 1 " +
+                " WHERE `to_user_id` = :userId AND `seen` = 0 AND `created_at` <= :upToCreatedAt";
+        final MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("upToCreatedAt", upToCreatedAt);
+
+        return db.getJdbcTemplate().update(sql, params);
+    }
+
+    @Override
+    public int seeIds(final int userId, final Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        final String sql =
+                " UPDATE `notifications` SET seen = 1 " +
+                " WHERE `to_user_id` = :userId AND `seen` = 0 AND `id` IN (:ids)";
+        final MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("ids", ids);
+
+        return db.getJdbcTemplate().update(sql, params);
     }
 
+    /**
+     * Persisted unread count; deltas still buffered in WriteBehindCounters
+     * are not included.
+     */
     @Override
     public int getNotSeen(final int userId) {
-        final String sql = "SELECT count(*) FROM `notifications` WHERE `to_user_id` = :userId AND `seen` = 0";
+        final String sql = "SELECT `unread_notifications` FROM `users` WHERE `id` = :userId";
         final Map<String, Integer> params = new HashMap<>();
         params.put("userId", userId);
 
@@ -74,6 +281,25 @@ public class NotificationRepository extends BaseRepository implements Notificati
         }
     }
 
+    /**
+     * Persisted unread counts of the given users, keyed by user id; like
+     * getNotSeen(int), buffered deltas are not included.
+     */
+    @Override
+    public Map<Integer, Integer> getNotSeen(final Collection<Integer> userIds) {
+        final Map<Integer, Integer> result = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return result;
+        }
+        final String sql = "SELECT `id`, `unread_notifications` FROM `users` WHERE `id` IN (:userIds)";
+
+        db.getJdbcTemplate().query(sql, new MapSqlParameterSource("userIds", userIds), (ResultSet rs) -> {
+            result.put(rs.getInt("id"), rs.getInt("unread_notifications"));
+        });
+
+        return result;
+    }
+
     @Override
     public List<Notification> findPaged(final int userId, final Page page) {
         final String sql =
@@ -107,9 +333,38 @@ public class NotificationRepository extends BaseRepository implements Notificati
             notification.setSeen(rs.getBoolean("seen"));
             notification.setType(NotificationType.fromString(rs.getString("rel_type")));
             notification.setCreatedAt(rs.getInt("created_at"));
+            notification.setActorCount(rs.getInt("actor_count"));
+            notification.setRecentActorIds(splitActors(rs.getString("recent_actors"), notification.getFromUserId()));
+            notification.setOpenToken(rs.getLong("open_token"));
 
             return notification;
         };
     }
 
+    private static String joinActors(final List<Integer> actorIds) {
+        final StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < actorIds.size() && i < RECENT_ACTORS; i++) {
+            joined.append(0 == i ? "" : ",").append(actorIds.get(i));
+        }
+
+        return joined.toString();
+    }
+
+    private static List<Integer> splitActors(final String actors, final int fromUserId) {
+        final List<Integer> actorIds = new ArrayList<>();
+        if (null != actors && !actors.isEmpty()) {
+            for (final String actor : actors.split(",")) {
+                final Integer actorId = Integer.valueOf(actor);
+                if (!actorIds.contains(actorId)) {
+                    actorIds.add(actorId);
+                }
+            }
+        }
+        if (actorIds.isEmpty()) {
+            actorIds.add(fromUserId);
+        }
+
+        return actorIds;
+    }
+
 }
@@ -8,70 +8,58 @@ import app.pojo.UpdateTag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 
 import java.sql.ResultSet;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 @Component
 public class TagRepository extends BaseRepository {
     @Autowired
     private DB db;
 
+    /**
+     * Inserts the missing tags with a single multi-row statement and returns
+     * every requested tag. Names that already exist, including ones inserted
+     * concurrently by another post, are skipped by the unique name key.
+     */
     public List<Tag> addTags(final Set<String> tagNames) {
-        final List<Tag> tags = new ArrayList<>();
-        for (String tagName : tagNames) {
-            tags.add(addTag(tagName));
+        if (tagNames.isEmpty()) {
+            return getEmptyList(Tag.class);
+        }
+        final StringBuilder sql = new StringBuilder("INSERT IGNORE INTO `tags` (`name`, `created_at`) VALUES ");
+        final MapSqlParameterSource params = new MapSqlParameterSource("createdAt", System.currentTimeMillis() / 1000);
+        int i = 0;
+        for (final String tagName : tagNames) {
+            sql.append(0 == i ? "" : ", ").append("(:name").append(i).append(", :createdAt)");
+            params.addValue("name" + i, tagName);
+            i++;
         }
 
-        return tags;
-    }
-
-    public Tag addTag(final String name) {
-        final String sql = "INSERT INTO `tags` (`name`, `created_at`) VALUES " +
-                "(:name, :createdAt)";
-        final int createdAt = (int) System.currentTimeMillis() / 1000;
-        final Map<String, Object> params = new HashMap<>();
-        params.put("name", name);
-        params.put("createdAt", createdAt);
-
-        KeyHolder holder = new GeneratedKeyHolder();
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params), holder);
-
-        final int tagId = Integer.parseInt(holder.getKeys().get("GENERATED_KEY").toString());
-        final Tag tag = new Tag();
-        tag.setName(name);
-        tag.setCreatedAt(createdAt);
-        tag.setId(tagId);
+        db.getJdbcTemplate().update(sql.toString(), params);
 
-        return tag;
+        return findByName(tagNames);
     }
 
     public List<UpdateTag> addUpdateTags(final Set<Integer> tagIds, final int updateId) {
+        if (tagIds.isEmpty()) {
+            return getEmptyList(UpdateTag.class);
+        }
+        final StringBuilder sql = new StringBuilder("INSERT IGNORE INTO `update_tags` (`tag_id`, `update_id`) VALUES ");
+        final MapSqlParameterSource params = new MapSqlParameterSource("updateId", updateId);
         final List<UpdateTag> updateTags = new ArrayList<>();
-        for (int tagId : tagIds) {
-            updateTags.add(addUpdateTag(tagId, updateId));
+        int i = 0;
+        for (final int tagId : tagIds) {
+            sql.append(0 == i ? "" : ", ").append("(:tagId").append(i).append(", :updateId)");
+            params.addValue("tagId" + i, tagId);
+            updateTags.add(new UpdateTag(updateId, tagId));
+            i++;
         }
 
-        return updateTags;
-    }
-
-    public UpdateTag addUpdateTag(final int tagId, final int updateId) {
-        final String sql = "INSERT INTO `update_tags` (`tag_id`, `update_id`) VALUES (:tagId, :updateId)";
-        final Map<String, Integer> params = new HashMap<>();
-        params.put("tagId", tagId);
-        params.put("updateId", updateId);
+        db.getJdbcTemplate().update(sql.toString(), params);
 
-        KeyHolder holder = new GeneratedKeyHolder();
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource(params), holder);
-
-        final UpdateTag updateTag = new UpdateTag();
-        updateTag.setTagId(tagId);
-        updateTag.setUpdateId(updateId);
-
-        return updateTag;
+        return updateTags;
     }
 
     public List<Tag> findByName(final Set<String> names) {
@@ -92,27 +80,29 @@ public class TagRepository extends BaseRepository {
         }
     }
 
-    public List<Tag> findMostPopular() {
-        final String sql = "SELECT t.id, t.name, t.created_at, t1.count " +
-                "FROM tags t " +
-                "JOIN (" +
-                    "SELECT tag_id, count(*) count " +
-                    "FROM update_tags " +
-                    "GROUP BY tag_id " +
-                    "ORDER BY count DESC" +
-                ") t1 ON t.id = t1.tag_id " +
-                "ORDER BY t1.count " +
-                "DESC LIMIT 5";
-        try {
-            final List<Tag> result = db.query(sql, getMapper());
-            System.out.println(sql);
-            System.out.println(result.size());
+    /**
+     * Most used tags by the uses counter, read from its index.
+     */
+    public List<Tag> findMostUsed(final int limit) {
+        final String sql = "SELECT * FROM `tags` ORDER BY `uses` DESC LIMIT :limit";
 
-            return result;
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            return getEmptyList(Tag.class);
-        }
+        return db.query(sql, new MapSqlParameterSource("limit", limit), getMapper());
+    }
+
+    public void forEachLinkBetween(final long since, final long until, final BiConsumer<Tag, Long> consumer) {
+        final String sql =
+                " SELECT t.*, u.`created_at` AS linked_at " +
+                " FROM `updates` u " +
+                " JOIN `update_tags` ut ON ut.`update_id` = u.`id` " +
+                " JOIN `tags` t ON t.`id` = ut.`tag_id` " +
+                " WHERE u.`created_at` >= :since AND u.`created_at` < :until";
+        final RowMapper<Tag> mapper = getMapper();
+        final MapSqlParameterSource params = new MapSqlParameterSource("since", since)
+                .addValue("until", until);
+
+        db.getJdbcTemplate().query(sql, params, (ResultSet rs) -> {
+            consumer.accept(mapper.mapRow(rs, 0), rs.getLong("linked_at"));
+        });
     }
 
     public List<UpdateTag> findUpdateTagsByUpdateId(final int updateId) {
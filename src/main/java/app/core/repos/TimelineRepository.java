@@ -0,0 +1,130 @@
+package app.core.repos;
+
+import app.core.DB;
+import app.core.repos.intefaces.TimelineRepositoryInterface;
+import app.http.pojos.CursorPage;
+import app.pojo.Update;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+@SuppressWarnings("unused")
+@Component
+public class TimelineRepository extends BaseRepository implements TimelineRepositoryInterface {
+
+    private final DB db;
+
+    TimelineRepository(final DB db) {
+        this.db = db;
+    }
+
+    @Override
+    public void push(final List<Integer> userIds, final Update update) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        final String sql =
+                " INSERT IGNORE INTO `timelines` (`user_id`, `update_id`, `created_at`) " +
+                "                         VALUES (:userId, :updateId, :createdAt)";
+        final SqlParameterSource[] batch = new SqlParameterSource[userIds.size()];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new MapSqlParameterSource("userId", userIds.get(i))
+                    .addValue("updateId", update.getId())
+                    .addValue("createdAt", update.getCreatedAt());
+        }
+
+        db.getJdbcTemplate().batchUpdate(sql, batch);
+    }
+
+    /**
+     * Copies an author's newest limit updates into a timeline, a range read
+     * on updates (user_id, created_at, id).
+     */
+    @Override
+    public void copyRecent(final int authorId, final int userId, final int limit) {
+        final String sql =
+                " INSERT IGNORE INTO `timelines` (`user_id`, `update_id`, `created_at`) " +
+                " SELECT :userId, u.`id`, u.`created_at` " +
+                " FROM `updates` u " +
+                " WHERE u.`user_id` = :authorId " +
+                " ORDER BY u.`created_at` DESC, u.`id` DESC " +
+                " LIMIT :limit ";
+        final MapSqlParameterSource params = new MapSqlParameterSource("userId", userId)
+                .addValue("authorId", authorId)
+                .addValue("limit", limit);
+
+        db.getJdbcTemplate().update(sql, params);
+    }
+
+    /**
+     * Deletes an author's updates from a timeline. Reads only that timeline,
+     * which trim keeps short.
+     */
+    @Override
+    public int removeAuthor(final int userId, final int authorId) {
+        final String sql =
+                " DELETE t " +
+                " FROM `timelines` t " +
+                " JOIN `updates` u ON u.`id` = t.`update_id` " +
+                " WHERE t.`user_id` = :userId AND u.`user_id` = :authorId ";
+        final MapSqlParameterSource params = new MapSqlParameterSource("userId", userId)
+                .addValue("authorId", authorId);
+
+        return db.getJdbcTemplate().update(sql, params);
+    }
+
+    /**
+     * Deletes everything but the newest keep entries of a timeline. Both
+     * statements are range reads on (user_id, created_at, update_id).
+     */
+    @Override
+    public int trim(final int userId, final int keep) {
+        final String cutoffSql =
+                " SELECT `created_at`, `update_id` " +
+                " FROM `timelines` " +
+                " WHERE `user_id` = :userId " +
+                " ORDER BY `created_at` DESC, `update_id` DESC " +
+                " LIMIT :keep, 1 ";
+        final MapSqlParameterSource params = new MapSqlParameterSource("userId", userId)
+                .addValue("keep", keep);
+        final List<long[]> cutoff = db.query(
+                cutoffSql,
+                params,
+                (final ResultSet rs, final int row) -> new long[]{rs.getLong("created_at"), rs.getLong("update_id")}
+        );
+        if (cutoff.isEmpty()) {
+            return 0;
+        }
+        final String sql =
+                " DELETE FROM `timelines` " +
+                " WHERE `user_id` = :userId " +
+                "   AND (`created_at` < :createdAt OR (`created_at` = :createdAt AND `update_id` <= :updateId)) ";
+        params.addValue("createdAt", cutoff.get(0)[0]);
+        params.addValue("updateId", cutoff.get(0)[1]);
+
+        return db.getJdbcTemplate().update(sql, params);
+    }
+
+    @Override
+    public List<Update> findByCursor(final int userId, final CursorPage page) {
+        final StringBuilder sql = new StringBuilder(
+                " SELECT u.* " +
+                " FROM `timelines` t " +
+                " JOIN `updates` u ON u.`id` = t.`update_id` " +
+                " WHERE t.`user_id` = :userId ");
+        final MapSqlParameterSource params = new MapSqlParameterSource("userId", userId)
+                .addValue("limit", UpdateRepository.PAGE_SIZE);
+        if (!page.isFirst()) {
+            sql.append(" AND (t.`created_at` < :createdAt OR (t.`created_at` = :createdAt AND t.`update_id` < :id)) ");
+            params.addValue("createdAt", page.getCreatedAt());
+            params.addValue("id", page.getId());
+        }
+        sql.append(" ORDER BY t.`created_at` DESC, t.`update_id` DESC LIMIT :limit ");
+
+        return db.query(sql.toString(), params, UpdateRepository.getMapper());
+    }
+
+}
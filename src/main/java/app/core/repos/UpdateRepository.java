@@ -2,6 +2,7 @@ package app.core.repos;
 
 import app.core.DB;
 import app.core.repos.intefaces.UpdateRepositoryInterface;
+import app.http.pojos.CursorPage;
 import app.http.pojos.Page;
 import app.pojo.Comment;
 import app.pojo.Favorite;
@@ -20,6 +21,7 @@ import java.sql.ResultSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Component
 public class UpdateRepository extends BaseRepository implements UpdateRepositoryInterface {
@@ -110,6 +112,46 @@ public class UpdateRepository extends BaseRepository implements UpdateRepository
         return updates;
     }
 
+    @Override
+    public List<Update> findByCursor(final CursorPage page, final Integer targetUserId) {
+        final MapSqlParameterSource params = new MapSqlParameterSource();
+        String condition = "";
+        if (null != targetUserId) {
+            condition = " AND `user_id` = :userId ";
+            params.addValue("userId", targetUserId);
+        }
+
+        return findByCursor(page, condition, params);
+    }
+
+    @Override
+    public List<Update> findByCursorForUsers(final CursorPage page, final Set<Integer> userIds) {
+        if (userIds.isEmpty()) {
+            return getEmptyList(Update.class);
+        }
+
+        return findByCursor(page, " AND `user_id` IN (:userIds) ", new MapSqlParameterSource("userIds", userIds));
+    }
+
+    private List<Update> findByCursor(final CursorPage page, final String condition, final MapSqlParameterSource params) {
+        final StringBuilder sql = new StringBuilder("SELECT * FROM `updates` WHERE 1 = 1 ").append(condition);
+        params.addValue("limit", PAGE_SIZE);
+        if (!page.isFirst()) {
+            sql.append(" AND (`created_at` < :createdAt OR (`created_at` = :createdAt AND `id` < :id)) ");
+            params.addValue("createdAt", page.getCreatedAt());
+            params.addValue("id", page.getId());
+        }
+        sql.append(" ORDER BY `created_at` DESC, `id` DESC LIMIT :limit ");
+
+        final List<Update> updates = db.query(
+                sql.toString(),
+                params,
+                getMapper()
+        );
+
+        return updates;
+    }
+
     @Override
     public List<Update> findPagedByTag(final Page page, final String tag) {
         if (!isValidTag(tag)) {
@@ -190,24 +232,17 @@ public class UpdateRepository extends BaseRepository implements UpdateRepository
     }
 
     @Override
-    public void incrementUpdateComments(final int updateId) {
-        final String sql = "UPDATE `updates` SET `comments` = `comments` + 1 WHERE `id` = :id";
-
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", updateId));
-    }
-
-    @Override
-    public void incrementUpdateLikes(final int updateId) {
-        final String sql = "UPDATE `updates` SET `likes` = `likes` + 1 WHERE `id` = :id";
-
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", updateId));
-    }
-
-    @Override
-    public void decrementUpdateLikes(final int updateId) {
-        final String sql = "UPDATE `updates` SET `likes` = `likes` - 1 WHERE `id` = :id";
-
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", updateId));
+    public Integer findOwnerId(final int id) {
+        final String sql = "SELECT `user_id` FROM `updates` WHERE `id` = :id LIMIT 1";
+        try {
+            return db.getJdbcTemplate().queryForObject(
+                    sql,
+                    new MapSqlParameterSource("id", id),
+                    Integer.class
+            );
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     @Override
@@ -226,7 +261,7 @@ public class UpdateRepository extends BaseRepository implements UpdateRepository
         }
     }
 
-    private RowMapper<Update> getMapper() {
+    static RowMapper<Update> getMapper() {
         return (ResultSet rs, int rowNum) -> {
             final Update update = new Update();
             update.setId(rs.getInt("id"));
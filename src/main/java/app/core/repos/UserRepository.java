@@ -1,6 +1,7 @@
 package app.core.repos;
 
 import app.core.DB;
+import app.core.cache.UserCache;
 import app.core.repos.intefaces.UserRepositoryInterface;
 import app.http.pojos.UserCreateResource;
 import app.http.pojos.UserUpdateResource;
@@ -14,6 +15,7 @@ import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 
 import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,10 +25,12 @@ import java.util.Set;
 public class UserRepository extends BaseRepository implements UserRepositoryInterface {
 
     private final DB db;
+    private final UserCache userCache;
 
     @Autowired
-    UserRepository(final DB db) {
+    UserRepository(final DB db, final UserCache userCache) {
         this.db = db;
+        this.userCache = userCache;
     }
 
     public int add(final UserCreateResource user) {
@@ -58,6 +62,7 @@ public class UserRepository extends BaseRepository implements UserRepositoryInte
         params.put("id", userId);
 
         db.getJdbcTemplate().update(sql, params);
+        userCache.invalidate(userId);
     }
 
     public User findByUsername(final String username) {
@@ -107,10 +112,20 @@ public class UserRepository extends BaseRepository implements UserRepositoryInte
         if (ids.isEmpty()) {
             return getEmptyList(User.class);
         }
+        final Map<Integer, User> users = userCache.getAll(ids, this::loadByIds);
+
+        return new ArrayList<>(users.values());
+    }
+
+    private Map<Integer, User> loadByIds(final Set<Integer> ids) {
         final String sql = "SELECT `id`, `first_name`, `last_name`, `username`, `created_at` FROM `users` WHERE `id` IN (:ids)";
         final List<User> users = db.query(sql, new MapSqlParameterSource("ids", ids), getMapperSmall());
+        final Map<Integer, User> result = new HashMap<>();
+        for (final User user : users) {
+            result.put(user.getId(), user);
+        }
 
-        return users;
+        return result;
     }
 
     @Override
@@ -127,45 +142,36 @@ public class UserRepository extends BaseRepository implements UserRepositoryInte
     }
 
     @Override
-    public void incrementFollowersFor(final int userId) {
-        final String sql = "UPDATE `users` SET `followers` = `followers` + 1 WHERE `id` = :id";
-
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", userId));
-    }
-
-    @Override
-    public void decrementFollowersFor(final int userId) {
-        final String sql = "UPDATE `users` SET `followers` = `followers` - 1 WHERE `id` = :id";
-
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", userId));
-    }
-
-    @Override
-    public void incrementFollowedFor(final int userId) {
-        final String sql = "UPDATE `users` SET `following` = `following` + 1 WHERE `id` = :id";
+    public void incrementUpdates(final int userId) {
+        final String sql = "UPDATE `users` SET `updates` = `updates` + 1 WHERE `id` = :id";
 
         db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", userId));
     }
 
     @Override
-    public void decrementFollowedFor(final int userId) {
-        final String sql = "UPDATE `users` SET `following` = `following` - 1 WHERE `id` = :id";
+    public void decrementUpdates(final int userId) {
+        final String sql = "UPDATE `users` SET `updates` = `updates` - 1 WHERE `id` = :id";
 
         db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", userId));
     }
 
     @Override
-    public void incrementUpdates(final int userId) {
-        final String sql = "UPDATE `users` SET `updates` = `updates` + 1 WHERE `id` = :id";
+    public boolean isFanOutOnRead(final int userId) {
+        final String sql = "SELECT `fan_out_on_read` FROM `users` WHERE `id` = :id";
+        final List<Boolean> result = db.query(
+                sql,
+                new MapSqlParameterSource("id", userId),
+                (final ResultSet rs, final int row) -> rs.getBoolean("fan_out_on_read")
+        );
 
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", userId));
+        return !result.isEmpty() && result.get(0);
     }
 
     @Override
-    public void decrementUpdates(final int userId) {
-        final String sql = "UPDATE `users` SET `updates` = `updates` - 1 WHERE `id` = :id";
+    public boolean markFanOutOnRead(final int userId) {
+        final String sql = "UPDATE `users` SET `fan_out_on_read` = 1 WHERE `id` = :id AND `fan_out_on_read` = 0";
 
-        db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", userId));
+        return 0 < db.getJdbcTemplate().update(sql, new MapSqlParameterSource("id", userId));
     }
 
     private RowMapper<User> getMapper() {
@@ -10,7 +10,6 @@ public interface CommentRepositoryInterface {
     Comment findById(int id);
     List<Comment> findByUpdateId(int updateId);
     List<Comment> findByUpdateIdPaged(int updateId, Page page);
-    void incrementCommentLikes(int commentId);
-    void decrementCommentLikes(int commentId);
+    Integer findOwnerId(int id);
     boolean exists(int id);
 }
@@ -6,6 +6,8 @@ public interface FollowRepositoryInterface {
     boolean follow(final int followerId, final int followedId);
     boolean unfollow(final int followerId, final int followedId);
     boolean isFollowd(final int followerId, final int followedId);
-    List<Integer> getFollowersOf(final int userId);
+    List<Integer> getFollowersOf(final int userId, final int afterFollowerId, final int limit);
+    int countFollowersOf(final int userId, final int limit);
+    List<Integer> getFollowedFannedOutOnRead(final int userId);
 
 }
@@ -1,8 +1,16 @@
 package app.core.repos.intefaces;
 
 import app.pojo.Image;
+import app.pojo.ImageStatus;
+
+import java.util.List;
+import java.util.Set;
 
 public interface ImageRepositoryInterface {
     int add(Image user);
     Image findById(int id);
+    void setStatus(int imageId, ImageStatus status);
+    List<Integer> findIdsByStatus(ImageStatus status);
+    void setCurrentForUser(int userId, int imageId);
+    List<Image> findCurrentForUsers(Set<Integer> userIds);
 }
@@ -6,13 +6,15 @@ import java.util.List;
 import java.util.Set;
 
 public interface LikeRepositoryInterface {
-    Like addUpdateLike(int updateId, int userId);
-    Like addCommentLike(int commentId, int userId);
-    void deleteUpdateLike(int updateId, int userId);
-    void deleteCommentLike(int commentId, int userId);
+    boolean addUpdateLike(int updateId, int userId);
+    boolean addCommentLike(int commentId, int userId);
+    boolean deleteUpdateLike(int updateId, int userId);
+    boolean deleteCommentLike(int commentId, int userId);
     Like findUpdateLikeByUserId(int updateId, int userId);
     Like findCommentLikeByUserId(int commentId, int userId);
     List<Like> findUpdateLikesByIds(Set<Integer> updateIds, int userId);
     List<Like> findCommentLikesByIds(Set<Integer> commentIds, int userId);
+    List<Integer> findLikedUpdateIds(int userId, int limit);
+    List<Integer> findLikedCommentIds(int userId, int limit);
 
 }
@@ -2,12 +2,25 @@ package app.core.repos.intefaces;
 
 import app.http.pojos.Page;
 import app.pojo.Notification;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface NotificationRepositoryInterface {
     int add(final Notification notification);
-    void see(final int notificationId, final int userId);
+    void addAll(final List<Notification> notifications);
+    void upsertAggregated(final List<Notification> notifications, final long openToken);
+    List<Notification> findByKeys(final List<Notification> keys);
+    Map<Integer, Set<Integer>> findActors(final Map<Integer, ? extends Collection<Integer>> actorsByNotification);
+    void addActors(final Map<Integer, ? extends Collection<Integer>> actorsByNotification);
+    void resetActors(final Collection<Integer> notificationIds);
+    void updateActors(final List<Notification> notifications);
+    boolean see(final int notificationId, final int userId);
+    int seeUpToCreatedAt(final int userId, final long upToCreatedAt);
+    int seeIds(final int userId, final Collection<Integer> ids);
     int getNotSeen(final int userId);
+    Map<Integer, Integer> getNotSeen(final Collection<Integer> userIds);
     List<Notification> findPaged(final int userId, final Page page);
 
 }
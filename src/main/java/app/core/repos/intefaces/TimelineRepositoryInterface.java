@@ -0,0 +1,15 @@
+package app.core.repos.intefaces;
+
+import app.http.pojos.CursorPage;
+import app.pojo.Update;
+
+import java.util.List;
+
+public interface TimelineRepositoryInterface {
+    void push(final List<Integer> userIds, final Update update);
+    void copyRecent(final int authorId, final int userId, final int limit);
+    int removeAuthor(final int userId, final int authorId);
+    int trim(final int userId, final int keep);
+    List<Update> findByCursor(final int userId, final CursorPage page);
+
+}
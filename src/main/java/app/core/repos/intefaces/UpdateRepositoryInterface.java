@@ -1,24 +1,26 @@
 package app.core.repos.intefaces;
 
+import app.http.pojos.CursorPage;
 import app.http.pojos.Page;
 import app.pojo.Favorite;
 import app.pojo.Update;
 
 import java.util.List;
+import java.util.Set;
 
 public interface UpdateRepositoryInterface {
     int add(Update update);
     List<Update> findPaged(Page page);
     List<Update> findPagedByUserId(Page page, Integer targetUserId);
+    List<Update> findByCursor(CursorPage page, Integer targetUserId);
+    List<Update> findByCursorForUsers(CursorPage page, Set<Integer> userIds);
     List<Update> findPagedByTag(Page page, String tag);
     Update findById(int id);
     List<Update> findByUserId(int userId);
     Update findByIdAndUserId(int id, int userId);
     void addFavorite(int updateId, int userId);
     Favorite findFavoriteByUpdateIdAndUserId(int updateId, int userId);
-    void incrementUpdateComments(int updateId);
-    void incrementUpdateLikes(int updateId);
-    void decrementUpdateLikes(int updateId);
+    Integer findOwnerId(int id);
     boolean exists(int id);
 
 }
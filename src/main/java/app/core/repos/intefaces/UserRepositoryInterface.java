@@ -15,11 +15,9 @@ public interface UserRepositoryInterface {
     User findById(int id);
     List<User> findByIds(Set<Integer> ids);
     List<User> findMostPopular();
-    void incrementFollowersFor(int userId);
-    void decrementFollowersFor(int userId);
-    void incrementFollowedFor(int userId);
-    void decrementFollowedFor(int userId);
     void incrementUpdates(int userId);
     void decrementUpdates(int userId);
+    boolean isFanOutOnRead(int userId);
+    boolean markFanOutOnRead(int userId);
 
 }
@@ -2,25 +2,33 @@ package app.http.controllers;
 
 import app.http.pojos.CustomUserDetails;
 import app.http.pojos.ImageUploadedResponse;
-import app.pojo.Image;
+import app.pojo.ImageFile;
 import app.pojo.ImageSize;
 import app.services.ImageService;
+import app.utils.FileResponses;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotNull;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
 
 @SuppressWarnings("unused")
 @RestController
 @RequestMapping(value = "/api/image")
 public class ImageController {
+    // an image id is never reused and its files never change once written
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String DEFAULT_IMAGE = "public, max-age=86400";
+
     private final ImageService imageService;
 
     @Autowired
@@ -37,22 +45,98 @@ public class ImageController {
     }
 
     @RequestMapping(value = "/{imageId}/{size}", method = RequestMethod.GET)
-    public ResponseEntity<byte[]> getImageSize(@PathVariable(name = "imageId") final Integer imageId,
-                                               @PathVariable(name = "size") final ImageSize size) {
-        return getImageData(imageId, size);
+    public void getImageSize(@PathVariable(name = "imageId") final Integer imageId,
+                             @PathVariable(name = "size") final ImageSize size,
+                             final HttpServletRequest request,
+                             final HttpServletResponse response) throws IOException {
+        getImageData(imageId, size, request, response);
     }
 
     @RequestMapping(value = "/{imageId}", method = RequestMethod.GET)
-    public ResponseEntity<byte[]> getImageSize(@PathVariable(name = "imageId") final Integer imageId) {
-        return getImageData(imageId, null);
+    public void getImageSize(@PathVariable(name = "imageId") final Integer imageId,
+                             final HttpServletRequest request,
+                             final HttpServletResponse response) throws IOException {
+        getImageData(imageId, null, request, response);
+    }
+
+    private void getImageData(final Integer imageId,
+                              final ImageSize size,
+                              final HttpServletRequest request,
+                              final HttpServletResponse response) throws IOException {
+        final boolean stored = 0 < imageId;
+        final String etag = "\"" + imageId + (null == size ? "" : "-" + size.name()) + "\"";
+        final List<String> ifNoneMatch = entityTags(request);
+        if (stored && matches(ifNoneMatch, etag)) {
+            notModified(response, etag);
+            return;
+        }
+        final ImageFile image = imageService.readById(imageId, size);
+        if (null == image) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        if (image.isProvisional()) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        } else if (stored) {
+            if (isNotModified(request, ifNoneMatch, image)) {
+                notModified(response, etag);
+                return;
+            }
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, image.getCreatedAt() * 1000);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+        } else {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, DEFAULT_IMAGE);
+        }
+
+        FileResponses.send(request, response, image.getResource(), image.getMimeType());
+    }
+
+    private void notModified(final HttpServletResponse response, final String etag) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+        response.setStatus(HttpStatus.NOT_MODIFIED.value());
+    }
+
+    /**
+     * Whether If-None-Match lists the ETag itself. We only hand that ETag
+     * out with the final file of a stored image, which never changes, so
+     * this is decided without the images table or the disk.
+     */
+    private static boolean matches(final List<String> ifNoneMatch, final String etag) {
+        return ifNoneMatch.contains(etag) || ifNoneMatch.contains("W/" + etag);
+    }
+
+    /**
+     * The rest of the conditional request, once the image is known to exist
+     * and be final: * matches it, and so does a date from If-Modified-Since
+     * no earlier than its creation. If-None-Match takes precedence over
+     * If-Modified-Since.
+     */
+    private static boolean isNotModified(final HttpServletRequest request, final List<String> ifNoneMatch, final ImageFile image) {
+        if (!ifNoneMatch.isEmpty()) {
+            return ifNoneMatch.contains("*");
+        }
+        final long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+
+        return -1 != ifModifiedSince && image.getCreatedAt() <= ifModifiedSince / 1000;
     }
 
-    private ResponseEntity<byte[]> getImageData(final Integer imageId, final ImageSize size) {
-        final Image image = imageService.readById(imageId, size);
-        final HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf(image.getMimeType()));
+    private static List<String> entityTags(final HttpServletRequest request) {
+        final List<String> tags = new ArrayList<>();
+        final Enumeration<String> headers = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        while (null != headers && headers.hasMoreElements()) {
+            for (final String tag : headers.nextElement().split(",")) {
+                tags.add(tag.trim());
+            }
+        }
 
-        return new ResponseEntity<>(image.getData(), headers, HttpStatus.OK);
+        return tags;
     }
 
-}
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import app.http.pojos.CustomUserDetails;
 import app.http.pojos.NotificationInfoResponse;
 import app.http.pojos.NotificationResponse;
 import app.http.pojos.Page;
+import app.http.pojos.SeeNotificationsResource;
 import app.services.NotificationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -35,6 +36,17 @@ public class NotificationController {
         notificationService.see(notificationId, loggedUserId);
     }
 
+    @RequestMapping(path = "/see", method = RequestMethod.POST)
+    public NotificationInfoResponse seeAll(
+            final @RequestBody @Valid SeeNotificationsResource seeData,
+            final @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        final int loggedUserId = userDetails.getId();
+        final NotificationInfoResponse response = notificationService.seeAll(loggedUserId, seeData);
+
+        return response;
+    }
+
     @RequestMapping(path = "/info", method = RequestMethod.GET)
     public NotificationInfoResponse info(final @AuthenticationPrincipal CustomUserDetails userDetails) {
         final int loggedUserId = userDetails.getId();
@@ -4,6 +4,7 @@ import app.core.repos.UpdateRepository;
 import app.http.pojos.*;
 import app.pojo.Comment;
 import app.pojo.Tag;
+import app.pojo.TrendWindow;
 import app.pojo.Update;
 import app.services.LikeService;
 import app.services.TagService;
@@ -62,9 +63,27 @@ public class UpdateController {
         return updateService.findPaged(page, loggedUserId);
     }
 
+    @RequestMapping(path = "list/cursor", method = RequestMethod.GET)
+    public UpdateFeedResponse getUpdatesByCursor(
+            final @Valid CursorPage page,
+            final @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        final Integer loggedUserId = userDetails == null ? null : userDetails.getId();
+
+        return updateService.findByCursor(page, null, loggedUserId);
+    }
+
+    @RequestMapping(path = "timeline", method = RequestMethod.GET)
+    public UpdateFeedResponse getTimeline(
+            final @Valid CursorPage page,
+            final @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return updateService.findTimeline(page, userDetails.getId());
+    }
+
     @RequestMapping(path = "tags/popular", method = RequestMethod.GET)
-    public List<Tag> getPopularTags() {
-        final List<Tag> tags = tagService.findTopPopular();
+    public List<Tag> getPopularTags(final @RequestParam(name = "window", defaultValue = "all") TrendWindow window) {
+        final List<Tag> tags = tagService.findTopPopular(window);
 
         return tags;
     }
@@ -79,6 +98,16 @@ public class UpdateController {
         return updateService.findPagedByUserId(page, userId, loggedUserId);
     }
 
+    @RequestMapping(path = "list/user/{userId}/cursor", method = RequestMethod.GET)
+    public UpdateFeedResponse getUpdatesForUserByCursor(
+            final @Valid CursorPage page,
+            final @PathVariable("userId") Integer userId,
+            final @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        final Integer loggedUserId = userDetails == null ? null : userDetails.getId();
+        return updateService.findByCursor(page, userId, loggedUserId);
+    }
+
     @RequestMapping(path = "list/tag/{tag}", method = RequestMethod.GET)
     public List<UpdateResponse> getUpdatesByTag(
             final @Valid Page page,
@@ -0,0 +1,63 @@
+package app.http.pojos;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.AssertFalse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset page request. The cursor is an opaque token holding the
+ * (created_at, id) of the last row of the previous page; an empty cursor
+ * means the first page. The cursor is decoded once when it is bound, and a
+ * malformed one fails validation instead of restarting at the first page.
+ */
+@Getter
+@NoArgsConstructor
+public class CursorPage {
+    private String cursor;
+    private boolean first = true;
+    private long createdAt;
+    private int id;
+    private boolean malformed;
+
+    public CursorPage(final String cursor) {
+        setCursor(cursor);
+    }
+
+    public void setCursor(final String cursor) {
+        this.cursor = cursor;
+        first = true;
+        malformed = false;
+        if (null == cursor || cursor.trim().isEmpty()) {
+            return;
+        }
+        try {
+            final String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            final int separator = raw.indexOf(':');
+            final long createdAt = Long.parseLong(raw.substring(0, separator));
+            final int id = Integer.parseInt(raw.substring(separator + 1));
+            if (createdAt < 0 || id <= 0) {
+                malformed = true;
+                return;
+            }
+            this.createdAt = createdAt;
+            this.id = id;
+            first = false;
+        } catch (final IllegalArgumentException | IndexOutOfBoundsException e) {
+            malformed = true;
+        }
+    }
+
+    @AssertFalse(message = "malformed cursor")
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    public static String encode(final long createdAt, final int id) {
+        final String raw = createdAt + ":" + id;
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,23 @@
+package app.http.pojos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Frame pushed over /ws/notification when a user's unread count changes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationCountResponse {
+    public static final String TYPE = "UNREAD_COUNT";
+
+    private String type;
+    private int notSeenCount;
+
+    public static NotificationCountResponse of(final int notSeenCount) {
+        return new NotificationCountResponse(TYPE, notSeenCount);
+    }
+
+}
@@ -7,6 +7,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -19,6 +21,8 @@ public class NotificationResponse {
     private NotificationType type;
     private long createdAt;
     private User from;
+    private int actorCount;
+    private List<User> recentActors;
 
     public static NotificationResponse createFromNotification(final Notification target) {
         final NotificationResponse notification = new NotificationResponse();
@@ -29,6 +33,7 @@ public class NotificationResponse {
         notification.setRelId(target.getRelId());
         notification.setSeen(target.isSeen());
         notification.setCreatedAt(target.getCreatedAt());
+        notification.setActorCount(target.getActorCount());
 
         return notification;
     }
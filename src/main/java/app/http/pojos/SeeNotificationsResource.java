@@ -0,0 +1,26 @@
+package app.http.pojos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Marks notifications as seen: every notification up to a created_at
+ * timestamp (inclusive), and/or the listed ids. There is no range by id: a
+ * reopened aggregated notification keeps its id but gets a new created_at,
+ * so only created_at tells which version of it the client has been sent.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeeNotificationsResource {
+    public static final int MAX_IDS = 500;
+
+    private Long upToCreatedAt;
+
+    @Size(max = MAX_IDS)
+    private List<Integer> ids;
+}
@@ -0,0 +1,17 @@
+package app.http.pojos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpdateFeedResponse implements Serializable {
+    private List<UpdateResponse> updates;
+    private String nextCursor;
+
+}
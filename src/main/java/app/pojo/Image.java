@@ -14,6 +14,7 @@ public class Image implements Serializable {
     private String mimeType;
     private int userId;
     private long createdAt;
+    private ImageStatus status;
     private byte[] data;
 
 }
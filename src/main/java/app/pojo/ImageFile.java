@@ -0,0 +1,21 @@
+package app.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.core.io.Resource;
+
+/**
+ * Stored image variant to be streamed to the client. A provisional file
+ * stands in for a variant that is not generated yet and must not be cached
+ * as that variant.
+ */
+@Data
+@AllArgsConstructor
+public class ImageFile {
+    private int imageId;
+    private String mimeType;
+    private long createdAt;
+    private Resource resource;
+    private boolean provisional;
+
+}
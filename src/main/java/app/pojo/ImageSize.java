@@ -1,7 +1,17 @@
 package app.pojo;
 
 public enum ImageSize {
-    small,
-    medium,
-    big
+    small(100),
+    medium(250),
+    big(500);
+
+    private final int side;
+
+    ImageSize(final int side) {
+        this.side = side;
+    }
+
+    public int getSide() {
+        return side;
+    }
 }
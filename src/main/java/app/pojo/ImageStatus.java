@@ -0,0 +1,7 @@
+package app.pojo;
+
+public enum ImageStatus {
+    PROCESSING,
+    READY,
+    FAILED
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -15,6 +17,9 @@ public class Notification {
     private boolean seen;
     private NotificationType type;
     private long createdAt;
+    private int actorCount = 1;
+    private List<Integer> recentActorIds;
+    private long openToken;
 
     public String getRelType() {
         return null != type ? type.name() : "";
@@ -44,7 +49,7 @@ public class Notification {
         final Notification notification = new Notification();
         notification.setFromUserId(source.getFromUserId());
         notification.setToUserId(source.getToUserId());
-        notification.setRelId(source.getId());
+        notification.setRelId(source.getRelId());
         notification.setSeen(source.isSeen());
         notification.setType(source.getType());
         notification.setCreatedAt(source.getCreatedAt());
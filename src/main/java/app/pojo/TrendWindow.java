@@ -0,0 +1,7 @@
+package app.pojo;
+
+public enum TrendWindow {
+    hour,
+    day,
+    all
+}
@@ -1,7 +1,8 @@
 package app.services;
 
+import app.core.counters.CounterType;
+import app.core.counters.WriteBehindCounters;
 import app.core.repos.CommentRepository;
-import app.core.repos.LikeRepository;
 import app.core.repos.UpdateRepository;
 import app.core.repos.UserRepository;
 import app.http.pojos.*;
@@ -16,37 +17,43 @@ public class CommentService {
 
     private final CommentRepository commentRepository;
     private final UpdateRepository updateRepository;
-    private final LikeRepository likeRepository;
+    private final LikedItems likedItems;
     private final ImageService imageService;
     private final UserRepository userRepository;
     private final NotificationService notificationService;
+    private final WriteBehindCounters counters;
 
     CommentService(
             final ImageService imageService,
             final UserRepository userRepository,
             final NotificationService notificationService,
-            final LikeRepository likeRepository,
+            final LikedItems likedItems,
             final UpdateRepository updateRepository,
-            final CommentRepository commentRepository
+            final CommentRepository commentRepository,
+            final WriteBehindCounters counters
     ) {
+        this.counters = counters;
         this.imageService = imageService;
         this.userRepository = userRepository;
         this.notificationService = notificationService;
-        this.likeRepository = likeRepository;
+        this.likedItems = likedItems;
         this.updateRepository = updateRepository;
         this.commentRepository = commentRepository;
     }
 
     public List<CommentResponse> findByUpdateIdPaged(final Page page, final int updateId, final Integer userId) {
-        final List<Comment> comments = commentRepository.findByUpdateIdPaged(updateId, page);
+        final List<Comment> comments = counters.read(() -> commentRepository.findByUpdateIdPaged(updateId, page), this::withPending);
         final List<CommentResponse> response = createCommentResult(comments, userId);
 
         return response;
     }
 
     public CommentResponse findById(final int id, final Integer userId) {
-        final Comment comment = commentRepository.findById(id);
-        final List<CommentResponse> response = createCommentResult(Collections.singletonList(comment), userId);
+        final List<Comment> comments = counters.read(
+                () -> Collections.singletonList(commentRepository.findById(id)),
+                this::withPending
+        );
+        final List<CommentResponse> response = createCommentResult(comments, userId);
 
         return response.get(0);
     }
@@ -70,6 +77,17 @@ public class CommentService {
         return response;
     }
 
+    /**
+     * Adds the buffered like deltas to the stored counts.
+     */
+    private List<Comment> withPending(final List<Comment> comments) {
+        for (final Comment comment : comments) {
+            comment.setLikes(comment.getLikes() + (int) counters.pending(CounterType.COMMENT_LIKES, comment.getId()));
+        }
+
+        return comments;
+    }
+
     private Map<Integer, User> getUserCommentOwners(final List<Comment> comments) {
         final Map<Integer, User> result = new HashMap<>();
         final Set<Integer> userIds = getUserIds(comments);
@@ -97,16 +115,11 @@ public class CommentService {
     }
 
     private Set<Integer> getLikedComments(List<Comment> comments, Integer userId) {
-        List<Like> likes = Collections.EMPTY_LIST;
-        if (userId != null) {
-            likes = likeRepository.findCommentLikesByIds(getCommentIds(comments), userId);
-        }
-        Set<Integer> likedUpdateIds = new HashSet<>();
-        for (Like like : likes) {
-            likedUpdateIds.add(like.getItemId());
+        if (userId == null) {
+            return new HashSet<>();
         }
 
-        return likedUpdateIds;
+        return likedItems.likedComments(userId, getCommentIds(comments));
     }
 
     private Set<Integer> getCommentIds(List<Comment> updates) {
@@ -128,7 +141,7 @@ public class CommentService {
         int newCommentId = commentRepository.add(comment);
         comment.setId(newCommentId);
 
-        updateRepository.incrementUpdateComments(commentResource.getUpdateId());
+        counters.increment(CounterType.UPDATE_COMMENTS, commentResource.getUpdateId());
 
         sendUpdateNotification(commentResource.getUpdateId(), userId);
 
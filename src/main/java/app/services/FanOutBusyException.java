@@ -0,0 +1,17 @@
+package app.services;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Too many updates are waiting for their follower fan-out; the update was
+ * not written and can be posted again later.
+ */
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "too many updates are being delivered, try again")
+public class FanOutBusyException extends RuntimeException {
+
+    public FanOutBusyException() {
+        super("too many updates pending fan-out");
+    }
+
+}
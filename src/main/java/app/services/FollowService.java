@@ -1,5 +1,7 @@
 package app.services;
 
+import app.core.counters.CounterType;
+import app.core.counters.WriteBehindCounters;
 import app.core.repos.FollowRepository;
 import app.core.repos.UserRepository;
 import org.springframework.stereotype.Service;
@@ -11,13 +13,19 @@ public class FollowService {
 
     private final FollowRepository followRepository;
     private final UserRepository userRepository;
+    private final WriteBehindCounters counters;
+    private final TimelineService timelineService;
 
     FollowService(
             final FollowRepository followRepository,
-            final UserRepository userRepository
+            final UserRepository userRepository,
+            final WriteBehindCounters counters,
+            final TimelineService timelineService
     ) {
         this.followRepository = followRepository;
         this.userRepository = userRepository;
+        this.counters = counters;
+        this.timelineService = timelineService;
     }
 
     @Transactional
@@ -25,10 +33,14 @@ public class FollowService {
         if (followedId == followerId) {
             return false;
         }
-        userRepository.incrementFollowedFor(followerId);
-        userRepository.incrementFollowersFor(followedId);
+        if (!followRepository.follow(followerId, followedId)) {
+            return false;
+        }
+        counters.increment(CounterType.USER_FOLLOWING, followerId);
+        counters.increment(CounterType.USER_FOLLOWERS, followedId);
+        timelineService.followed(followerId, followedId);
 
-        return followRepository.follow(followerId, followedId);
+        return true;
     }
 
     @Transactional
@@ -36,10 +48,14 @@ public class FollowService {
         if (followedId == followerId) {
             return false;
         }
-        userRepository.decrementFollowedFor(followerId);
-        userRepository.decrementFollowersFor(followedId);
+        if (!followRepository.unfollow(followerId, followedId)) {
+            return false;
+        }
+        counters.decrement(CounterType.USER_FOLLOWING, followerId);
+        counters.decrement(CounterType.USER_FOLLOWERS, followedId);
+        timelineService.unfollowed(followerId, followedId);
 
-        return followRepository.unfollow(followerId, followedId);
+        return true;
     }
 
 }
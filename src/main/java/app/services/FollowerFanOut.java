@@ -0,0 +1,209 @@
+package app.services;
+
+import app.core.repos.FollowRepository;
+import app.pojo.Notification;
+import app.pojo.NotificationType;
+import app.pojo.Update;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers a new update to its author's followers off the request thread:
+ * timeline entries and notifications. An update is handed over as a single
+ * task once the surrounding transaction commits; the worker pages through
+ * the author's followers CHUNK_SIZE at a time and writes each page with a
+ * single batched statement, so the request costs the same whatever the
+ * follower count.
+ *
+ * The queue counts updates, not recipients. {@link #admit} refuses a new
+ * update with 503 before it is written once MAX_PENDING updates are waiting
+ * or running. Handing over a committed update never blocks: the queue has
+ * room beyond MAX_PENDING for the updates that passed admit() and commit at
+ * the same moment, one per request thread. An update that still finds it
+ * full, or is still queued at shutdown, is lost and counted as
+ * fanout.dropped.
+ */
+@SuppressWarnings("unused")
+@Service
+public class FollowerFanOut implements PublicMetrics {
+
+    public static final int CHUNK_SIZE = 500;
+    private static final int THREADS = 4;
+    private static final int MAX_PENDING = 1000;
+    // Tomcat's default max-threads
+    private static final int MAX_COMMITTING = 200;
+
+    private final NotificationService notificationService;
+    private final TimelineService timelineService;
+    private final FollowRepository followRepository;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong lastLag = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    FollowerFanOut(
+            final NotificationService notificationService,
+            final TimelineService timelineService,
+            final FollowRepository followRepository
+    ) {
+        this.notificationService = notificationService;
+        this.timelineService = timelineService;
+        this.followRepository = followRepository;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                THREADS,
+                THREADS,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING + MAX_COMMITTING),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "fan-out-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+        );
+    }
+
+    /**
+     * Refuses a new update while MAX_PENDING updates are waiting for their
+     * fan-out, before anything is written, so the client can retry it later.
+     */
+    public void admit() {
+        if (pending.get() >= MAX_PENDING) {
+            refused.incrementAndGet();
+            throw new FanOutBusyException();
+        }
+    }
+
+    /**
+     * Hands the update over once the surrounding transaction commits.
+     */
+    public void fanOut(final Update update, final int authorId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            execute(new FanOut(update, authorId));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                execute(new FanOut(update, authorId));
+            }
+        });
+    }
+
+    private void execute(final FanOut fanOut) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(fanOut);
+        } catch (final RejectedExecutionException e) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+            System.out.println("Dropped fan-out of update " + fanOut.update.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The author's own timeline, then every page of followers. A page that
+     * fails is counted and skipped; the following pages still go out.
+     */
+    private void deliver(final Update update, final int authorId) {
+        timelineService.push(update, Collections.singletonList(authorId));
+        final boolean toTimelines = timelineService.pushesToFollowers(authorId);
+        final Notification notification = Notification.createForUpdate(update, authorId);
+        notification.setType(NotificationType.UPDATE_POSTED);
+
+        int after = 0;
+        List<Integer> followers;
+        do {
+            followers = followRepository.getFollowersOf(authorId, after, CHUNK_SIZE);
+            if (followers.isEmpty()) {
+                return;
+            }
+            after = followers.get(followers.size() - 1);
+            try {
+                if (toTimelines) {
+                    timelineService.push(update, followers);
+                }
+                notificationService.sendNotifications(notifications(notification, followers));
+            } catch (final Exception e) {
+                failed.addAndGet(followers.size());
+                System.out.println(e.getMessage());
+            }
+        } while (followers.size() == CHUNK_SIZE);
+    }
+
+    private static List<Notification> notifications(final Notification notification, final List<Integer> followers) {
+        final List<Notification> targets = new ArrayList<>(followers.size());
+        for (final int followerId : followers) {
+            final Notification target = Notification.copy(notification);
+            target.setToUserId(followerId);
+            targets.add(target);
+        }
+
+        return targets;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("fanout.pending", pending.get()));
+        metrics.add(new Metric<>("fanout.active", executor.getActiveCount()));
+        metrics.add(new Metric<>("fanout.completed", executor.getCompletedTaskCount()));
+        metrics.add(new Metric<>("fanout.refused", refused.get()));
+        metrics.add(new Metric<>("fanout.dropped", dropped.get()));
+        metrics.add(new Metric<>("fanout.failed", failed.get()));
+        metrics.add(new Metric<>("fanout.lag.last", lastLag.get()));
+        metrics.add(new Metric<>("fanout.lag.max", maxLag.get()));
+
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private class FanOut implements Runnable {
+        private final Update update;
+        private final int authorId;
+        private final long submittedAt = System.currentTimeMillis();
+
+        private FanOut(final Update update, final int authorId) {
+            this.update = update;
+            this.authorId = authorId;
+        }
+
+        @Override
+        public void run() {
+            final long lag = System.currentTimeMillis() - submittedAt;
+            lastLag.set(lag);
+            maxLag.accumulateAndGet(lag, Math::max);
+            try {
+                deliver(update, authorId);
+            } catch (final Exception e) {
+                failed.incrementAndGet();
+                System.out.println(e.getMessage());
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package app.services;
+
+import app.core.cache.LruCache;
+import app.pojo.ImageFile;
+import app.pojo.ImageSize;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Bytes of the small and medium variants, which are shown next to every
+ * feed row, comment and notification. A hit is served from memory without
+ * the images table or the disk. Only generated variants are cached, and
+ * since a variant never changes once written, entries are never
+ * invalidated, only evicted LRU once the cache holds max-bytes.
+ */
+@Service
+public class HotImages implements PublicMetrics {
+
+    // a variant larger than this is served from disk rather than evicting many avatars
+    private static final int MAX_ENTRY_BYTES = 256 * 1024;
+    // object headers, the ImageFile, the resource and the cache entry
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final LruCache<Key, ImageFile> images;
+
+    HotImages(final @Value("${image.cache.max-bytes:67108864}") long maxBytes) {
+        images = new LruCache<>(maxBytes, 0, HotImages::bytes);
+    }
+
+    public boolean isCached(final ImageSize size) {
+        return ImageSize.small == size || ImageSize.medium == size;
+    }
+
+    public ImageFile get(final int imageId, final ImageSize size) {
+        return images.get(new Key(imageId, size));
+    }
+
+    /**
+     * Reads a generated variant into memory and caches it. Returns the
+     * in-memory copy, or the file itself when it is too large or could not
+     * be read.
+     */
+    public ImageFile put(final ImageSize size, final ImageFile file) {
+        try {
+            if (MAX_ENTRY_BYTES < file.getResource().contentLength()) {
+                return file;
+            }
+            final byte[] data = Files.readAllBytes(file.getResource().getFile().toPath());
+            final ImageFile cached = new ImageFile(
+                    file.getImageId(),
+                    file.getMimeType(),
+                    file.getCreatedAt(),
+                    new ByteArrayResource(data),
+                    false
+            );
+            images.put(new Key(file.getImageId(), size), cached);
+
+            return cached;
+        } catch (final Exception e) {
+            System.out.println(e.getMessage());
+            return file;
+        }
+    }
+
+    private static long bytes(final ImageFile file) {
+        return ((ByteArrayResource) file.getResource()).getByteArray().length + ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final long hits = images.getHits();
+        final long misses = images.getMisses();
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("cache.image.size", images.size()));
+        metrics.add(new Metric<>("cache.image.bytes", images.weight()));
+        metrics.add(new Metric<>("cache.image.hit", hits));
+        metrics.add(new Metric<>("cache.image.miss", misses));
+        metrics.add(new Metric<>("cache.image.hit.ratio", 0 == hits + misses ? 0 : (double) hits / (hits + misses)));
+        metrics.add(new Metric<>("cache.image.eviction", images.getEvictions()));
+
+        return metrics;
+    }
+
+    private static class Key {
+        private final int imageId;
+        private final ImageSize size;
+
+        private Key(final int imageId, final ImageSize size) {
+            this.imageId = imageId;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+
+            return imageId == key.imageId && size == key.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * imageId + size.ordinal();
+        }
+    }
+
+}
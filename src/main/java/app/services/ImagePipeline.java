@@ -0,0 +1,224 @@
+package app.services;
+
+import app.core.repos.ImageRepository;
+import app.pojo.ImageSize;
+import app.pojo.ImageStatus;
+import app.utils.ImageScaler;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the scaled variants of uploaded images off the request thread.
+ * An image is submitted once its row has committed. The original is decoded
+ * and halved down towards the largest size once, then every {@link ImageSize}
+ * variant is scaled and written as its own task on a bounded worker pool,
+ * and the last variant to finish marks the image READY or FAILED.
+ *
+ * Work never runs on the submitting request thread. An image that does not
+ * fit the queue stays PROCESSING, and a sweep every SWEEP_MILLIS submits
+ * PROCESSING images that are not in the pipeline, until the queue is full.
+ * The same sweep picks up images left PROCESSING by a restart. Variant
+ * tasks submitted by a worker that do not fit are run by that worker.
+ */
+@SuppressWarnings("unused")
+@Service
+public class ImagePipeline implements PublicMetrics {
+
+    private static final int QUEUE_SIZE = 200;
+    private static final long SWEEP_MILLIS = 30_000;
+    private static final String WORKER_PREFIX = "image-worker-";
+    private static final int MAX_SIDE = Arrays.stream(ImageSize.values()).mapToInt(ImageSize::getSide).max().getAsInt();
+
+    private final ImageRepository imageRepository;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService sweeper;
+    // images queued or being processed, so a sweep does not submit them twice
+    private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inProgress = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong lastMillis = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+
+    ImagePipeline(final ImageRepository imageRepository) {
+        this.imageRepository = imageRepository;
+        final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE),
+                runnable -> {
+                    final Thread thread = new Thread(() -> {
+                        ImageScaler.keepScratch();
+                        runnable.run();
+                    }, WORKER_PREFIX + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    if (!Thread.currentThread().getName().startsWith(WORKER_PREFIX)) {
+                        throw new RejectedExecutionException("image queue is full");
+                    }
+                    runnable.run();
+                }
+        );
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "image-sweep");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    public void submit(final int imageId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(imageId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                enqueue(imageId);
+            }
+        });
+    }
+
+    /**
+     * Starts the sweeps, the first of which submits images left PROCESSING
+     * by a restart. It runs on the sweeper thread, not the startup thread.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, 0, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        executor.shutdown();
+    }
+
+    private void sweepQuietly() {
+        try {
+            for (final int imageId : imageRepository.findIdsByStatus(ImageStatus.PROCESSING)) {
+                if (!enqueue(imageId)) {
+                    return;
+                }
+            }
+        } catch (final Exception e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Queues an image unless it is already in the pipeline. Returns false
+     * when the queue is full; the image then stays PROCESSING for a sweep.
+     */
+    private boolean enqueue(final int imageId) {
+        if (!queued.add(imageId)) {
+            return true;
+        }
+        try {
+            executor.execute(() -> process(imageId));
+
+            return true;
+        } catch (final RejectedExecutionException e) {
+            queued.remove(imageId);
+            deferred.incrementAndGet();
+
+            return false;
+        }
+    }
+
+    private void process(final int imageId) {
+        final long startedAt = System.currentTimeMillis();
+        inProgress.incrementAndGet();
+        final BufferedImage source;
+        try {
+            final BufferedImage original = ImageIO.read(new File(ImageService.getImageFile(imageId)));
+            if (null == original) {
+                throw new IOException("Unsupported image format: " + imageId);
+            }
+            source = ImageScaler.reduce(original, MAX_SIDE, MAX_SIDE);
+        } catch (final Exception e) {
+            System.out.println(e.getMessage());
+            finish(imageId, false, startedAt);
+            return;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(ImageSize.values().length);
+        final AtomicBoolean variantFailed = new AtomicBoolean();
+        for (final ImageSize size : ImageSize.values()) {
+            executor.execute(() -> {
+                try {
+                    ImageIO.write(
+                            ImageScaler.scale(source, size.getSide(), size.getSide(), ImageScaler.Mode.CROP),
+                            "png",
+                            new File(ImageService.getImageFile(imageId, size))
+                    );
+                } catch (final Exception e) {
+                    variantFailed.set(true);
+                    System.out.println(e.getMessage());
+                }
+                if (0 == remaining.decrementAndGet()) {
+                    finish(imageId, !variantFailed.get(), startedAt);
+                }
+            });
+        }
+    }
+
+    private void finish(final int imageId, final boolean succeeded, final long startedAt) {
+        try {
+            imageRepository.setStatus(imageId, succeeded ? ImageStatus.READY : ImageStatus.FAILED);
+        } catch (final Exception e) {
+            System.out.println(e.getMessage());
+        }
+        (succeeded ? processed : failed).incrementAndGet();
+        lastMillis.set(System.currentTimeMillis() - startedAt);
+        inProgress.decrementAndGet();
+        queued.remove(imageId);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("image.pipeline.queue.size", executor.getQueue().size()));
+        metrics.add(new Metric<>("image.pipeline.in.progress", inProgress.get()));
+        metrics.add(new Metric<>("image.pipeline.processed", processed.get()));
+        metrics.add(new Metric<>("image.pipeline.failed", failed.get()));
+        metrics.add(new Metric<>("image.pipeline.deferred", deferred.get()));
+        metrics.add(new Metric<>("image.pipeline.last.millis", lastMillis.get()));
+
+        return metrics;
+    }
+
+}
@@ -1,32 +1,49 @@
 package app.services;
 
+import app.core.cache.LruCache;
 import app.core.repos.ImageRepository;
 import app.http.pojos.ImageUploadedResponse;
 import app.pojo.Image;
+import app.pojo.ImageFile;
 import app.pojo.ImageSize;
+import app.pojo.ImageStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.util.*;
 
 @Service
 public class ImageService {
 
     private static final String DEFAULT_PROFILE_PICTURE = "default_image";
+    private static final String SCALED_MIME_TYPE = "image/png";
+    private static final int AVATAR_CACHE_SIZE = 50_000;
+    // an upload refreshes this node's entry after commit; other nodes see it once theirs expires
+    private static final long AVATAR_TTL = 60 * 1000;
+    // cached for users without an avatar, so they are not looked up on every render
+    private static final Image NO_IMAGE = new Image();
 
     private final ImageRepository imageRepository;
+    private final ImagePipeline imagePipeline;
+    private final HotImages hotImages;
+    private final LruCache<Integer, Image> avatars = new LruCache<>(AVATAR_CACHE_SIZE, AVATAR_TTL);
 
     @Autowired
-    public ImageService(final ImageRepository imageRepository) {
+    public ImageService(
+            final ImageRepository imageRepository,
+            final ImagePipeline imagePipeline,
+            final HotImages hotImages
+    ) {
         this.imageRepository = imageRepository;
+        this.imagePipeline = imagePipeline;
+        this.hotImages = hotImages;
     }
 
     @Transactional
@@ -34,14 +51,31 @@ public class ImageService {
         final Image image = new Image();
         image.setMimeType(mimeType);
         image.setUserId(userId);
+        image.setStatus(ImageStatus.PROCESSING);
 
         final int imageId = imageRepository.add(image);
+        image.setId(imageId);
+        imageRepository.setCurrentForUser(userId, imageId);
         createFile(imageId, data);
-        createImageScaledCopies(imageId);
+        imagePipeline.submit(imageId);
+        updateAvatarAfterCommit(userId, image);
 
         return new ImageUploadedResponse(imageId);
     }
 
+    private void updateAvatarAfterCommit(final int userId, final Image image) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            avatars.put(userId, image);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                avatars.put(userId, image);
+            }
+        });
+    }
+
     private void createFile(final int imageId, final byte[] data) {
         try {
             final File file = new File(getImageFile(imageId));
@@ -54,140 +88,93 @@ public class ImageService {
         }
     }
 
-    private void createImageScaledCopies(final int imageId) {
-        resize(getImageFile(imageId), getImageFile(imageId) + "_small", 100, 100);
-        resize(getImageFile(imageId), getImageFile(imageId) + "_medium", 250, 250);
-        resize(getImageFile(imageId), getImageFile(imageId) + "_big", 500, 500);
-
+    static String getImageFile(final int imageId) {
+        return "/home/velizar/images/" + imageId;
     }
 
-    private String getImageFile(final int imageId) {
-        return "/home/velizar/images/" + imageId;
+    static String getImageFile(final int imageId, final ImageSize size) {
+        return getImageFile(imageId) + "_" + size.name();
     }
 
-    public Image readById(final int id) {
+    public ImageFile readById(final int id) {
         return readById(id, null);
     }
 
-    public Image readById(final int id, final ImageSize size) {
+    /**
+     * Locates an image variant without reading it, except for the small
+     * and medium variants, which are served from {@link HotImages}. Returns
+     * null when the image or its file does not exist. Scaled copies are
+     * always PNG; until they are generated the original is returned as a
+     * provisional file.
+     */
+    public ImageFile readById(final int id, final ImageSize size) {
         if (!isValidImageId(id)) {
             return getDefaultProfilePicture(size);
         }
-
-        final String filename;
-        switch (size) {
-            case small:
-                filename = getImageFile(id) + "_small";
-                break;
-            case medium:
-                filename = getImageFile(id) + "_medium";
-                break;
-            case big:
-                filename = getImageFile(id) + "_big";
-                break;
-            default:
-                filename = getImageFile(id);
-                break;
+        if (!hotImages.isCached(size)) {
+            return locate(id, size);
         }
-        final Image image = imageRepository.findById(id);
-        image.setData(getFile(filename));
-
-        return image;
-    }
 
-    private boolean isValidImageId(final int id) {
-        return 0 < id;
-    }
-
-    private Image getDefaultProfilePicture(final ImageSize size) {
-        final String filename = String.format("/%s_%s", DEFAULT_PROFILE_PICTURE, size.toString());
-        final Image image = new Image();
-        final String fileName = "/default_image_" + size.toString();
-        image.setMimeType("image/png");
-        image.setData(getResourceFile(fileName));
+        final ImageFile cached = hotImages.get(id, size);
+        if (null != cached) {
+            return cached;
+        }
+        final ImageFile file = locate(id, size);
+        if (null == file || file.isProvisional()) {
+            return file;
+        }
 
-        return image;
+        return hotImages.put(size, file);
     }
 
-    private byte[] getResourceFile(final String fileName) {
-        try {
-            final InputStream stream = getClass().getResourceAsStream(fileName);
-            byte[] response = new byte[stream.available()];
-            stream.read(response);
-
-            return response;
-        } catch (final Exception e) {
-            throw new RuntimeException(e);
+    private ImageFile locate(final int id, final ImageSize size) {
+        final String filename;
+        final String mimeType;
+        final Image image = imageRepository.findById(id);
+        if (null == image) {
+            return null;
         }
-    }
-
-    private byte[] getFile(final String filename) {
-        try {
-            // TODO remove hardcode
-            final File file = new File(filename);
-            if (!file.exists()) {
-                return null;
-            }
-
-            final FileInputStream in = new FileInputStream(file);
-            byte[] data = new byte[(int) file.length()];
-            in.read(data);
-            in.close();
-
-            return data;
-        } catch (final Exception e) {
-            throw new RuntimeException(e);
+        final boolean provisional = null != size && ImageStatus.READY != image.getStatus();
+        if (null == size || provisional) {
+            filename = getImageFile(id);
+            mimeType = image.getMimeType();
+        } else {
+            filename = getImageFile(id, size);
+            mimeType = SCALED_MIME_TYPE;
+        }
+        final File file = new File(filename);
+        if (!file.isFile()) {
+            return null;
         }
-    }
-
-    public static void resize(String inputImagePath, String outputImagePath, int scaledWidth, int scaledHeight) {
-        try {
-            File inputFile = new File(inputImagePath);
-            BufferedImage inputImage = ImageIO.read(inputFile);
 
-            BufferedImage outputImage = new BufferedImage(scaledWidth,
-                    scaledHeight, inputImage.getType());
+        return new ImageFile(id, mimeType, image.getCreatedAt(), new FileSystemResource(file), provisional);
+    }
 
-            Graphics2D g2d = outputImage.createGraphics();
-            g2d.drawImage(inputImage, 0, 0, scaledWidth, scaledHeight, null);
-            g2d.dispose();
+    private boolean isValidImageId(final int id) {
+        return 0 < id;
+    }
 
-            String formatName = "png";
+    private ImageFile getDefaultProfilePicture(final ImageSize size) {
+        final String fileName = String.format("%s_%s", DEFAULT_PROFILE_PICTURE, null == size ? ImageSize.big : size);
 
-            ImageIO.write(outputImage, formatName, new File(outputImagePath));
-        } catch (final Exception e) {
-            throw new RuntimeException(e);
-        }
+        return new ImageFile(0, SCALED_MIME_TYPE, 0, new ClassPathResource(fileName), false);
     }
 
     public Map<Integer, Image> getImageForUsers(final Set<Integer> userIds) {
-        final java.util.List<Image> images = imageRepository.findForUsers(userIds);
-        final Map<Integer, Image> result = new HashMap<>();
-        final Set<Integer> rUserIds = new HashSet<>();
-        for (final Image image : images) {
-            rUserIds.add(image.getUserId());
-        }
-        for (final Integer userId : userIds) {
-            final java.util.List<Image> userImages = new ArrayList<>();
-            for (final Image image : images) {
-                if (image.getUserId() == userId) {
-                    userImages.add(image);
-                }
+        final Map<Integer, Image> images = avatars.getAll(userIds, missing -> {
+            final Map<Integer, Image> result = new HashMap<>();
+            for (final int userId : missing) {
+                result.put(userId, NO_IMAGE);
             }
-            Image tImage = null;
-            for (final Image image : userImages) {
-                if (null == tImage || image.getCreatedAt() > tImage.getCreatedAt()) {
-                    tImage = image;
-                }
-            }
-            if (null == tImage) {
-                continue;
+            for (final Image image : imageRepository.findCurrentForUsers(missing)) {
+                result.put(image.getUserId(), image);
             }
 
-            result.put(userId, tImage);
-        }
+            return result;
+        });
+        images.values().removeIf(image -> NO_IMAGE == image);
 
-        return result;
+        return images;
     }
 
 }
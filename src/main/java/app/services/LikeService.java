@@ -1,132 +1,98 @@
 package app.services;
 
+import app.core.counters.CounterType;
+import app.core.counters.WriteBehindCounters;
 import app.core.repos.CommentRepository;
 import app.core.repos.LikeRepository;
 import app.core.repos.UpdateRepository;
 import app.pojo.*;
+import org.springframework.dao.DeadlockLoserDataAccessException;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
 
 @Component
 public class LikeService {
+    private static final int ATTEMPTS = 5;
+
     private final LikeRepository likeRepository;
     private final UpdateRepository updateRepository;
     private final CommentRepository commentRepository;
     private final NotificationService notificationService;
+    private final WriteBehindCounters counters;
+    private final LikedItems likedItems;
+    private final TransactionTemplate transactionTemplate;
 
     LikeService(
             final LikeRepository likeRepository,
             final UpdateRepository updateRepository,
             final CommentRepository commentRepository,
-            final NotificationService notificationService
-
+            final NotificationService notificationService,
+            final WriteBehindCounters counters,
+            final LikedItems likedItems,
+            final PlatformTransactionManager transactionManager
     ) {
+        this.likedItems = likedItems;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.notificationService = notificationService;
+        this.counters = counters;
         this.likeRepository = likeRepository;
         this.updateRepository = updateRepository;
         this.commentRepository = commentRepository;
     }
 
-    @Transactional
     public boolean likeUpdate(final int updateId, final int userId) {
-        final boolean liked = addUpdateLike(updateId, userId);
-        if (liked) {
-            incrementUpdateLikes(updateId);
-            this.sendUpdateNotification(updateId, userId);
+        return inTransaction(() -> {
+            final Integer ownerId = updateRepository.findOwnerId(updateId);
+            if (null == ownerId || !likeRepository.addUpdateLike(updateId, userId)) {
+                return false;
+            }
+            counters.increment(CounterType.UPDATE_LIKES, updateId);
+            likedItems.liked(userId, LikeType.UPDATE, updateId);
+            sendUpdateNotification(updateId, ownerId, userId);
 
             return true;
-        } else {
-            return false;
-        }
+        });
     }
 
-    @Transactional
     public boolean unlikeUpdate(final int updateId, final int userId) {
-        final boolean unliked = removeUpdateLike(updateId, userId);
-        if (unliked) {
-            decrementUpdateLikes(updateId);
+        return inTransaction(() -> {
+            if (!likeRepository.deleteUpdateLike(updateId, userId)) {
+                return false;
+            }
+            counters.decrement(CounterType.UPDATE_LIKES, updateId);
+            likedItems.unliked(userId, LikeType.UPDATE, updateId);
 
             return true;
-        } else {
-            return false;
-        }
+        });
     }
 
-    @Transactional
     public boolean likeComment(final int commentId, final int userId) {
-        final boolean liked = addCommentLike(commentId, userId);
-        if (liked) {
-            incrementCommentLikes(commentId);
-            sendCommentNotification(commentId, userId);
+        return inTransaction(() -> {
+            final Integer ownerId = commentRepository.findOwnerId(commentId);
+            if (null == ownerId || !likeRepository.addCommentLike(commentId, userId)) {
+                return false;
+            }
+            counters.increment(CounterType.COMMENT_LIKES, commentId);
+            likedItems.liked(userId, LikeType.COMMENT, commentId);
+            sendCommentNotification(commentId, ownerId, userId);
 
             return true;
-        } else {
-            return false;
-        }
+        });
     }
 
-    @Transactional
     public boolean unlikeComment(final int commentId, final int userId) {
-        final boolean unliked = removeCommentLike(commentId, userId);
-        if (unliked) {
-            decrementCommentLikes(commentId);
+        return inTransaction(() -> {
+            if (!likeRepository.deleteCommentLike(commentId, userId)) {
+                return false;
+            }
+            counters.decrement(CounterType.COMMENT_LIKES, commentId);
+            likedItems.unliked(userId, LikeType.COMMENT, commentId);
 
             return true;
-        } else {
-            return false;
-        }
-    }
-
-    private void incrementUpdateLikes(final int updateId) {
-        updateRepository.incrementUpdateLikes(updateId);
-    }
-
-    private void decrementUpdateLikes(final int updateId) {
-        updateRepository.decrementUpdateLikes(updateId);
-    }
-
-    private void incrementCommentLikes(final int commentId) {
-        commentRepository.incrementCommentLikes(commentId);
-    }
-
-    private void decrementCommentLikes(final int commentId) {
-        commentRepository.decrementCommentLikes(commentId);
-    }
-
-    private boolean addUpdateLike(final int updateId, final int userId) {
-        if (!updateRepository.exists(updateId) || hasUserLikedUpdate(updateId, userId)) {
-            return false;
-        }
-        addUpdateLikeLink(updateId, userId);
-
-        return true;
-    }
-
-    private boolean addCommentLike(final int commentId, final int userId) {
-        if (!commentRepository.exists(commentId) || hasUserLikedComment(commentId, userId)) {
-            return false;
-        }
-        addCommentLikeLink(commentId, userId);
-
-        return true;
-    }
-
-    private boolean removeUpdateLike(final int updateId, final int userId) {
-        if (!updateRepository.exists(updateId) || !hasUserLikedUpdate(updateId, userId)) {
-            return false;
-        }
-        likeRepository.deleteUpdateLike(updateId, userId);
-
-        return true;
-    }
-
-    private boolean removeCommentLike(final int commentId, final int userId) {
-        if (!commentRepository.exists(commentId) || !hasUserLikedComment(commentId, userId)) {
-            return false;
-        }
-        likeRepository.deleteCommentLike(commentId, userId);
-
-        return true;
+        });
     }
 
     public boolean hasUserLikedUpdate(final int updateId, final int userId) {
@@ -147,36 +113,50 @@ public class LikeService {
         return true;
     }
 
-    private void addUpdateLikeLink(final int updateId, final int userId) {
-        likeRepository.addUpdateLike(updateId, userId);
-    }
-
-    private void addCommentLikeLink(final int updateId, final int userId) {
-        likeRepository.addCommentLike(updateId, userId);
+    /**
+     * Runs a like or unlike in its own transaction. Concurrent INSERT IGNORE
+     * and DELETE of one like row can deadlock in InnoDB; the loser is rolled
+     * back whole, together with its counter, cache and notification changes,
+     * so it is run again.
+     */
+    private boolean inTransaction(final Supplier<Boolean> change) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> change.get());
+            } catch (final DeadlockLoserDataAccessException e) {
+                if (ATTEMPTS == attempt) {
+                    throw e;
+                }
+            }
+        }
     }
 
-    private void sendUpdateNotification(final int updateId, final int userId) {
-        final Update update = this.updateRepository.findById(updateId);
-        final int updateOwnerId = update.getUserId();
+    private void sendUpdateNotification(final int updateId, final int updateOwnerId, final int userId) {
+        if (updateOwnerId == userId) {
+            return;
+        }
+        final Update update = new Update();
+        update.setId(updateId);
+        update.setUserId(updateOwnerId);
 
         final Notification notification = Notification.createForUpdate(update, userId);
         notification.setType(NotificationType.UPDATE_LIKE);
 
-        if (updateOwnerId != userId) {
-            this.notificationService.sendNotification(updateOwnerId, notification);
-        }
+        this.notificationService.sendNotification(updateOwnerId, notification);
     }
 
-    private void sendCommentNotification(final int commentId, final int userId) {
-        final Comment comment = this.commentRepository.findById(commentId);
-        final int commentOwnerId = comment.getUserId();
+    private void sendCommentNotification(final int commentId, final int commentOwnerId, final int userId) {
+        if (commentOwnerId == userId) {
+            return;
+        }
+        final Comment comment = new Comment();
+        comment.setId(commentId);
+        comment.setUserId(commentOwnerId);
 
         final Notification notification = Notification.createForComment(comment, userId);
         notification.setType(NotificationType.COMMENT_LIKE);
 
-        if (commentOwnerId != userId) {
-            this.notificationService.sendNotification(commentOwnerId, notification);
-        }
+        this.notificationService.sendNotification(commentOwnerId, notification);
     }
 
 }
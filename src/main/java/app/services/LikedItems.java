@@ -0,0 +1,191 @@
+package app.services;
+
+import app.core.cache.LruCache;
+import app.core.cache.SortedIntSet;
+import app.core.repos.LikeRepository;
+import app.pojo.Like;
+import app.pojo.LikeType;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Per-user sets of liked update and comment ids used to resolve the
+ * "liked" flag of feed and comment pages in memory. A user's set is loaded
+ * on first use, kept up to date by like and unlike, and evicted LRU once the
+ * cache holds MAX_BYTES. A like or unlike on another node is not seen here,
+ * so sets expire after TTL_MILLIS and are loaded again. Users with more than
+ * MAX_LIKES likes get a TOO_LARGE marker instead of a set and fall back to
+ * an IN query per page without reloading their likes on every page.
+ */
+@SuppressWarnings("unused")
+@Service
+public class LikedItems implements PublicMetrics {
+
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+    private static final long TTL_MILLIS = 60 * 1000;
+    private static final int MAX_LIKES = 20_000;
+    private static final int STRIPES = 1024;
+    // the Key, the cache entry and its LinkedHashMap node and table slot
+    private static final int ENTRY_OVERHEAD = 104;
+    private static final SortedIntSet TOO_LARGE = new SortedIntSet(new int[0], 0);
+
+    private final LikeRepository likeRepository;
+    private final LruCache<Key, SortedIntSet> sets = new LruCache<>(
+            MAX_BYTES,
+            TTL_MILLIS,
+            set -> set.bytes() + ENTRY_OVERHEAD
+    );
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    LikedItems(final LikeRepository likeRepository) {
+        this.likeRepository = likeRepository;
+    }
+
+    public Set<Integer> likedUpdates(final int userId, final Set<Integer> updateIds) {
+        return liked(new Key(userId, LikeType.UPDATE), updateIds);
+    }
+
+    public Set<Integer> likedComments(final int userId, final Set<Integer> commentIds) {
+        return liked(new Key(userId, LikeType.COMMENT), commentIds);
+    }
+
+    public void liked(final int userId, final LikeType type, final int itemId) {
+        afterCommit(new Key(userId, type), set -> set.add(itemId));
+    }
+
+    public void unliked(final int userId, final LikeType type, final int itemId) {
+        afterCommit(new Key(userId, type), set -> set.remove(itemId));
+    }
+
+    private Set<Integer> liked(final Key key, final Set<Integer> itemIds) {
+        final Set<Integer> result = new HashSet<>();
+        if (itemIds.isEmpty()) {
+            return result;
+        }
+        final SortedIntSet set = get(key);
+        if (TOO_LARGE == set) {
+            for (final Like like : findLikes(key, itemIds)) {
+                result.add(like.getItemId());
+            }
+
+            return result;
+        }
+        for (final int itemId : itemIds) {
+            if (set.contains(itemId)) {
+                result.add(itemId);
+            }
+        }
+
+        return result;
+    }
+
+    private SortedIntSet get(final Key key) {
+        final SortedIntSet cached = sets.get(key);
+        if (null != cached) {
+            return cached;
+        }
+        final long version = versions.get(stripe(key));
+        final List<Integer> ids = LikeType.UPDATE == key.type
+                ? likeRepository.findLikedUpdateIds(key.userId, MAX_LIKES + 1)
+                : likeRepository.findLikedCommentIds(key.userId, MAX_LIKES + 1);
+        final SortedIntSet loaded;
+        if (ids.size() > MAX_LIKES) {
+            loaded = TOO_LARGE;
+        } else {
+            final int[] values = new int[ids.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ids.get(i);
+            }
+            loaded = new SortedIntSet(values, values.length);
+        }
+        // a like or unlike committed while loading may be missing from the
+        // result, so only cache sets loaded without a concurrent change
+        if (versions.get(stripe(key)) == version) {
+            sets.put(key, loaded);
+            if (versions.get(stripe(key)) != version) {
+                sets.invalidate(key);
+            }
+        }
+
+        return loaded;
+    }
+
+    private List<Like> findLikes(final Key key, final Set<Integer> itemIds) {
+        return LikeType.UPDATE == key.type
+                ? likeRepository.findUpdateLikesByIds(itemIds, key.userId)
+                : likeRepository.findCommentLikesByIds(itemIds, key.userId);
+    }
+
+    private void afterCommit(final Key key, final Consumer<SortedIntSet> change) {
+        final Runnable apply = () -> {
+            versions.incrementAndGet(stripe(key));
+            final SortedIntSet set = sets.get(key);
+            if (null != set && TOO_LARGE != set) {
+                change.accept(set);
+                sets.reweigh(key);
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                apply.run();
+            }
+        });
+    }
+
+    private int stripe(final Key key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("cache.liked.size", sets.size()));
+        metrics.add(new Metric<>("cache.liked.bytes", sets.weight()));
+        metrics.add(new Metric<>("cache.liked.hit", sets.getHits()));
+        metrics.add(new Metric<>("cache.liked.miss", sets.getMisses()));
+        metrics.add(new Metric<>("cache.liked.eviction", sets.getEvictions()));
+
+        return metrics;
+    }
+
+    private static class Key {
+        private final int userId;
+        private final LikeType type;
+
+        private Key(final int userId, final LikeType type) {
+            this.userId = userId;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+
+            return userId == key.userId && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * userId + type.ordinal();
+        }
+    }
+
+}
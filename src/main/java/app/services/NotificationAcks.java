@@ -0,0 +1,222 @@
+package app.services;
+
+import app.core.repos.NotificationRepository;
+import app.http.pojos.SeeNotificationsResource;
+import app.websocket.notification.NotificationHandler;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Marks notifications as seen. Single acknowledgements, from
+ * /api/notification/{id}/see or SEE frames on the socket, are buffered per
+ * user for WINDOW_MILLIS and written with one UPDATE per user, so opening
+ * the notification drawer costs one statement instead of one per item.
+ * A user's buffer is written as soon as it holds MAX_IDS ids, so it never
+ * grows past one statement. Range and list acknowledgements are written
+ * immediately.
+ *
+ * Ids whose statement fails are buffered again and retried with the next
+ * flush; seeing a notification twice has no effect, so a retry is safe.
+ */
+@SuppressWarnings("unused")
+@Service
+public class NotificationAcks implements PublicMetrics {
+
+    private static final long WINDOW_MILLIS = 250;
+    private static final int MAX_IDS = SeeNotificationsResource.MAX_IDS;
+
+    private final NotificationRepository notificationRepository;
+    private final UnreadNotifications unreadNotifications;
+    private final ScheduledExecutorService flusher;
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    private volatile Map<Integer, Set<Integer>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong acks = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    NotificationAcks(
+            final NotificationRepository notificationRepository,
+            final UnreadNotifications unreadNotifications,
+            final NotificationHandler notificationHandler
+    ) {
+        this.notificationRepository = notificationRepository;
+        this.unreadNotifications = unreadNotifications;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "notification-acks");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, WINDOW_MILLIS, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        notificationHandler.onSee(this::onFrame);
+    }
+
+    public void see(final int notificationId, final int userId) {
+        acks.incrementAndGet();
+        final int buffered;
+        swapLock.readLock().lock();
+        try {
+            final Set<Integer> ids = pending.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet());
+            ids.add(notificationId);
+            buffered = ids.size();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        if (MAX_IDS <= buffered) {
+            flushUser(userId);
+        }
+    }
+
+    /**
+     * Applies a bulk acknowledgement and returns how many notifications it
+     * marked as seen.
+     */
+    public int seeAll(final int userId, final SeeNotificationsResource resource) {
+        int seen = 0;
+        if (null != resource.getUpToCreatedAt()) {
+            seen += notificationRepository.seeUpToCreatedAt(userId, resource.getUpToCreatedAt());
+            statements.incrementAndGet();
+        }
+        if (null != resource.getIds() && !resource.getIds().isEmpty()) {
+            seen += seeIds(userId, new HashSet<>(resource.getIds()));
+        }
+        if (0 < seen) {
+            unreadNotifications.seen(userId, seen);
+        }
+
+        return seen;
+    }
+
+    /**
+     * SEE frame from the socket: listed ids are coalesced like single
+     * acknowledgements, ranges are applied at once.
+     */
+    private void onFrame(final int userId, final SeeNotificationsResource resource) {
+        if (null != resource.getIds()) {
+            for (final int notificationId : resource.getIds()) {
+                see(notificationId, userId);
+            }
+        }
+        if (null != resource.getUpToCreatedAt()) {
+            seeAll(userId, new SeeNotificationsResource(resource.getUpToCreatedAt(), null));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final Exception e) {
+            failed.incrementAndGet();
+            System.out.println(e.getMessage());
+        }
+    }
+
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final Map<Integer, Set<Integer>> swapped;
+        swapLock.writeLock().lock();
+        try {
+            swapped = pending;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        for (final Map.Entry<Integer, Set<Integer>> entry : swapped.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Writes one user's buffer now. It is taken out under the write lock, so
+     * no concurrent see() can still be adding to it.
+     */
+    private void flushUser(final int userId) {
+        final Set<Integer> ids;
+        swapLock.writeLock().lock();
+        try {
+            ids = pending.remove(userId);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        if (null != ids) {
+            write(userId, ids);
+        }
+    }
+
+    /**
+     * Writes buffered ids of one user. When a statement fails, its ids and
+     * those not yet written go back into the buffer for the next flush; the
+     * ones written before it are counted as seen.
+     */
+    private void write(final int userId, final Set<Integer> notificationIds) {
+        final List<Integer> ids = new ArrayList<>(notificationIds);
+        int seen = 0;
+        int from = 0;
+        try {
+            for (; from < ids.size(); from += MAX_IDS) {
+                seen += notificationRepository.seeIds(userId, ids.subList(from, Math.min(from + MAX_IDS, ids.size())));
+                statements.incrementAndGet();
+            }
+        } catch (final Exception e) {
+            failed.incrementAndGet();
+            System.out.println(e.getMessage());
+            requeue(userId, ids.subList(from, ids.size()));
+        }
+        if (0 < seen) {
+            unreadNotifications.seen(userId, seen);
+        }
+    }
+
+    private void requeue(final int userId, final List<Integer> ids) {
+        swapLock.readLock().lock();
+        try {
+            pending.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).addAll(ids);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private int seeIds(final int userId, final Set<Integer> notificationIds) {
+        final List<Integer> ids = new ArrayList<>(notificationIds);
+        int seen = 0;
+        for (int from = 0; from < ids.size(); from += MAX_IDS) {
+            seen += notificationRepository.seeIds(userId, ids.subList(from, Math.min(from + MAX_IDS, ids.size())));
+            statements.incrementAndGet();
+        }
+
+        return seen;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("notification.acks.pending.users", pending.size()));
+        metrics.add(new Metric<>("notification.acks.received", acks.get()));
+        metrics.add(new Metric<>("notification.acks.statements", statements.get()));
+        metrics.add(new Metric<>("notification.acks.failed", failed.get()));
+
+        return metrics;
+    }
+
+}
@@ -0,0 +1,330 @@
+package app.services;
+
+import app.core.repos.NotificationRepository;
+import app.pojo.Notification;
+import app.pojo.NotificationType;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Collapses like and comment notifications about the same item for the same
+ * recipient ("X and 42 others liked your update"). Events are buffered for
+ * WINDOW_MILLIS after their transaction commits. Each window then costs one
+ * multi-row upsert, one read of the affected rows, a few statements on their
+ * actors and one push per aggregated notification, however many events it
+ * collected.
+ *
+ * An unseen notification keeps collecting actors across windows until the
+ * recipient sees it; the next event after that reopens it. Actors are
+ * counted once per opening, so liking, unliking and liking again does not
+ * add to "X and N others". Whether a row became unseen is decided by the
+ * upsert, which stamps the rows it inserts or reopens with the write's
+ * token. The stamp is read back in the same transaction, so a row the
+ * recipient marks as seen meanwhile is counted exactly once.
+ */
+@SuppressWarnings("unused")
+@Service
+public class NotificationAggregator implements PublicMetrics {
+
+    public static final Set<NotificationType> AGGREGATED = EnumSet.of(
+            NotificationType.UPDATE_LIKE,
+            NotificationType.UPDATE_COMMENT,
+            NotificationType.COMMENT_LIKE
+    );
+    private static final long WINDOW_MILLIS = 2000;
+    private static final int CHUNK_SIZE = 500;
+
+    private final NotificationRepository notificationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService flusher;
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final List<AggregateListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Map<Key, Aggregate> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    NotificationAggregator(
+            final NotificationRepository notificationRepository,
+            final PlatformTransactionManager transactionManager
+    ) {
+        this.notificationRepository = notificationRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "notification-aggregator");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, WINDOW_MILLIS, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called with the written notifications and the number of them that
+     * became unseen (inserted or reopened) per recipient.
+     */
+    public interface AggregateListener {
+        void written(List<Notification> notifications, Map<Integer, Integer> newlyUnseen);
+    }
+
+    public void onWritten(final AggregateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void add(final Notification notification) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            addNow(notification);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                addNow(notification);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    private void addNow(final Notification notification) {
+        events.incrementAndGet();
+        final Key key = new Key(notification.getToUserId(), notification.getRelId(), notification.getType());
+        swapLock.readLock().lock();
+        try {
+            pending.computeIfAbsent(key, k -> new Aggregate()).add(notification.getFromUserId());
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final Exception e) {
+            failed.incrementAndGet();
+            System.out.println(e.getMessage());
+        }
+    }
+
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final Map<Key, Aggregate> swapped;
+        swapLock.writeLock().lock();
+        try {
+            swapped = pending;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        final long createdAt = System.currentTimeMillis() / 1000;
+        final List<Notification> notifications = new ArrayList<>(swapped.size());
+        for (final Map.Entry<Key, Aggregate> entry : swapped.entrySet()) {
+            notifications.add(entry.getValue().toNotification(entry.getKey(), createdAt));
+        }
+        for (int from = 0; from < notifications.size(); from += CHUNK_SIZE) {
+            write(notifications.subList(from, Math.min(from + CHUNK_SIZE, notifications.size())));
+        }
+    }
+
+    /**
+     * Writes one chunk in its own transaction. A chunk that fails is merged
+     * back into pending for the next window, so neither its actors nor the
+     * chunks after it are lost.
+     */
+    private void write(final List<Notification> chunk) {
+        final Map<Integer, Integer> newlyUnseen = new HashMap<>();
+        final List<Notification> current;
+        try {
+            current = transactionTemplate.execute(status -> upsert(chunk, newlyUnseen));
+        } catch (final RuntimeException e) {
+            failed.incrementAndGet();
+            System.out.println(e.getMessage());
+            requeue(chunk);
+            return;
+        }
+        written.addAndGet(chunk.size());
+
+        for (final AggregateListener listener : listeners) {
+            try {
+                listener.written(current, newlyUnseen);
+            } catch (final RuntimeException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    private void requeue(final List<Notification> chunk) {
+        swapLock.readLock().lock();
+        try {
+            for (final Notification notification : chunk) {
+                final Key key = new Key(notification.getToUserId(), notification.getRelId(), notification.getType());
+                pending.computeIfAbsent(key, k -> new Aggregate()).addOlder(notification.getRecentActorIds());
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the chunk and returns its rows as they are now. Rows inserted or
+     * reopened by this write start with the window's actors; the others get
+     * the window's actors they have not had yet.
+     */
+    private List<Notification> upsert(final List<Notification> chunk, final Map<Integer, Integer> newlyUnseen) {
+        long token = 0;
+        while (0 == token) {
+            token = ThreadLocalRandom.current().nextLong();
+        }
+        notificationRepository.upsertAggregated(chunk, token);
+        final List<Notification> rows = notificationRepository.findByKeys(chunk);
+
+        final Map<Key, Notification> events = new HashMap<>();
+        for (final Notification event : chunk) {
+            events.put(new Key(event.getToUserId(), event.getRelId(), event.getType()), event);
+        }
+        final Map<Integer, List<Integer>> actors = new HashMap<>();
+        final List<Integer> opened = new ArrayList<>();
+        final List<Notification> extended = new ArrayList<>();
+        for (final Notification row : rows) {
+            actors.put(row.getId(), events.get(new Key(row.getToUserId(), row.getRelId(), row.getType())).getRecentActorIds());
+            if (token == row.getOpenToken()) {
+                opened.add(row.getId());
+                newlyUnseen.merge(row.getToUserId(), 1, Integer::sum);
+            } else {
+                extended.add(row);
+            }
+        }
+        notificationRepository.resetActors(opened);
+
+        final Map<Integer, List<Integer>> extendedActors = new HashMap<>();
+        for (final Notification row : extended) {
+            extendedActors.put(row.getId(), actors.get(row.getId()));
+        }
+        final Map<Integer, Set<Integer>> known = notificationRepository.findActors(extendedActors);
+        for (final Notification row : extended) {
+            final Set<Integer> before = known.getOrDefault(row.getId(), Collections.emptySet());
+            final LinkedHashSet<Integer> recent = new LinkedHashSet<>();
+            for (final Integer actorId : actors.get(row.getId())) {
+                if (!before.contains(actorId)) {
+                    row.setActorCount(row.getActorCount() + 1);
+                }
+                recent.add(actorId);
+            }
+            recent.addAll(row.getRecentActorIds());
+            row.setRecentActorIds(new ArrayList<>(recent).subList(0, Math.min(recent.size(), NotificationRepository.RECENT_ACTORS)));
+        }
+        notificationRepository.updateActors(extended);
+        notificationRepository.addActors(actors);
+
+        return rows;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("notification.aggregate.pending", pending.size()));
+        metrics.add(new Metric<>("notification.aggregate.events", events.get()));
+        metrics.add(new Metric<>("notification.aggregate.written", written.get()));
+        metrics.add(new Metric<>("notification.aggregate.failed", failed.get()));
+
+        return metrics;
+    }
+
+    private static class Aggregate {
+        // most recent actor last
+        private final LinkedHashSet<Integer> actors = new LinkedHashSet<>();
+
+        private synchronized void add(final int actorId) {
+            actors.remove(actorId);
+            actors.add(actorId);
+        }
+
+        /**
+         * Puts actors of an earlier window, newest first, before the ones
+         * added since.
+         */
+        private synchronized void addOlder(final List<Integer> newestFirst) {
+            final List<Integer> since = new ArrayList<>(actors);
+            actors.clear();
+            for (int i = newestFirst.size() - 1; 0 <= i; i--) {
+                actors.add(newestFirst.get(i));
+            }
+            for (final Integer actorId : since) {
+                add(actorId);
+            }
+        }
+
+        private synchronized Notification toNotification(final Key key, final long createdAt) {
+            final List<Integer> newestFirst = new ArrayList<>(actors);
+            Collections.reverse(newestFirst);
+
+            final Notification notification = new Notification();
+            notification.setToUserId(key.toUserId);
+            notification.setRelId(key.relId);
+            notification.setType(key.type);
+            notification.setFromUserId(newestFirst.get(0));
+            notification.setActorCount(newestFirst.size());
+            notification.setRecentActorIds(newestFirst);
+            notification.setCreatedAt(createdAt);
+
+            return notification;
+        }
+    }
+
+    private static class Key {
+        private final int toUserId;
+        private final int relId;
+        private final NotificationType type;
+
+        private Key(final int toUserId, final int relId, final NotificationType type) {
+            this.toUserId = toUserId;
+            this.relId = relId;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+
+            return toUserId == key.toUserId && relId == key.relId && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * toUserId + relId) + (null == type ? 0 : type.hashCode());
+        }
+    }
+
+}
@@ -5,6 +5,7 @@ import app.core.repos.UserRepository;
 import app.http.pojos.NotificationInfoResponse;
 import app.http.pojos.NotificationResponse;
 import app.http.pojos.Page;
+import app.http.pojos.SeeNotificationsResource;
 import app.pojo.Notification;
 import app.pojo.NotificationType;
 import app.pojo.User;
@@ -22,28 +23,89 @@ public class NotificationService {
     private final NotificationRepository notificationRepository;
     private final NotificationHandler notificationHandler;
     private final UserRepository userRepository;
+    private final UnreadNotifications unreadNotifications;
+    private final NotificationAcks notificationAcks;
+    private final NotificationAggregator notificationAggregator;
 
     NotificationService(
             final NotificationRepository notificationRepository,
             final NotificationHandler notificationHandler,
-            final UserRepository userRepository
+            final UserRepository userRepository,
+            final UnreadNotifications unreadNotifications,
+            final NotificationAcks notificationAcks,
+            final NotificationAggregator notificationAggregator
     ) {
         this.notificationRepository = notificationRepository;
         this.notificationHandler = notificationHandler;
         this.userRepository = userRepository;
+        this.unreadNotifications = unreadNotifications;
+        this.notificationAcks = notificationAcks;
+        this.notificationAggregator = notificationAggregator;
+        this.notificationAggregator.onWritten(this::sendAggregated);
     }
 
     public void sendNotification(final int toUserId, final Notification notification) {
+        if (NotificationAggregator.AGGREGATED.contains(notification.getType())) {
+            notificationAggregator.add(notification);
+            return;
+        }
         notificationRepository.add(notification);
+        unreadNotifications.added(Collections.singletonMap(notification.getToUserId(), 1));
         notificationHandler.sendToUser(toUserId, buildNotificationResponse(notification));
     }
 
+    public void sendNotifications(final List<Notification> notifications) {
+        notificationRepository.addAll(notifications);
+        final Map<Integer, Integer> unread = new HashMap<>();
+        for (final Notification notification : notifications) {
+            unread.merge(notification.getToUserId(), 1, Integer::sum);
+        }
+        unreadNotifications.added(unread);
+        final Map<Integer, User> users = getUsers(getUserIds(notifications));
+
+        for (final List<Notification> group : groupBySharedPayload(notifications).values()) {
+            final NotificationResponse response = NotificationResponse.createFromNotification(group.get(0));
+            response.setFrom(users.get(response.getFromUserId()));
+            try {
+                notificationHandler.broadcast(response, group);
+            } catch (final Exception e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Groups notifications that differ only by id and recipient, such as the
+     * copies of one post sent to every follower.
+     */
+    private Map<List<Object>, List<Notification>> groupBySharedPayload(final List<Notification> notifications) {
+        final Map<List<Object>, List<Notification>> groups = new LinkedHashMap<>();
+        for (final Notification notification : notifications) {
+            final List<Object> key = Arrays.asList(
+                    notification.getFromUserId(),
+                    notification.getType(),
+                    notification.getRelId(),
+                    notification.isSeen(),
+                    notification.getCreatedAt()
+            );
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(notification);
+        }
+
+        return groups;
+    }
+
     public NotificationInfoResponse getInfo(final int userId) {
-        return new NotificationInfoResponse(notificationRepository.getNotSeen(userId));
+        return new NotificationInfoResponse(unreadNotifications.get(userId));
     }
 
     public void see(final int notificationId, final int userId) {
-        notificationRepository.see(notificationId, userId);
+        notificationAcks.see(notificationId, userId);
+    }
+
+    public NotificationInfoResponse seeAll(final int userId, final SeeNotificationsResource resource) {
+        notificationAcks.seeAll(userId, resource);
+
+        return getInfo(userId);
     }
 
     public List<NotificationResponse> getPaged(final int userId, final Page page) {
@@ -52,6 +114,17 @@ public class NotificationService {
         return buildResponse(notifications);
     }
 
+    private void sendAggregated(final List<Notification> notifications, final Map<Integer, Integer> newlyUnseen) {
+        unreadNotifications.added(newlyUnseen);
+        for (final NotificationResponse response : buildResponse(notifications)) {
+            try {
+                notificationHandler.sendToUser(response.getToUserId(), response);
+            } catch (final Exception e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
     private List<NotificationResponse> buildResponse(final List<Notification> notifications) {
         final List<NotificationResponse> response = new ArrayList<>();
         final Map<Integer, User> users = getUsers(getUserIds(notifications));
@@ -59,6 +132,7 @@ public class NotificationService {
         for (final Notification notification : notifications) {
             final NotificationResponse item = NotificationResponse.createFromNotification(notification);
             item.setFrom(users.get(item.getFromUserId()));
+            item.setRecentActors(getRecentActors(notification, users));
 
             response.add(item);
         }
@@ -68,11 +142,26 @@ public class NotificationService {
 
     private NotificationResponse buildNotificationResponse(final Notification notification) {
         final NotificationResponse response = NotificationResponse.createFromNotification(notification);
-        response.setFrom(userRepository.findById(response.getFromUserId()));
+        response.setFrom(getUsers(Collections.singletonList(response.getFromUserId())).get(response.getFromUserId()));
 
         return response;
     }
 
+    private List<User> getRecentActors(final Notification notification, final Map<Integer, User> users) {
+        final List<User> actors = new ArrayList<>();
+        if (null == notification.getRecentActorIds()) {
+            return actors;
+        }
+        for (final int actorId : notification.getRecentActorIds()) {
+            final User actor = users.get(actorId);
+            if (null != actor) {
+                actors.add(actor);
+            }
+        }
+
+        return actors;
+    }
+
     private Map<Integer, User> getUsers(final List<Integer> userIds) {
         final Map<Integer, User> response = new HashMap<>();
         final List<User> users = userRepository.findByIds(new HashSet<>(userIds));
@@ -86,6 +175,11 @@ public class NotificationService {
 
     private List<Integer> getUserIds(final List<Notification> notifications) {
         final List<Integer> userIds = notifications.stream().map(notification -> notification.getFromUserId()).collect(Collectors.toList());
+        for (final Notification notification : notifications) {
+            if (null != notification.getRecentActorIds()) {
+                userIds.addAll(notification.getRecentActorIds());
+            }
+        }
 
         return userIds;
     }
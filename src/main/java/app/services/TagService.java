@@ -1,5 +1,7 @@
 package app.services;
 
+import app.core.counters.CounterType;
+import app.core.counters.WriteBehindCounters;
 import app.core.repos.CommentRepository;
 import app.core.repos.LikeRepository;
 import app.core.repos.TagRepository;
@@ -10,6 +12,7 @@ import app.http.pojos.Page;
 import app.pojo.Comment;
 import app.pojo.Like;
 import app.pojo.Tag;
+import app.pojo.TrendWindow;
 import app.pojo.UpdateTag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -21,54 +24,34 @@ import java.util.*;
 public class TagService {
 
     private final TagRepository tagRepository;
+    private final TrendingTags trendingTags;
+    private final WriteBehindCounters counters;
 
-    TagService(final TagRepository tagRepository) {
+    TagService(final TagRepository tagRepository, final TrendingTags trendingTags, final WriteBehindCounters counters) {
         this.tagRepository = tagRepository;
+        this.trendingTags = trendingTags;
+        this.counters = counters;
     }
 
     public List<Tag> findTopPopular() {
-        return tagRepository.findMostPopular();
+        return findTopPopular(TrendWindow.all);
     }
 
-    public List<Tag> addTags(final Set<String> tags) {
-        final List<Tag> added = tagRepository.findByName(tags);
-        final Set<String> toAdd = new HashSet<>();
-        for (String tagName : tags) {
-            if (!contains(added, tagName)) {
-                toAdd.add(tagName);
-            }
-        }
-        final List<Tag> addedTags = tagRepository.addTags(toAdd);
-        added.addAll(addedTags);
-
-        return added;
+    public List<Tag> findTopPopular(final TrendWindow window) {
+        return trendingTags.findTop(window);
     }
 
-    public void addUpdateTagLink(final List<Tag> tags, final int updateId) {
-        final List<UpdateTag> currentUpdateTags = tagRepository.findUpdateTagsByUpdateId(updateId);
-        final Set<Integer> toAddTagIds = getTagIdsToAdd(tags, currentUpdateTags);
-        tagRepository.addUpdateTags(toAddTagIds, updateId);
-    }
-
-    private Set<Integer> getTagIdsToAdd(final List<Tag> tags, final List<UpdateTag> updateTags) {
-        final Set<Integer> toAdd = new HashSet<>();
-        for (Tag tag : tags) {
-            if (!containsId(updateTags, tag.getId())) {
-                toAdd.add(tag.getId());
-            }
-        }
-
-        return toAdd;
+    public List<Tag> addTags(final Set<String> tags) {
+        return tagRepository.addTags(tags);
     }
 
-    private boolean containsId(final List<UpdateTag> updateTags, final int tagId) {
-        for (UpdateTag updateTag : updateTags) {
-            if (updateTag.getTagId() == tagId) {
-                return true;
-            }
+    public void addUpdateTagLink(final List<Tag> tags, final int updateId) {
+        final Set<Integer> tagIds = getTagIds(tags);
+        tagRepository.addUpdateTags(tagIds, updateId);
+        for (final int tagId : tagIds) {
+            counters.increment(CounterType.TAG_USES, tagId);
         }
-
-        return false;
+        trendingTags.record(tags, System.currentTimeMillis() / 1000);
     }
 
     private Set<Integer> getTagIds(final List<Tag> tags) {
@@ -80,14 +63,4 @@ public class TagService {
         return tagIds;
     }
 
-    private boolean contains(final List<Tag> tags, final String tagName) {
-        for (Tag tag : tags) {
-            if (tag.getName().equals(tagName)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
 }
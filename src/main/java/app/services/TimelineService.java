@@ -0,0 +1,170 @@
+package app.services;
+
+import app.core.repos.FollowRepository;
+import app.core.repos.TimelineRepository;
+import app.core.repos.UpdateRepository;
+import app.core.repos.UserRepository;
+import app.http.pojos.CursorPage;
+import app.pojo.Update;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Materialized "people I follow" timeline. New updates are pushed into every
+ * follower's timeline on write. Once an author has more than FAN_OUT_LIMIT
+ * followers they are flagged fan-out-on-read: their updates are no longer
+ * pushed and are merged in on read instead. The flag is stored and never
+ * cleared, so both paths make the same decision.
+ *
+ * Following an author copies their newest MAX_ENTRIES updates into the
+ * follower's timeline, unfollowing deletes them again. Updates of authors
+ * fanned out on read are not copied: the read path pulls them by the
+ * current follows.
+ *
+ * Each timeline keeps its newest MAX_ENTRIES entries. Timelines that were
+ * pushed to are trimmed in the background every TRIM_MILLIS rather than on
+ * every write.
+ */
+@SuppressWarnings("unused")
+@Service
+public class TimelineService implements PublicMetrics {
+
+    /**
+     * V12__timeline_fan_out_on_read.sql flagged the authors above this limit
+     * when the column was added, with the value copied into the migration.
+     */
+    public static final int FAN_OUT_LIMIT = 5000;
+    public static final int MAX_ENTRIES = 1000;
+    private static final long TRIM_MILLIS = 10_000;
+
+    private final TimelineRepository timelineRepository;
+    private final UpdateRepository updateRepository;
+    private final FollowRepository followRepository;
+    private final UserRepository userRepository;
+    private final ScheduledExecutorService trimmer;
+    private final Set<Integer> untrimmed = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong trimmed = new AtomicLong();
+    private final AtomicLong failedTrims = new AtomicLong();
+
+    TimelineService(
+            final TimelineRepository timelineRepository,
+            final UpdateRepository updateRepository,
+            final FollowRepository followRepository,
+            final UserRepository userRepository
+    ) {
+        this.timelineRepository = timelineRepository;
+        this.updateRepository = updateRepository;
+        this.followRepository = followRepository;
+        this.userRepository = userRepository;
+        this.trimmer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "timeline-trimmer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.trimmer.scheduleWithFixedDelay(this::trim, TRIM_MILLIS, TRIM_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Whether an author's new update is pushed into their followers'
+     * timelines, i.e. the author is not fanned out on read. Flags the author
+     * when they have outgrown the fan-out limit.
+     */
+    public boolean pushesToFollowers(final int authorId) {
+        if (userRepository.isFanOutOnRead(authorId)) {
+            return false;
+        }
+        if (followRepository.countFollowersOf(authorId, FAN_OUT_LIMIT + 1) > FAN_OUT_LIMIT) {
+            userRepository.markFanOutOnRead(authorId);
+            return false;
+        }
+
+        return true;
+    }
+
+    public void push(final Update update, final List<Integer> userIds) {
+        timelineRepository.push(userIds, update);
+        untrimmed.addAll(userIds);
+    }
+
+    public void followed(final int followerId, final int followedId) {
+        if (userRepository.isFanOutOnRead(followedId)) {
+            return;
+        }
+        timelineRepository.copyRecent(followedId, followerId, MAX_ENTRIES);
+        untrimmed.add(followerId);
+    }
+
+    public void unfollowed(final int followerId, final int followedId) {
+        timelineRepository.removeAuthor(followerId, followedId);
+    }
+
+    public List<Update> findByCursor(final int userId, final CursorPage page) {
+        final List<Update> pushed = timelineRepository.findByCursor(userId, page);
+        final Set<Integer> pulledFrom = new HashSet<>(followRepository.getFollowedFannedOutOnRead(userId));
+        if (pulledFrom.isEmpty()) {
+            return pushed;
+        }
+        final List<Update> pulled = updateRepository.findByCursorForUsers(page, pulledFrom);
+
+        return merge(pushed, pulled);
+    }
+
+    private List<Update> merge(final List<Update> pushed, final List<Update> pulled) {
+        final Map<Integer, Update> byId = new HashMap<>();
+        for (final Update update : pushed) {
+            byId.put(update.getId(), update);
+        }
+        for (final Update update : pulled) {
+            byId.put(update.getId(), update);
+        }
+        final List<Update> result = new ArrayList<>(byId.values());
+        result.sort(Comparator.comparingLong(Update::getCreatedAt)
+                .thenComparingInt(Update::getId)
+                .reversed());
+
+        return result.size() > UpdateRepository.PAGE_SIZE
+                ? new ArrayList<>(result.subList(0, UpdateRepository.PAGE_SIZE))
+                : result;
+    }
+
+    private void trim() {
+        final Iterator<Integer> userIds = untrimmed.iterator();
+        while (userIds.hasNext()) {
+            final int userId = userIds.next();
+            userIds.remove();
+            try {
+                trimmed.addAndGet(timelineRepository.trim(userId, MAX_ENTRIES));
+            } catch (final Exception e) {
+                failedTrims.incrementAndGet();
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("timeline.trim.pending", untrimmed.size()));
+        metrics.add(new Metric<>("timeline.trim.deleted", trimmed.get()));
+        metrics.add(new Metric<>("timeline.trim.failed", failedTrims.get()));
+
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        trimmer.shutdownNow();
+    }
+
+}
@@ -0,0 +1,287 @@
+package app.services;
+
+import app.core.repos.TagRepository;
+import app.pojo.Tag;
+import app.pojo.TrendWindow;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trending tags. Tags linked within the last day have per-minute buckets
+ * for the last hour and per-hour buckets for the last day, so a new link
+ * costs O(1); a tag with no link in the last day is evicted. The all time
+ * ranking comes from the tags.uses counter column and its index.
+ *
+ * The top tags of every window are recomputed by a background thread every
+ * REFRESH_MILLIS and published as an immutable snapshot, so readers never
+ * compute anything. Links are recorded once their transaction commits.
+ * Links committed while the buckets are being rebuilt at startup are kept
+ * aside and applied after the rebuild.
+ */
+@SuppressWarnings("unused")
+@Component
+public class TrendingTags implements PublicMetrics {
+
+    public static final int TOP_SIZE = 5;
+    private static final long REFRESH_MILLIS = 5000;
+    private static final int MAX_JOURNAL = 100_000;
+
+    private final TagRepository tagRepository;
+    private final ScheduledExecutorService refresher;
+    private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+    private volatile Map<TrendWindow, List<Tag>> top = Collections.emptyMap();
+
+    // links recorded before the rebuild finished, null afterwards
+    private List<Link> journal = new ArrayList<>();
+
+    TrendingTags(final TagRepository tagRepository) {
+        this.tagRepository = tagRepository;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "trending-tags");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        refresher.execute(this::rebuild);
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void record(final List<Tag> tags, final long linkedAt) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recordNow(tags, linkedAt);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                recordNow(tags, linkedAt);
+            }
+        });
+    }
+
+    public List<Tag> findTop(final TrendWindow window) {
+        final List<Tag> tags = top.get(window);
+
+        return null == tags ? Collections.emptyList() : tags;
+    }
+
+    /**
+     * Loads the links of the last day up to now, then applies the links
+     * committed since; links older than that are already in the database.
+     */
+    void rebuild() {
+        final long until = System.currentTimeMillis() / 1000;
+        try {
+            tagRepository.forEachLinkBetween(
+                    until - Counter.DAY,
+                    until,
+                    (tag, linkedAt) -> add(tag, linkedAt, until)
+            );
+        } catch (final Exception e) {
+            System.out.println(e.getMessage());
+        }
+        final List<Link> recorded;
+        synchronized (this) {
+            recorded = journal;
+            journal = null;
+        }
+        final long now = System.currentTimeMillis() / 1000;
+        for (final Link link : recorded) {
+            if (link.linkedAt >= until) {
+                add(link.tag, link.linkedAt, now);
+            }
+        }
+        refreshQuietly();
+    }
+
+    private void recordNow(final List<Tag> tags, final long linkedAt) {
+        synchronized (this) {
+            if (null != journal) {
+                for (final Tag tag : tags) {
+                    if (journal.size() < MAX_JOURNAL) {
+                        journal.add(new Link(tag, linkedAt));
+                    }
+                }
+                return;
+            }
+        }
+        final long now = System.currentTimeMillis() / 1000;
+        for (final Tag tag : tags) {
+            add(tag, linkedAt, now);
+        }
+    }
+
+    private void add(final Tag tag, final long linkedAt, final long now) {
+        counters.compute(tag.getId(), (id, counter) -> {
+            final Counter updated = null == counter ? new Counter(copy(tag)) : counter;
+            updated.add(linkedAt, now);
+
+            return updated;
+        });
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (final Exception e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    void refresh() {
+        final long now = System.currentTimeMillis() / 1000;
+        for (final Integer tagId : counters.keySet()) {
+            counters.computeIfPresent(tagId, (id, counter) -> counter.isIdle(now) ? null : counter);
+        }
+        final Map<TrendWindow, List<Tag>> computed = new EnumMap<>(TrendWindow.class);
+        computed.put(TrendWindow.hour, computeTop(TrendWindow.hour, now));
+        computed.put(TrendWindow.day, computeTop(TrendWindow.day, now));
+        computed.put(TrendWindow.all, Collections.unmodifiableList(tagRepository.findMostUsed(TOP_SIZE)));
+
+        top = Collections.unmodifiableMap(computed);
+    }
+
+    private List<Tag> computeTop(final TrendWindow window, final long now) {
+        final PriorityQueue<Map.Entry<Counter, Long>> heap = new PriorityQueue<>(
+                TOP_SIZE + 1,
+                Comparator.comparingLong(Map.Entry::getValue)
+        );
+        for (final Counter counter : counters.values()) {
+            final long count = counter.count(window, now);
+            if (0 == count) {
+                continue;
+            }
+            if (heap.size() < TOP_SIZE) {
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(counter, count));
+            } else if (heap.peek().getValue() < count) {
+                heap.poll();
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(counter, count));
+            }
+        }
+        final List<Tag> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(heap.poll().getKey().tag);
+        }
+        Collections.reverse(result);
+
+        return Collections.unmodifiableList(result);
+    }
+
+    private static Tag copy(final Tag tag) {
+        final Tag copy = new Tag();
+        copy.setId(tag.getId());
+        copy.setName(tag.getName());
+        copy.setCreatedAt(tag.getCreatedAt());
+
+        return copy;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("tags.trending.tracked", counters.size()));
+
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private static class Link {
+        private final Tag tag;
+        private final long linkedAt;
+
+        private Link(final Tag tag, final long linkedAt) {
+            this.tag = tag;
+            this.linkedAt = linkedAt;
+        }
+    }
+
+    private static class Counter {
+        private static final int MINUTE = 60;
+        private static final int HOUR = 60 * MINUTE;
+        private static final int DAY = 24 * HOUR;
+
+        private final Tag tag;
+        private final long[] minuteIds = new long[HOUR / MINUTE];
+        private final int[] minutes = new int[HOUR / MINUTE];
+        private final long[] hourIds = new long[DAY / HOUR];
+        private final int[] hours = new int[DAY / HOUR];
+        private long lastLinkedAt;
+
+        private Counter(final Tag tag) {
+            this.tag = tag;
+        }
+
+        private synchronized void add(final long linkedAt, final long now) {
+            if (linkedAt <= now - DAY) {
+                return;
+            }
+            lastLinkedAt = Math.max(lastLinkedAt, linkedAt);
+            final long hourId = linkedAt / HOUR;
+            final int hour = (int) (hourId % hours.length);
+            if (hourIds[hour] != hourId) {
+                hourIds[hour] = hourId;
+                hours[hour] = 0;
+            }
+            hours[hour]++;
+
+            if (linkedAt <= now - HOUR) {
+                return;
+            }
+            final long minuteId = linkedAt / MINUTE;
+            final int minute = (int) (minuteId % minutes.length);
+            if (minuteIds[minute] != minuteId) {
+                minuteIds[minute] = minuteId;
+                minutes[minute] = 0;
+            }
+            minutes[minute]++;
+        }
+
+        private synchronized boolean isIdle(final long now) {
+            return lastLinkedAt <= now - DAY;
+        }
+
+        private synchronized long count(final TrendWindow window, final long now) {
+            switch (window) {
+                case hour:
+                    return sum(minuteIds, minutes, now / MINUTE - minutes.length);
+                default:
+                    return sum(hourIds, hours, now / HOUR - hours.length);
+            }
+        }
+
+        private static long sum(final long[] ids, final int[] counts, final long oldestExcluded) {
+            long sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (ids[i] > oldestExcluded) {
+                    sum += counts[i];
+                }
+            }
+
+            return sum;
+        }
+    }
+
+}
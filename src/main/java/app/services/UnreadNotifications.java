@@ -0,0 +1,178 @@
+package app.services;
+
+import app.core.cache.LruCache;
+import app.core.counters.CounterType;
+import app.core.counters.WriteBehindCounters;
+import app.core.repos.NotificationRepository;
+import app.websocket.notification.NotificationHandler;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Unread notification count per user. The count is persisted in
+ * users.unread_notifications through {@link WriteBehindCounters} and kept in
+ * memory for recently active users, so polling /api/notification/info no
+ * longer counts notification rows. A user's count is loaded from the column
+ * plus the buffered delta on first use.
+ *
+ * Every change is pushed to the user's sockets, wherever they are connected,
+ * so a client can stop polling. The node that applies the change sends the
+ * count: the cached one, or for users not cached here the column plus this
+ * node's buffered delta, read in LOAD_CHUNK users per query. Counts read for
+ * a push are not cached, so a fan-out does not evict the users who poll.
+ *
+ * A change is buffered and applied to the cached count in one step under
+ * the user's stripe lock, so a concurrent load either misses the change and
+ * is cached before it is applied, or is not cached at all. Likewise a load
+ * during which a batch of counters was in flight is not cached.
+ *
+ * Each node caches its own counts; entries expire after TTL so a count
+ * changed on another node is picked up within that time.
+ */
+@SuppressWarnings("unused")
+@Service
+public class UnreadNotifications implements PublicMetrics {
+
+    private static final int MAX_SIZE = 100_000;
+    private static final long TTL = 60 * 1000;
+    private static final int STRIPES = 1024;
+    private static final int LOAD_CHUNK = 1_000;
+
+    private final NotificationRepository notificationRepository;
+    private final WriteBehindCounters writeBehindCounters;
+    private final NotificationHandler notificationHandler;
+    private final LruCache<Integer, AtomicInteger> counts = new LruCache<>(MAX_SIZE, TTL);
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final Object[] locks = new Object[STRIPES];
+
+    UnreadNotifications(
+            final NotificationRepository notificationRepository,
+            final WriteBehindCounters writeBehindCounters,
+            final NotificationHandler notificationHandler
+    ) {
+        this.notificationRepository = notificationRepository;
+        this.writeBehindCounters = writeBehindCounters;
+        this.notificationHandler = notificationHandler;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public int get(final int userId) {
+        final AtomicInteger cached = counts.get(userId);
+        if (null != cached) {
+            return cached.get();
+        }
+        final long version = versions.get(stripe(userId));
+        final AtomicLong epoch = new AtomicLong();
+        final int loaded = writeBehindCounters.read(() -> {
+            epoch.set(writeBehindCounters.epoch());
+
+            return notificationRepository.getNotSeen(userId);
+        }, stored -> withPending(userId, stored));
+        // a change buffered or a batch flushed while loading may or may not
+        // be in the result, so only cache counts loaded without either
+        synchronized (locks[stripe(userId)]) {
+            if (versions.get(stripe(userId)) == version && settled(epoch.get())) {
+                counts.put(userId, new AtomicInteger(loaded));
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Adds the given number of new notifications per recipient.
+     */
+    public void added(final Map<Integer, Integer> byUser) {
+        afterCommit(() -> change(byUser));
+    }
+
+    public void seen(final int userId, final int count) {
+        afterCommit(() -> change(Collections.singletonMap(userId, -count)));
+    }
+
+    private void change(final Map<Integer, Integer> byUser) {
+        final Map<Integer, Integer> changed = new HashMap<>();
+        final List<Integer> uncached = new ArrayList<>();
+        for (final Map.Entry<Integer, Integer> entry : byUser.entrySet()) {
+            final int userId = entry.getKey();
+            synchronized (locks[stripe(userId)]) {
+                versions.incrementAndGet(stripe(userId));
+                writeBehindCounters.addCommitted(CounterType.USER_UNREAD_NOTIFICATIONS, userId, entry.getValue());
+                final AtomicInteger cached = counts.get(userId);
+                if (null == cached) {
+                    uncached.add(userId);
+                } else {
+                    changed.put(userId, cached.accumulateAndGet(entry.getValue(), (current, d) -> Math.max(0, current + d)));
+                }
+            }
+        }
+        try {
+            for (int from = 0; from < uncached.size(); from += LOAD_CHUNK) {
+                final List<Integer> chunk = uncached.subList(from, Math.min(uncached.size(), from + LOAD_CHUNK));
+                changed.putAll(writeBehindCounters.read(() -> notificationRepository.getNotSeen(chunk), stored -> {
+                    final Map<Integer, Integer> counted = new HashMap<>();
+                    for (final Integer userId : chunk) {
+                        counted.put(userId, withPending(userId, stored.getOrDefault(userId, 0)));
+                    }
+
+                    return counted;
+                }));
+            }
+            notificationHandler.sendCounts(changed);
+        } catch (final Exception e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private int withPending(final int userId, final int stored) {
+        return Math.max(0, stored + (int) writeBehindCounters.pending(CounterType.USER_UNREAD_NOTIFICATIONS, userId));
+    }
+
+    private void afterCommit(final Runnable apply) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                apply.run();
+            }
+        });
+    }
+
+    private boolean settled(final long epoch) {
+        return 0 == epoch % 2 && writeBehindCounters.epoch() == epoch;
+    }
+
+    private int stripe(final int userId) {
+        return (userId & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("cache.unread.size", counts.size()));
+        metrics.add(new Metric<>("cache.unread.hit", counts.getHits()));
+        metrics.add(new Metric<>("cache.unread.miss", counts.getMisses()));
+        metrics.add(new Metric<>("cache.unread.eviction", counts.getEvictions()));
+
+        return metrics;
+    }
+
+}
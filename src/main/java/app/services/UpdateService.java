@@ -1,26 +1,31 @@
 package app.services;
 
+import app.core.counters.CounterType;
+import app.core.counters.WriteBehindCounters;
 import app.core.repos.*;
+import app.http.pojos.CursorPage;
 import app.http.pojos.Page;
+import app.http.pojos.UpdateFeedResponse;
 import app.http.pojos.UpdateResource;
 import app.http.pojos.UpdateResponse;
 import app.pojo.*;
+import app.utils.Hashtags;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
-import java.util.regex.Pattern;
 
 @Component
 public class UpdateService {
 
     private final TagService tagService;
+    private final TimelineService timelineService;
+    private final WriteBehindCounters counters;
     private final ImageService imageService;
-    private final NotificationService notificationService;
+    private final FollowerFanOut followerFanOut;
     private final ImageRepository imageRepository;
-    private final FollowRepository followRepository;
-    private final LikeRepository likeRepository;
+    private final LikedItems likedItems;
     private final TagRepository tagRepository;
     private final UpdateRepository updateRepository;
     private final UserRepository userRepository;
@@ -28,47 +33,70 @@ public class UpdateService {
     @Autowired
     UpdateService(
             final TagService tagService,
+            final TimelineService timelineService,
+            final WriteBehindCounters counters,
             final ImageService imageService,
             final ImageRepository imageRepository,
-            final NotificationService notificationService,
-            final FollowRepository followRepository,
+            final FollowerFanOut followerFanOut,
             final TagRepository tagRepository,
-            final LikeRepository likeRepository,
+            final LikedItems likedItems,
             final UserRepository userRepository,
             final UpdateRepository updateRepository
     ) {
         this.tagService = tagService;
+        this.timelineService = timelineService;
+        this.counters = counters;
         this.imageService = imageService;
         this.imageRepository = imageRepository;
-        this.notificationService = notificationService;
-        this.followRepository = followRepository;
+        this.followerFanOut = followerFanOut;
         this.tagRepository = tagRepository;
-        this.likeRepository = likeRepository;
+        this.likedItems = likedItems;
         this.userRepository = userRepository;
         this.updateRepository = updateRepository;
     }
 
     public List<UpdateResponse> findPaged(final Page page, final Integer userId) {
-        final List<Update> updates = updateRepository.findPaged(page);
+        final List<Update> updates = counters.read(() -> updateRepository.findPaged(page), this::withPending);
 
         return filterUpdates(updates, userId);
     }
 
     public List<UpdateResponse> findPagedByUserId(final Page page, final Integer targetUserId, final Integer userId) {
-        final List<Update> updates = updateRepository.findPagedByUserId(page, targetUserId);
+        final List<Update> updates = counters.read(() -> updateRepository.findPagedByUserId(page, targetUserId), this::withPending);
 
         return filterUpdates(updates, userId);
     }
 
+    public UpdateFeedResponse findByCursor(final CursorPage page, final Integer targetUserId, final Integer userId) {
+        return buildFeed(counters.read(() -> updateRepository.findByCursor(page, targetUserId), this::withPending), userId);
+    }
+
+    public UpdateFeedResponse findTimeline(final CursorPage page, final int userId) {
+        return buildFeed(counters.read(() -> timelineService.findByCursor(userId, page), this::withPending), userId);
+    }
+
+    private UpdateFeedResponse buildFeed(final List<Update> updates, final Integer userId) {
+        String nextCursor = null;
+        if (UpdateRepository.PAGE_SIZE == updates.size()) {
+            final Update last = updates.get(updates.size() - 1);
+            nextCursor = CursorPage.encode(last.getCreatedAt(), last.getId());
+        }
+
+        return new UpdateFeedResponse(filterUpdates(updates, userId), nextCursor);
+    }
+
     public List<UpdateResponse> findPagedByTag(final Page page, final String tag, final Integer userId) {
-        final List<Update> updates = updateRepository.findPagedByTag(page, tag);
+        final List<Update> updates = counters.read(() -> updateRepository.findPagedByTag(page, tag), this::withPending);
 
         return filterUpdates(updates, userId);
     }
 
     public UpdateResponse findById(final int updateId, final Integer loggedUserId) {
-        final Update update = updateRepository.findById(updateId);
-        final List<UpdateResponse> responses = filterUpdates(Collections.singletonList(update), loggedUserId);
+        final List<Update> updates = counters.read(
+                () -> Collections.singletonList(updateRepository.findById(updateId)),
+                this::withPending
+        );
+        final List<UpdateResponse> responses = filterUpdates(updates, loggedUserId);
 
         return responses.get(0);
     }
@@ -94,6 +122,18 @@ public class UpdateService {
         return response;
     }
 
+    /**
+     * Adds the buffered like and comment deltas to the stored counts.
+     */
+    private List<Update> withPending(final List<Update> updates) {
+        for (final Update update : updates) {
+            update.setLikes(update.getLikes() + (int) counters.pending(CounterType.UPDATE_LIKES, update.getId()));
+            update.setCommentsCount(update.getCommentsCount() + (int) counters.pending(CounterType.UPDATE_COMMENTS, update.getId()));
+        }
+
+        return updates;
+    }
+
     private Map<Integer, Image> getUserImages(final List<Update> updates) {
         final Set<Integer> userIds = getUserIds(updates);
 
@@ -138,16 +178,11 @@ public class UpdateService {
     }
 
     private Set<Integer> getLikedUpdates(List<Update> updates, Integer userId) {
-        List<Like> updateLikes = Collections.EMPTY_LIST;
-        if (userId != null) {
-            updateLikes = likeRepository.findUpdateLikesByIds(getUpdateIds(updates), userId);
-        }
-        Set<Integer> likedUpdateIds = new HashSet<>();
-        for (Like like : updateLikes) {
-            likedUpdateIds.add(like.getItemId());
+        if (userId == null) {
+            return new HashSet<>();
         }
 
-        return likedUpdateIds;
+        return likedItems.likedUpdates(userId, getUpdateIds(updates));
     }
 
     private Set<Integer> getUpdateIds(List<Update> updates) {
@@ -159,8 +194,14 @@ public class UpdateService {
         return result;
     }
 
+    /**
+     * Writes a new update and hands its fan-out over for after the commit.
+     * Throws FanOutBusyException, and writes nothing, while too many updates
+     * are waiting for their fan-out.
+     */
     @Transactional
     public Update addNew(final UpdateResource updateResource) {
+        followerFanOut.admit();
         final Update update = new Update();
         update.setContent(updateResource.getContent());
         update.setUserId(updateResource.getUserId());
@@ -169,56 +210,17 @@ public class UpdateService {
         update.setId(newUpdateId);
         userRepository.incrementUpdates(updateResource.getUserId());
         addUpdateTags(update);
-
-        sendNotificationToFollowers(
-                followRepository.getFollowersOf(updateResource.getUserId()),
-                Notification.createForUpdate(update, updateResource.getUserId())
-        );
+        followerFanOut.fanOut(update, updateResource.getUserId());
 
         return update;
     }
 
-    private void sendNotificationToFollowers(final List<Integer> followers, final Notification notification) {
-        notification.setType(NotificationType.UPDATE_POSTED);
-        for (final int followerId : followers) {
-            final Notification target = Notification.copy(notification);
-            target.setToUserId(followerId);
-
-            notificationService.sendNotification(followerId, target);
-        }
-    }
-
     private void addUpdateTags(final Update update) {
-        final Set<String> tagNames = getTagsFromContent(update.getContent());
+        final Set<String> tagNames = Hashtags.names(update.getContent());
         final List<Tag> tags = tagService.addTags(tagNames);
         tagService.addUpdateTagLink(tags, update.getId());
     }
 
-    private Set<String> getTagsFromContent(final String content) {
-        final Set<String> tags = new HashSet<>();
-        final char[] c = content.toCharArray();
-        String tag = "";
-        for (int i = 0; i < c.length; ) {
-            if (Pattern.matches("\\s", "" + c[i])) {
-                if (i < c.length - 1 && '#' == c[i + 1]) {
-                    int j;
-                    for (j = i + 2; j < c.length && '#' != c[j] && !Pattern.matches("\\s", "" + c[j]); j++) {
-                        tag += c[j];
-                    }
-                    i = j;
-                    tags.add(tag);
-                    tag = "";
-                } else {
-                    i++;
-                }
-            } else {
-                i++;
-            }
-        }
-
-        return tags;
-    }
-
     @Transactional
     public boolean favorite(int updateId, int userId) {
         if (!checkIfUserOwnsUpdate(updateId, userId)) {
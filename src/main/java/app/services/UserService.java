@@ -1,5 +1,7 @@
 package app.services;
 
+import app.core.counters.CounterType;
+import app.core.counters.WriteBehindCounters;
 import app.core.repos.FollowRepository;
 import app.core.repos.ImageRepository;
 import app.core.repos.UserRepository;
@@ -18,20 +20,23 @@ public class UserService {
     private final UserRepository userRepository;
     private final ImageRepository imageRepository;
     private final FollowRepository followRepository;
+    private final WriteBehindCounters counters;
 
     @Autowired
     UserService(
             final UserRepository userRepository,
             final ImageRepository imageRepository,
-            final FollowRepository followRepository
+            final FollowRepository followRepository,
+            final WriteBehindCounters counters
     ) {
         this.userRepository = userRepository;
         this.imageRepository = imageRepository;
         this.followRepository = followRepository;
+        this.counters = counters;
     }
 
     public User findById(final int userId, final int loggedUserId) {
-        final User user = userRepository.findById(userId);
+        final User user = counters.read(() -> userRepository.findById(userId), this::withPending);
         final Image image = imageRepository.findForUser(userId);
         user.setImage(image);
         user.setFollowed(loggedUserId == userId ? false : followRepository.isFollowd(loggedUserId, userId));
@@ -39,6 +44,16 @@ public class UserService {
         return user;
     }
 
+    /**
+     * Adds the buffered follower and following deltas to the stored counts.
+     */
+    private User withPending(final User user) {
+        user.setFollowers(user.getFollowers() + (int) counters.pending(CounterType.USER_FOLLOWERS, user.getId()));
+        user.setFollowing(user.getFollowing() + (int) counters.pending(CounterType.USER_FOLLOWING, user.getId()));
+
+        return user;
+    }
+
     public void upate(final UserUpdateResource user, final int userId) {
         userRepository.update(user, userId);
     }
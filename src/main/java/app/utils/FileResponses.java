@@ -0,0 +1,98 @@
+package app.utils;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes a resource to the response without loading it into the heap.
+ * Files on disk are handed to Tomcat's sendfile when the connector supports
+ * it, so the kernel copies them straight to the socket; otherwise they are
+ * copied with FileChannel.transferTo. Resources already in memory are
+ * written from their array. A single byte range is answered with
+ * 206, an unsatisfiable one with 416; a request for several ranges gets the
+ * whole file, which RFC 7233 allows.
+ */
+public class FileResponses {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    public static void send(
+            final HttpServletRequest request,
+            final HttpServletResponse response,
+            final Resource resource,
+            final String contentType
+    ) throws IOException {
+        final long length = resource.contentLength();
+        long start = 0;
+        long end = length;
+
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        final List<HttpRange> ranges = parseRanges(request.getHeader(HttpHeaders.RANGE));
+        if (1 == ranges.size()) {
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length) + 1;
+            if (start >= length || start >= end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+        }
+        response.setContentLengthLong(end - start);
+
+        if (resource instanceof ByteArrayResource) {
+            response.getOutputStream().write(((ByteArrayResource) resource).getByteArray(), (int) start, (int) (end - start));
+            return;
+        }
+        if (!(resource instanceof FileSystemResource)) {
+            try (final InputStream in = resource.getInputStream()) {
+                StreamUtils.copyRange(in, response.getOutputStream(), start, end - 1);
+            }
+            return;
+        }
+        final File file = resource.getFile();
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            for (long position = start; position < end; ) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+
+    private static List<HttpRange> parseRanges(final String header) {
+        try {
+            return HttpRange.parseRanges(header);
+        } catch (final IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+    }
+
+}
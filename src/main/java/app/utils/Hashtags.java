@@ -0,0 +1,93 @@
+package app.utils;
+
+import java.util.*;
+
+/**
+ * Single-pass hashtag scanner. A tag starts with '#' at the beginning of the
+ * content or after a whitespace character and runs until the next
+ * whitespace character or '#'. Whitespace is matched with the Unicode
+ * definitions, so non-breaking and other exotic spaces end a tag too.
+ */
+public class Hashtags {
+
+    public static final char MARKER = '#';
+
+    public static Set<String> names(final String content) {
+        final Set<String> names = new LinkedHashSet<>();
+        for (final Hashtag hashtag : find(content)) {
+            names.add(hashtag.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * Returns every tag in order of appearance. Offsets are UTF-16 indexes
+     * into the content: start points at the '#' and end is exclusive.
+     */
+    public static List<Hashtag> find(final String content) {
+        if (null == content || content.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Hashtag> result = null;
+        final int length = content.length();
+        boolean atBoundary = true;
+        int i = 0;
+        while (i < length) {
+            final int codePoint = content.codePointAt(i);
+            if (MARKER == codePoint && atBoundary) {
+                final int nameStart = i + 1;
+                int j = nameStart;
+                while (j < length) {
+                    final int next = content.codePointAt(j);
+                    if (MARKER == next || isSpace(next)) {
+                        break;
+                    }
+                    j += Character.charCount(next);
+                }
+                if (j > nameStart) {
+                    if (null == result) {
+                        result = new ArrayList<>();
+                    }
+                    result.add(new Hashtag(content.substring(nameStart, j), i, j));
+                }
+                atBoundary = false;
+                i = j;
+                continue;
+            }
+            atBoundary = isSpace(codePoint);
+            i += Character.charCount(codePoint);
+        }
+
+        return null == result ? Collections.emptyList() : result;
+    }
+
+    private static boolean isSpace(final int codePoint) {
+        return Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint);
+    }
+
+    public static class Hashtag {
+        private final String name;
+        private final int start;
+        private final int end;
+
+        public Hashtag(final String name, final int start, final int end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+package app.utils;
+
+import java.awt.*;
+import java.awt.image.*;
+
+/**
+ * Downscales images by repeated halving followed by one bilinear step to
+ * the exact size. Each halving averages 2x2 pixel blocks, which is what
+ * bilinear filtering at exactly half the size computes, so large photos
+ * are reduced with area-averaging quality. The halving runs on int
+ * arrays, because Java2D's bilinear path is an order of magnitude slower
+ * for it. Averages are weighted by alpha so transparent pixels do not bleed
+ * their colour into the result.
+ *
+ * Any source type is accepted, including TYPE_CUSTOM. Interleaved 8-bit
+ * sRGB rasters, which is what ImageIO returns for JPEG and most PNGs, are
+ * read directly and anything else through getRGB. Output is TYPE_INT_ARGB
+ * when the source has alpha and TYPE_INT_RGB otherwise. Intermediate steps
+ * use scratch images, which are kept only by threads that called
+ * {@link #keepScratch}, so a worker thread scaling many uploads allocates
+ * only the outputs. Other threads, e.g. request threads, allocate them per
+ * call and keep nothing. Scratch images above MAX_SCRATCH_PIXELS are
+ * always allocated per call.
+ */
+public class ImageScaler {
+
+    public enum Mode {
+        /** Fills the box exactly, cropping the overflowing side around the center. */
+        CROP,
+        /** Fits the whole image inside the box, keeping its aspect ratio; never upscales. */
+        FIT
+    }
+
+    private static final int MAX_SCRATCH_PIXELS = 2_000_000;
+
+    // set only on threads that keep their scratch images
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<>();
+
+    /**
+     * Makes the calling thread keep its scratch images between calls. Meant
+     * for the few long-lived threads of a worker pool; each keeps up to four
+     * images of MAX_SCRATCH_PIXELS.
+     */
+    public static void keepScratch() {
+        if (null == SCRATCH.get()) {
+            SCRATCH.set(new Scratch());
+        }
+    }
+
+    public static BufferedImage scale(final BufferedImage source, final int width, final int height, final Mode mode) {
+        final int sourceWidth = source.getWidth();
+        final int sourceHeight = source.getHeight();
+
+        // source region to use and size of the output
+        int x = 0;
+        int y = 0;
+        int w = sourceWidth;
+        int h = sourceHeight;
+        final int targetWidth;
+        final int targetHeight;
+        if (Mode.CROP == mode) {
+            final double ratio = Math.max((double) width / sourceWidth, (double) height / sourceHeight);
+            w = Math.min(sourceWidth, Math.max(1, (int) Math.round(width / ratio)));
+            h = Math.min(sourceHeight, Math.max(1, (int) Math.round(height / ratio)));
+            x = (sourceWidth - w) / 2;
+            y = (sourceHeight - h) / 2;
+            targetWidth = width;
+            targetHeight = height;
+        } else {
+            final double ratio = Math.min(1, Math.min((double) width / sourceWidth, (double) height / sourceHeight));
+            targetWidth = Math.max(1, (int) Math.round(sourceWidth * ratio));
+            targetHeight = Math.max(1, (int) Math.round(sourceHeight * ratio));
+        }
+
+        final int type = outputType(source);
+        final BufferedImage from = halve(source, x, y, w, h, targetWidth, targetHeight);
+        final BufferedImage target = new BufferedImage(targetWidth, targetHeight, type);
+        draw(from, target, targetWidth, targetHeight, from == source ? x : 0, from == source ? y : 0,
+                from == source ? w : from.getWidth(), from == source ? h : from.getHeight());
+
+        return target;
+    }
+
+    /**
+     * Halves the whole image for as long as both sides stay at least
+     * minWidth and minHeight. Scaling several sizes from the result gives
+     * the same pixels as scaling each from the source, but the full size
+     * image is read only once. Returns the source when it is already small.
+     */
+    public static BufferedImage reduce(final BufferedImage source, final int minWidth, final int minHeight) {
+        final BufferedImage from = halve(source, 0, 0, source.getWidth(), source.getHeight(), minWidth, minHeight);
+        if (from == source) {
+            return source;
+        }
+        final BufferedImage reduced = new BufferedImage(from.getWidth(), from.getHeight(), outputType(source));
+        draw(from, reduced, from.getWidth(), from.getHeight(), 0, 0, from.getWidth(), from.getHeight());
+
+        return reduced;
+    }
+
+    private static int outputType(final BufferedImage source) {
+        return source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+
+    /**
+     * Halves the region while both sides stay at least minWidth and
+     * minHeight. Returns the source itself when no step was needed, else a
+     * view of the thread's scratch image holding the result.
+     */
+    private static BufferedImage halve(
+            final BufferedImage source,
+            final int x,
+            final int y,
+            int w,
+            int h,
+            final int minWidth,
+            final int minHeight
+    ) {
+        final boolean alpha = source.getColorModel().hasAlpha();
+        final int type = outputType(source);
+        final Scratch kept = SCRATCH.get();
+        final Scratch scratch = null == kept ? new Scratch() : kept;
+        BufferedImage current = source;
+        int[] data = null;
+        int stride = 0;
+        boolean first = true;
+        while (w / 2 >= minWidth && h / 2 >= minHeight) {
+            final BufferedImage next = scratch.get(first, w / 2, h / 2, type);
+            final int[] nextData = ((DataBufferInt) next.getRaster().getDataBuffer()).getData();
+            final int nextStride = next.getWidth();
+            if (null == data) {
+                final int[] rows = scratch.rows(2 * w);
+                for (int row = 0; row < h / 2; row++) {
+                    readRow(source, x, y + 2 * row, w, rows, 0);
+                    readRow(source, x, y + 2 * row + 1, w, rows, w);
+                    halveRow(rows, 0, w, w / 2, nextData, row * nextStride, alpha);
+                }
+            } else {
+                for (int row = 0; row < h / 2; row++) {
+                    halveRow(data, 2 * row * stride, (2 * row + 1) * stride, w / 2, nextData, row * nextStride, alpha);
+                }
+            }
+            current = next;
+            data = nextData;
+            stride = nextStride;
+            w /= 2;
+            h /= 2;
+            first = !first;
+        }
+
+        return current == source ? source : current.getSubimage(0, 0, w, h);
+    }
+
+    private static void draw(
+            final BufferedImage from,
+            final BufferedImage to,
+            final int toWidth,
+            final int toHeight,
+            final int x,
+            final int y,
+            final int w,
+            final int h
+    ) {
+        final Graphics2D g2d = to.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(from, 0, 0, toWidth, toHeight, x, y, x + w, y + h, null);
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    /**
+     * Averages two rows of ARGB pixels, starting at first and second, into
+     * count output pixels.
+     */
+    private static void halveRow(
+            final int[] in,
+            final int first,
+            final int second,
+            final int count,
+            final int[] out,
+            final int offset,
+            final boolean alpha
+    ) {
+        for (int i = 0; i < count; i++) {
+            final int p0 = in[first + 2 * i];
+            final int p1 = in[first + 2 * i + 1];
+            final int p2 = in[second + 2 * i];
+            final int p3 = in[second + 2 * i + 1];
+            if (!alpha) {
+                final int r = ((p0 >> 16) & 0xff) + ((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff);
+                final int g = ((p0 >> 8) & 0xff) + ((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff);
+                final int b = (p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff);
+                out[offset + i] = 0xff000000 | ((r + 2) >> 2) << 16 | ((g + 2) >> 2) << 8 | ((b + 2) >> 2);
+                continue;
+            }
+            final int a0 = p0 >>> 24;
+            final int a1 = p1 >>> 24;
+            final int a2 = p2 >>> 24;
+            final int a3 = p3 >>> 24;
+            final int a = a0 + a1 + a2 + a3;
+            if (0 == a) {
+                out[offset + i] = 0;
+                continue;
+            }
+            final int r = ((p0 >> 16) & 0xff) * a0 + ((p1 >> 16) & 0xff) * a1 + ((p2 >> 16) & 0xff) * a2 + ((p3 >> 16) & 0xff) * a3;
+            final int g = ((p0 >> 8) & 0xff) * a0 + ((p1 >> 8) & 0xff) * a1 + ((p2 >> 8) & 0xff) * a2 + ((p3 >> 8) & 0xff) * a3;
+            final int b = (p0 & 0xff) * a0 + (p1 & 0xff) * a1 + (p2 & 0xff) * a2 + (p3 & 0xff) * a3;
+            final int half = a >> 1;
+            out[offset + i] = ((a + 2) >> 2) << 24 | ((r + half) / a) << 16 | ((g + half) / a) << 8 | ((b + half) / a);
+        }
+    }
+
+    /**
+     * Reads w pixels of row y starting at x as non-premultiplied ARGB.
+     */
+    private static void readRow(final BufferedImage source, final int x, final int y, final int w, final int[] out, final int offset) {
+        final WritableRaster raster = source.getRaster();
+        final ColorModel colorModel = source.getColorModel();
+        if (raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel
+                && colorModel instanceof ComponentColorModel
+                && colorModel.getColorSpace().isCS_sRGB()
+                && !colorModel.isAlphaPremultiplied()
+                && raster.getNumBands() >= 3) {
+            final PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+            final byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            final int[] bands = sampleModel.getBandOffsets();
+            final int pixelStride = sampleModel.getPixelStride();
+            final boolean alpha = raster.getNumBands() > 3;
+            int position = raster.getDataBuffer().getOffset()
+                    + (y - raster.getSampleModelTranslateY()) * sampleModel.getScanlineStride()
+                    + (x - raster.getSampleModelTranslateX()) * pixelStride;
+            for (int i = 0; i < w; i++, position += pixelStride) {
+                final int a = alpha ? data[position + bands[3]] & 0xff : 0xff;
+                out[offset + i] = a << 24
+                        | (data[position + bands[0]] & 0xff) << 16
+                        | (data[position + bands[1]] & 0xff) << 8
+                        | (data[position + bands[2]] & 0xff);
+            }
+            return;
+        }
+        source.getRGB(x, y, w, 1, out, offset, w);
+    }
+
+    /**
+     * Two ping-pong images per image type, drawn into from the top-left
+     * corner, and a row buffer for reading the source.
+     */
+    private static class Scratch {
+        private final BufferedImage[] rgb = new BufferedImage[2];
+        private final BufferedImage[] argb = new BufferedImage[2];
+        private int[] rows = new int[0];
+
+        private BufferedImage get(final boolean first, final int width, final int height, final int type) {
+            final BufferedImage[] buffers = BufferedImage.TYPE_INT_ARGB == type ? argb : rgb;
+            final int index = first ? 0 : 1;
+            final BufferedImage buffer = buffers[index];
+            if (null != buffer && buffer.getWidth() >= width && buffer.getHeight() >= height) {
+                return buffer;
+            }
+            final int scratchWidth = Math.max(width, null == buffer ? 0 : buffer.getWidth());
+            final int scratchHeight = Math.max(height, null == buffer ? 0 : buffer.getHeight());
+            if ((long) scratchWidth * scratchHeight > MAX_SCRATCH_PIXELS) {
+                return new BufferedImage(width, height, type);
+            }
+            buffers[index] = new BufferedImage(scratchWidth, scratchHeight, type);
+
+            return buffers[index];
+        }
+
+        private int[] rows(final int size) {
+            if (rows.length < size) {
+                rows = new int[size];
+            }
+
+            return rows;
+        }
+    }
+
+}
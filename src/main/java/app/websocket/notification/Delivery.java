@@ -0,0 +1,27 @@
+package app.websocket.notification;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A frame addressed to one or more users, as carried by the
+ * {@link NotificationBus}. When {@code notificationIds} is set, every
+ * recipient's frame is that user's notification id and user id followed by
+ * the payload, the remaining fields from the comma that separates them; when
+ * {@code counts} is set, every recipient's frame is that user's unread
+ * count; otherwise all recipients get the payload as is.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Delivery {
+    private int[] userIds;
+    private int[] notificationIds;
+    private String payload;
+    private int[] counts;
+
+    public Delivery(final int[] userIds, final int[] notificationIds, final String payload) {
+        this(userIds, notificationIds, payload, null);
+    }
+}
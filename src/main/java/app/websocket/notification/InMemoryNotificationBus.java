@@ -0,0 +1,37 @@
+package app.websocket.notification;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers published frames to the listeners of this JVM only. Used when a
+ * single node serves every WebSocket connection.
+ */
+@SuppressWarnings("unused")
+@Component
+@ConditionalOnProperty(name = "notification.bus", havingValue = "memory", matchIfMissing = true)
+public class InMemoryNotificationBus implements NotificationBus {
+
+    private final List<Consumer<Delivery>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(final Delivery delivery) {
+        for (final Consumer<Delivery> listener : listeners) {
+            try {
+                listener.accept(delivery);
+            } catch (final Exception e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(final Consumer<Delivery> listener) {
+        listeners.add(listener);
+    }
+
+}
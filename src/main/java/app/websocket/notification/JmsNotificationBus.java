@@ -0,0 +1,107 @@
+package app.websocket.notification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.jms.ConnectionFactory;
+import javax.jms.TextMessage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Publishes frames to a JMS topic that every backend node subscribes to.
+ * The broker is set with spring.activemq.broker-url; without it Spring Boot
+ * starts an embedded, non-persistent ActiveMQ broker in this JVM, which is
+ * enough to run a single node against the same code path.
+ *
+ * Frames are pushed on request and fan-out threads, so publishing reuses a
+ * cached connection, session and producer, and sends non-persistent
+ * messages, which the ActiveMQ client sends without waiting for the broker.
+ * A frame lost with a broker is reloaded by the client on reconnect.
+ */
+@SuppressWarnings("unused")
+@Component
+@ConditionalOnProperty(name = "notification.bus", havingValue = "jms")
+public class JmsNotificationBus implements NotificationBus {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Consumer<Delivery>> listeners = new CopyOnWriteArrayList<>();
+
+    private final String topic;
+    private final CachingConnectionFactory publishConnectionFactory;
+    private final JmsTemplate jmsTemplate;
+    private final DefaultMessageListenerContainer container;
+
+    JmsNotificationBus(
+            final ConnectionFactory connectionFactory,
+            final @Value("${notification.bus.topic:notifications}") String topic,
+            final @Value("${notification.bus.publish-sessions:8}") int publishSessions
+    ) {
+        this.topic = topic;
+        this.publishConnectionFactory = new CachingConnectionFactory(connectionFactory);
+        this.publishConnectionFactory.setSessionCacheSize(publishSessions);
+        this.publishConnectionFactory.setReconnectOnException(true);
+        this.jmsTemplate = new JmsTemplate(publishConnectionFactory);
+        this.jmsTemplate.setPubSubDomain(true);
+        this.jmsTemplate.setExplicitQosEnabled(true);
+        this.jmsTemplate.setDeliveryPersistent(false);
+        this.container = new DefaultMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.container.setPubSubDomain(true);
+        this.container.setDestinationName(topic);
+        this.container.setMessageListener((javax.jms.MessageListener) message -> {
+            try {
+                receive(objectMapper.readValue(((TextMessage) message).getText(), Delivery.class));
+            } catch (final Exception e) {
+                System.out.println(e.getMessage());
+            }
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        container.shutdown();
+        publishConnectionFactory.destroy();
+    }
+
+    @Override
+    public void publish(final Delivery delivery) {
+        final String body;
+        try {
+            body = objectMapper.writeValueAsString(delivery);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        jmsTemplate.send(topic, session -> session.createTextMessage(body));
+    }
+
+    @Override
+    public void subscribe(final Consumer<Delivery> listener) {
+        listeners.add(listener);
+    }
+
+    private void receive(final Delivery delivery) {
+        for (final Consumer<Delivery> listener : listeners) {
+            try {
+                listener.accept(delivery);
+            } catch (final Exception e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package app.websocket.notification;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries notification frames between backend nodes. Every node publishes
+ * what it wants delivered and every subscribed node receives it, so the
+ * node that holds a user's sessions is the one that writes to them.
+ */
+public interface NotificationBus {
+
+    void publish(Delivery delivery);
+
+    void subscribe(Consumer<Delivery> listener);
+
+}
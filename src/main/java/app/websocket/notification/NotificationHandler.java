@@ -1,9 +1,15 @@
 package app.websocket.notification;
 
 import app.http.pojos.CustomUserDetails;
+import app.http.pojos.NotificationCountResponse;
 import app.http.pojos.NotificationResponse;
+import app.http.pojos.SeeNotificationsResource;
 import app.pojo.Notification;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.springframework.context.annotation.Scope;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -13,19 +19,73 @@ import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
 import static org.springframework.beans.factory.config.ConfigurableBeanFactory.SCOPE_SINGLETON;
 
 @Scope(SCOPE_SINGLETON)
 @Component
 public class NotificationHandler extends TextWebSocketHandler {
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String SEE_FRAME = "SEE";
 
-    private final Map<Integer, List<WebSocketSession>> sessions = new HashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter sharedWriter = objectMapper.copy()
+            .addMixIn(NotificationResponse.class, SharedPayload.class)
+            .writer();
+
+    private final SessionRegistry sessions = new SessionRegistry();
+    private final OutboundDispatcher outbound;
+    private final NotificationBus bus;
+    private final List<BiConsumer<Integer, SeeNotificationsResource>> seeListeners = new CopyOnWriteArrayList<>();
+
+    NotificationHandler(final OutboundDispatcher outbound, final NotificationBus bus) {
+        this.outbound = outbound;
+        this.bus = bus;
+        this.bus.subscribe(this::deliver);
+    }
 
+    /**
+     * Inbound frames. {"type":"SEE","ids":[...]} acknowledges notifications
+     * and may carry upToCreatedAt instead of ids, like
+     * POST /api/notification/see. Unknown or malformed frames are ignored,
+     * and so are frames listing more ids than the REST resource accepts.
+     */
     @Override
     protected void handleTextMessage(final WebSocketSession session, final TextMessage message) throws Exception {
+        final JsonNode frame;
+        try {
+            frame = objectMapper.readTree(message.getPayload());
+        } catch (final IOException e) {
+            return;
+        }
+        if (null == frame || !SEE_FRAME.equals(frame.path("type").asText())) {
+            return;
+        }
+        final SeeNotificationsResource resource = new SeeNotificationsResource(
+                frame.hasNonNull("upToCreatedAt") ? frame.get("upToCreatedAt").asLong() : null,
+                null
+        );
+        if (frame.path("ids").size() > SeeNotificationsResource.MAX_IDS) {
+            return;
+        }
+        if (frame.path("ids").isArray()) {
+            final List<Integer> ids = new ArrayList<>();
+            for (final JsonNode id : frame.get("ids")) {
+                ids.add(id.asInt());
+            }
+            resource.setIds(ids);
+        }
+        final int userId = getLoggedUser(session).getId();
+        for (final BiConsumer<Integer, SeeNotificationsResource> listener : seeListeners) {
+            listener.accept(userId, resource);
+        }
+    }
+
+    public void onSee(final BiConsumer<Integer, SeeNotificationsResource> listener) {
+        seeListeners.add(listener);
     }
 
     @Override
@@ -35,20 +95,115 @@ public class NotificationHandler extends TextWebSocketHandler {
         registerSession(session, loggedUser.getId());
     }
 
-    public void sendToUser(final int userId, final NotificationResponse message) {
-        final List<WebSocketSession> sessions = getSessionsForUser(userId);
+    public void sendToUser(final int userId, final Object message) {
+        final String payload;
+        try {
+            payload = objectMapper.writeValueAsString(message);
+        } catch (final JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+        bus.publish(new Delivery(new int[]{userId}, null, payload));
+    }
 
+    /**
+     * Sends every given user their unread count. The frames are built by
+     * the node that holds the user's sessions, so users connected nowhere
+     * cost nothing beyond the published ids.
+     */
+    public void sendCounts(final Map<Integer, Integer> countByUser) {
+        if (countByUser.isEmpty()) {
+            return;
+        }
+        final int[] userIds = new int[countByUser.size()];
+        final int[] counts = new int[countByUser.size()];
+        int i = 0;
+        for (final Map.Entry<Integer, Integer> entry : countByUser.entrySet()) {
+            userIds[i] = entry.getKey();
+            counts[i++] = entry.getValue();
+        }
+        bus.publish(new Delivery(userIds, null, null, counts));
+    }
+
+    /**
+     * Sends one notification to many recipients. Only the notification id
+     * and the recipient differ between targets, so everything else in the
+     * payload is serialized once and every recipient's frame is that shared
+     * JSON with the two fields prepended, built by the node that holds the
+     * recipient's sessions.
+     */
+    public void broadcast(final NotificationResponse shared, final List<Notification> targets) {
+        final String fields;
         try {
-            for (final WebSocketSession session : sessions) {
-                sendMessage(session, message);
-            }
-        } catch (final Exception e) {
+            fields = sharedFields(sharedWriter.writeValueAsString(shared));
+        } catch (final JsonProcessingException e) {
             throw new RuntimeException(e);
         }
+        final int[] userIds = new int[targets.size()];
+        final int[] notificationIds = new int[targets.size()];
+        for (int i = 0; i < targets.size(); i++) {
+            userIds[i] = targets.get(i).getToUserId();
+            notificationIds[i] = targets.get(i).getId();
+        }
+        bus.publish(new Delivery(userIds, notificationIds, fields));
     }
 
-    protected void sendMessage(final WebSocketSession session, final NotificationResponse response) throws Exception {
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+    /**
+     * Writes a delivery received from the bus to the sessions connected to
+     * this node. Users without a local session are skipped before any frame
+     * is built. A payload without per-user fields is one frame for every
+     * session; otherwise each user's frame is built once, in a buffer reused
+     * across the delivery, and sent to all of that user's sessions.
+     */
+    private void deliver(final Delivery delivery) {
+        final int[] userIds = delivery.getUserIds();
+        final boolean perUser = null != delivery.getCounts() || null != delivery.getNotificationIds();
+        final TextMessage shared = perUser ? null : new TextMessage(delivery.getPayload());
+        final StringBuilder buffer = null == delivery.getNotificationIds()
+                ? null
+                : new StringBuilder(delivery.getPayload().length() + 32);
+        for (int i = 0; i < userIds.length; i++) {
+            final Collection<WebSocketSession> userSessions = sessions.getSessions(userIds[i]);
+            if (userSessions.isEmpty()) {
+                continue;
+            }
+            final TextMessage frame = perUser ? new TextMessage(payload(delivery, i, buffer)) : shared;
+            for (final WebSocketSession session : userSessions) {
+                sendMessage(session, frame);
+            }
+        }
+    }
+
+    private String payload(final Delivery delivery, final int i, final StringBuilder buffer) {
+        if (null != delivery.getCounts()) {
+            try {
+                return objectMapper.writeValueAsString(NotificationCountResponse.of(delivery.getCounts()[i]));
+            } catch (final JsonProcessingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        return frame(buffer, delivery.getNotificationIds()[i], delivery.getUserIds()[i], delivery.getPayload());
+    }
+
+    /**
+     * The fields of a serialized object, ready to follow the per-recipient
+     * ones: {"a":1} becomes ,"a":1} and {} becomes }.
+     */
+    static String sharedFields(final String json) {
+        return "{}".equals(json) ? "}" : "," + json.substring(1);
+    }
+
+    static String frame(final StringBuilder buffer, final int notificationId, final int toUserId, final String sharedFields) {
+        buffer.setLength(0);
+
+        return buffer.append("{\"id\":").append(notificationId)
+                .append(",\"toUserId\":").append(toUserId)
+                .append(sharedFields)
+                .toString();
+    }
+
+    protected void sendMessage(final WebSocketSession session, final TextMessage frame) {
+        outbound.send(session, frame);
     }
 
     public void afterConnectionClosed(final WebSocketSession session, final CloseStatus status) throws Exception {
@@ -59,29 +214,13 @@ public class NotificationHandler extends TextWebSocketHandler {
         if (!session.isOpen()) {
             return;
         }
-        if (!sessions.containsKey(listenerUserId)) {
-            sessions.put(listenerUserId, new ArrayList<>());
-        }
-
-        final List<WebSocketSession> sessions = getSessionsForUser(listenerUserId);
-        if (!sessions.stream().anyMatch(session1 -> session1.getId().equals(session.getId()))) {
-            sessions.add(session);
-        }
+        outbound.open(session);
+        sessions.register(listenerUserId, session);
     }
 
     private void unregisterSession(final WebSocketSession closedSession) {
-        for (final Map.Entry<Integer, List<WebSocketSession>> sessions : this.sessions.entrySet()) {
-            sessions.getValue().removeIf(session -> session.getId().equals(closedSession.getId()));
-        }
-    }
-
-    private List<WebSocketSession> getSessionsForUser(final int userId) {
-        if (!sessions.containsKey(userId)) {
-            return Collections.emptyList();
-        }
-        final List<WebSocketSession> sessions = this.sessions.get(userId);
-
-        return sessions;
+        sessions.unregister(closedSession);
+        outbound.close(closedSession);
     }
 
     private CustomUserDetails getLoggedUser(final WebSocketSession session) {
@@ -90,4 +229,8 @@ public class NotificationHandler extends TextWebSocketHandler {
         return loggedUser;
     }
 
+    @JsonIgnoreProperties({"id", "toUserId"})
+    private static abstract class SharedPayload {
+    }
+
 }
@@ -0,0 +1,235 @@
+package app.websocket.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends WebSocket frames off the caller's thread. Every session has its own
+ * bounded queue, drained by at most one sender pool thread at a time, so a
+ * slow client only delays itself and a failed send only affects its own
+ * session. A drain sends at most MAX_BATCH frames before handing the thread
+ * to the next session.
+ *
+ * When a queue is full the overflow policy either drops the oldest queued
+ * frame or closes the session. A session whose current send has taken
+ * longer than the send time limit is closed as well. Producers only mark a
+ * session as closing; the sender thread closes it, so a session is never
+ * written to by two threads at once. Sessions are wrapped in a
+ * ConcurrentWebSocketSessionDecorator, which enforces the send time and
+ * buffer limits on any other path that writes to them.
+ */
+@SuppressWarnings("unused")
+@Component
+public class OutboundDispatcher implements PublicMetrics {
+
+    static final int MAX_BATCH = 32;
+    private static final int BUFFER_SIZE_LIMIT = 512 * 1024;
+
+    private final int queueSize;
+    private final OverflowPolicy overflowPolicy;
+    private final int sendTimeLimit;
+    private final ExecutorService senders;
+    private final Map<String, Outbound> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+
+    OutboundDispatcher(
+            final @Value("${notification.outbound.queue-size:256}") int queueSize,
+            final @Value("${notification.outbound.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+            final @Value("${notification.outbound.senders:8}") int senders,
+            final @Value("${notification.outbound.send-time-limit:10000}") int sendTimeLimit
+    ) {
+        this.queueSize = queueSize;
+        this.overflowPolicy = overflowPolicy;
+        this.sendTimeLimit = sendTimeLimit;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senders, runnable -> {
+            final Thread thread = new Thread(runnable, "ws-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    public void open(final WebSocketSession session) {
+        queues.putIfAbsent(session.getId(), new Outbound(session));
+    }
+
+    public void close(final WebSocketSession session) {
+        final Outbound outbound = queues.remove(session.getId());
+        if (null != outbound) {
+            outbound.clear();
+        }
+    }
+
+    public void send(final WebSocketSession session, final TextMessage message) {
+        final Outbound outbound = queues.get(session.getId());
+        if (null == outbound) {
+            return;
+        }
+        if (outbound.offer(message)) {
+            outbound.schedule();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("websocket.outbound.sessions", queues.size()));
+        metrics.add(new Metric<>("websocket.outbound.queued", queued.get()));
+        metrics.add(new Metric<>("websocket.outbound.sent", sent.get()));
+        metrics.add(new Metric<>("websocket.outbound.dropped", dropped.get()));
+        metrics.add(new Metric<>("websocket.outbound.failed", failed.get()));
+        metrics.add(new Metric<>("websocket.outbound.closed.slow", closed.get()));
+
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdown();
+    }
+
+    private class Outbound {
+        private final ConcurrentWebSocketSessionDecorator session;
+        private final ArrayDeque<TextMessage> messages = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closing;
+
+        private Outbound(final WebSocketSession session) {
+            this.session = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, BUFFER_SIZE_LIMIT);
+        }
+
+        /**
+         * Queues the message and returns true when a drain has to be
+         * scheduled for this session.
+         */
+        private boolean offer(final TextMessage message) {
+            synchronized (this) {
+                if (closing) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                final boolean stuck = draining && session.getTimeSinceSendStarted() > sendTimeLimit;
+                if (stuck || messages.size() >= queueSize && OverflowPolicy.CLOSE == overflowPolicy) {
+                    dropped.addAndGet(messages.size() + 1);
+                    return markClosing();
+                }
+                if (messages.size() >= queueSize) {
+                    messages.pollFirst();
+                    queued.decrementAndGet();
+                    dropped.incrementAndGet();
+                }
+                messages.addLast(message);
+                queued.incrementAndGet();
+                if (draining) {
+                    return false;
+                }
+                draining = true;
+
+                return true;
+            }
+        }
+
+        private void schedule() {
+            try {
+                senders.execute(this::drain);
+            } catch (final RejectedExecutionException e) {
+                synchronized (this) {
+                    draining = false;
+                }
+            }
+        }
+
+        private void drain() {
+            for (int batch = 0; ; batch++) {
+                final TextMessage message;
+                synchronized (this) {
+                    if (closing) {
+                        break;
+                    }
+                    if (MAX_BATCH == batch && !messages.isEmpty()) {
+                        schedule();
+                        return;
+                    }
+                    message = messages.pollFirst();
+                    if (null == message) {
+                        draining = false;
+                        return;
+                    }
+                    queued.decrementAndGet();
+                }
+                try {
+                    if (session.isOpen()) {
+                        session.sendMessage(message);
+                        sent.incrementAndGet();
+                    }
+                } catch (final SessionLimitExceededException e) {
+                    failed.incrementAndGet();
+                    synchronized (this) {
+                        markClosing();
+                    }
+                } catch (final Exception e) {
+                    failed.incrementAndGet();
+                }
+            }
+            closeSlowConsumer();
+        }
+
+        private synchronized void clear() {
+            queued.addAndGet(-messages.size());
+            messages.clear();
+        }
+
+        /**
+         * Drops the queue and stops accepting frames. Returns true when a
+         * drain has to be scheduled to close the session; a running drain
+         * closes it after its current send.
+         */
+        private boolean markClosing() {
+            closing = true;
+            queued.addAndGet(-messages.size());
+            messages.clear();
+            queues.remove(session.getId(), this);
+            if (draining) {
+                return false;
+            }
+            draining = true;
+
+            return true;
+        }
+
+        private void closeSlowConsumer() {
+            closed.incrementAndGet();
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (final Exception e) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+}
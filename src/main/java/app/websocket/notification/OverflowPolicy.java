@@ -0,0 +1,6 @@
+package app.websocket.notification;
+
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    CLOSE
+}
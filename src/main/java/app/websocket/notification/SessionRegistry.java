@@ -0,0 +1,64 @@
+package app.websocket.notification;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Thread-safe index of open WebSocket sessions by user id, with a reverse
+ * session id to user id index so closing a session is O(1). Per-user session
+ * sets are copy-on-write: users have few sessions, they change rarely and
+ * are iterated on every notification.
+ */
+public class SessionRegistry {
+
+    private final Map<Integer, CopyOnWriteArraySet<WebSocketSession>> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<String, Integer> userBySession = new ConcurrentHashMap<>();
+
+    public void register(final int userId, final WebSocketSession session) {
+        userBySession.put(session.getId(), userId);
+        sessionsByUser.compute(userId, (id, sessions) -> {
+            final CopyOnWriteArraySet<WebSocketSession> target = null == sessions ? new CopyOnWriteArraySet<>() : sessions;
+            target.add(session);
+
+            return target;
+        });
+    }
+
+    public Integer unregister(final WebSocketSession session) {
+        final Integer userId = userBySession.remove(session.getId());
+        if (null == userId) {
+            return null;
+        }
+        sessionsByUser.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(session);
+
+            return sessions.isEmpty() ? null : sessions;
+        });
+
+        return userId;
+    }
+
+    public Collection<WebSocketSession> getSessions(final int userId) {
+        final Collection<WebSocketSession> sessions = sessionsByUser.get(userId);
+
+        return null == sessions ? Collections.emptySet() : sessions;
+    }
+
+    public boolean hasSessions(final int userId) {
+        return sessionsByUser.containsKey(userId);
+    }
+
+    public int getUserCount() {
+        return sessionsByUser.size();
+    }
+
+    public int getSessionCount() {
+        return userBySession.size();
+    }
+
+}
@@ -0,0 +1,8 @@
+-- Aggregated notifications: one row per (to_user_id, rel_id, rel_type)
+-- counts every actor since it was last seen and keeps the ids of the most
+-- recent ones, newest first.
+ALTER TABLE `notifications`
+    ADD COLUMN `actor_count` INT NOT NULL DEFAULT 1,
+    ADD COLUMN `recent_actors` VARCHAR(64) NOT NULL DEFAULT '';
+
+UPDATE `notifications` SET `recent_actors` = `from_user_id`;
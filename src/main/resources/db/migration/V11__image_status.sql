@@ -0,0 +1,5 @@
+-- Scaled variants are generated after the upload commits; until an image
+-- is READY its original is served in place of the variants.
+ALTER TABLE `images`
+    ADD COLUMN `status` VARCHAR(16) NOT NULL DEFAULT 'READY',
+    ADD INDEX `images_status` (`status`);
@@ -0,0 +1,10 @@
+-- Authors whose updates are merged into timelines on read instead of being
+-- pushed on write. TimelineService sets it once an author passes the
+-- fan-out limit and never clears it, so the write and read paths always
+-- agree and no update is left out of both.
+--
+-- 5000 is TimelineService.FAN_OUT_LIMIT at the time of this migration. The
+-- constant can change later; this backfill stays as it ran.
+ALTER TABLE `users` ADD COLUMN `fan_out_on_read` TINYINT NOT NULL DEFAULT 0;
+
+UPDATE `users` SET `fan_out_on_read` = 1 WHERE `followers` > 5000;
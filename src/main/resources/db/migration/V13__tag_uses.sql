@@ -0,0 +1,14 @@
+-- Number of updates linked to each tag, maintained through
+-- WriteBehindCounters. TrendingTags reads the all time top tags from its
+-- index instead of aggregating update_tags.
+ALTER TABLE `tags`
+    ADD COLUMN `uses` INT NOT NULL DEFAULT 0,
+    ADD INDEX `tags_uses` (`uses`);
+
+UPDATE `tags` t
+JOIN (
+    SELECT `tag_id` AS id, count(*) AS c
+    FROM `update_tags`
+    GROUP BY `tag_id`
+) s ON s.id = t.`id`
+SET t.`uses` = s.c;
@@ -0,0 +1,30 @@
+-- FollowRepository.follow inserts with IGNORE, so a repeated follow must hit
+-- a unique key instead of adding a second row. followers has no id to keep
+-- the first copy by, so the duplicated pairs are set aside, deleted and put
+-- back once.
+CREATE TEMPORARY TABLE `followers_duplicated` AS
+    SELECT `follower_id`, `followed_id`, MIN(`followed_at`) AS `followed_at`
+    FROM `followers`
+    GROUP BY `follower_id`, `followed_id`
+    HAVING count(*) > 1;
+
+DELETE f FROM `followers` f
+    JOIN `followers_duplicated` d ON d.`follower_id` = f.`follower_id` AND d.`followed_id` = f.`followed_id`;
+
+INSERT INTO `followers` (`follower_id`, `followed_id`, `followed_at`)
+    SELECT `follower_id`, `followed_id`, `followed_at` FROM `followers_duplicated`;
+
+-- the duplicates were counted too
+UPDATE `users` u
+    JOIN `followers_duplicated` d ON d.`followed_id` = u.`id`
+    SET u.`followers` = (SELECT count(*) FROM `followers` f WHERE f.`followed_id` = u.`id`);
+
+UPDATE `users` u
+    JOIN `followers_duplicated` d ON d.`follower_id` = u.`id`
+    SET u.`following` = (SELECT count(*) FROM `followers` f WHERE f.`follower_id` = u.`id`);
+
+DROP TEMPORARY TABLE `followers_duplicated`;
+
+ALTER TABLE `followers`
+    DROP INDEX `followers_follower_id_followed_id`,
+    ADD UNIQUE `followers_follower_id_followed_id` (`follower_id`, `followed_id`);
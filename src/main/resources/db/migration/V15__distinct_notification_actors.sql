@@ -0,0 +1,28 @@
+-- The aggregation upsert stamps a row with its write's token when it inserts
+-- or reopens it, so the writer learns from the row itself which rows became
+-- unseen. notification_actors holds every actor of a row since it was last
+-- opened, so actor_count counts each actor once.
+ALTER TABLE `notifications`
+    ADD COLUMN `open_token` BIGINT NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS `notification_actors` (
+    `notification_id` INT NOT NULL,
+    `actor_id` INT NOT NULL,
+    PRIMARY KEY (`notification_id`, `actor_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_unicode_ci;
+
+-- the recent actors are all that is known about the actors of unseen rows
+INSERT IGNORE INTO `notification_actors` (`notification_id`, `actor_id`)
+    SELECT `id`, SUBSTRING_INDEX(`recent_actors`, ',', 1)
+    FROM `notifications`
+    WHERE `seen` = 0 AND `recent_actors` <> '';
+
+INSERT IGNORE INTO `notification_actors` (`notification_id`, `actor_id`)
+    SELECT `id`, SUBSTRING_INDEX(SUBSTRING_INDEX(`recent_actors`, ',', 2), ',', -1)
+    FROM `notifications`
+    WHERE `seen` = 0 AND `recent_actors` LIKE '%,%';
+
+INSERT IGNORE INTO `notification_actors` (`notification_id`, `actor_id`)
+    SELECT `id`, SUBSTRING_INDEX(SUBSTRING_INDEX(`recent_actors`, ',', 3), ',', -1)
+    FROM `notifications`
+    WHERE `seen` = 0 AND `recent_actors` LIKE '%,%,%';
@@ -0,0 +1,5 @@
+-- FollowerFanOut pages through an author's followers in follower_id order.
+-- The index on followed_id alone is a prefix of this one.
+ALTER TABLE `followers`
+    ADD INDEX `followers_followed_id_follower_id` (`followed_id`, `follower_id`),
+    DROP INDEX `followers_followed_id`;
@@ -0,0 +1,3 @@
+ALTER TABLE `updates`
+    ADD INDEX `updates_created_at_id` (`created_at`, `id`),
+    ADD INDEX `updates_user_id_created_at_id` (`user_id`, `created_at`, `id`);
@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS `timelines` (
+    `user_id` INT NOT NULL REFERENCES `users` (`id`),
+    `update_id` INT NOT NULL REFERENCES `updates` (`id`),
+    `created_at` INT NOT NULL,
+    PRIMARY KEY (`user_id`, `update_id`),
+    INDEX `timelines_user_id_created_at` (`user_id`, `created_at`, `update_id`),
+    INDEX `timelines_created_at` (`created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_unicode_ci;
@@ -0,0 +1,10 @@
+ALTER TABLE `users` ADD COLUMN `image_id` INT NULL AFTER `updates`;
+
+UPDATE `users` u
+SET u.`image_id` = (
+    SELECT i.`id`
+    FROM `images` i
+    WHERE i.`user_id` = u.`id`
+    ORDER BY i.`created_at` DESC, i.`id` DESC
+    LIMIT 1
+);
@@ -0,0 +1,18 @@
+CREATE TEMPORARY TABLE `duplicate_tags` AS
+    SELECT t.`id`, k.`keep_id`
+    FROM `tags` t
+    JOIN (SELECT `name`, MIN(`id`) AS `keep_id` FROM `tags` GROUP BY `name`) k ON k.`name` = t.`name`
+    WHERE t.`id` <> k.`keep_id`;
+
+INSERT IGNORE INTO `update_tags` (`tag_id`, `update_id`)
+    SELECT d.`keep_id`, ut.`update_id`
+    FROM `update_tags` ut
+    JOIN `duplicate_tags` d ON d.`id` = ut.`tag_id`;
+
+DELETE ut FROM `update_tags` ut JOIN `duplicate_tags` d ON d.`id` = ut.`tag_id`;
+
+DELETE t FROM `tags` t JOIN `duplicate_tags` d ON d.`id` = t.`id`;
+
+DROP TEMPORARY TABLE `duplicate_tags`;
+
+ALTER TABLE `tags` ADD UNIQUE `tags_name` (`name`);
@@ -0,0 +1,28 @@
+-- CommentRepository.findByUpdateId / findByUpdateIdPaged
+ALTER TABLE `comments` ADD INDEX `comments_update_id_created_at` (`update_id`, `created_at`);
+
+-- LikeRepository update and comment like lookups, LikeService
+ALTER TABLE `update_likes` ADD INDEX `update_likes_update_id_user_id` (`update_id`, `user_id`);
+ALTER TABLE `comment_likes` ADD INDEX `comment_likes_comment_id_user_id` (`comment_id`, `user_id`);
+
+-- UpdateRepository.findFavoriteByUpdateIdAndUserId
+ALTER TABLE `favorites` ADD INDEX `favorites_update_id_user_id` (`update_id`, `user_id`);
+
+-- FollowRepository.getFollowersOf and isFollowd / unfollow / getFollowedWithFollowersOver
+ALTER TABLE `followers`
+    ADD INDEX `followers_followed_id` (`followed_id`),
+    ADD INDEX `followers_follower_id_followed_id` (`follower_id`, `followed_id`);
+
+-- ImageRepository.findForUser / findForUsers
+ALTER TABLE `images` ADD INDEX `images_user_id_created_at` (`user_id`, `created_at`);
+
+-- TagRepository.findUpdateTagsByUpdateId(s); (tag_id, update_id) is already unique
+ALTER TABLE `update_tags` ADD INDEX `update_tags_update_id` (`update_id`);
+
+-- NotificationRepository.findPaged and getNotSeen
+ALTER TABLE `notifications`
+    ADD INDEX `notifications_to_user_id_created_at` (`to_user_id`, `created_at`),
+    ADD INDEX `notifications_to_user_id_seen` (`to_user_id`, `seen`);
+
+-- UserRepository.findMostPopular
+ALTER TABLE `users` ADD INDEX `users_followers` (`followers`);
@@ -0,0 +1,13 @@
+DELETE l FROM `update_likes` l
+    JOIN `update_likes` k ON k.`update_id` = l.`update_id` AND k.`user_id` = l.`user_id` AND k.`id` < l.`id`;
+
+DELETE l FROM `comment_likes` l
+    JOIN `comment_likes` k ON k.`comment_id` = l.`comment_id` AND k.`user_id` = l.`user_id` AND k.`id` < l.`id`;
+
+ALTER TABLE `update_likes`
+    DROP INDEX `update_likes_update_id_user_id`,
+    ADD UNIQUE `update_likes_update_id_user_id` (`update_id`, `user_id`);
+
+ALTER TABLE `comment_likes`
+    DROP INDEX `comment_likes_comment_id_user_id`,
+    ADD UNIQUE `comment_likes_comment_id_user_id` (`comment_id`, `user_id`);
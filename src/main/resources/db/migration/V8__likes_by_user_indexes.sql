@@ -0,0 +1,3 @@
+-- LikedItems loads every id a user liked
+ALTER TABLE `update_likes` ADD INDEX `update_likes_user_id_update_id` (`user_id`, `update_id`);
+ALTER TABLE `comment_likes` ADD INDEX `comment_likes_user_id_comment_id` (`user_id`, `comment_id`);
@@ -0,0 +1,12 @@
+-- Unread notification count per user, maintained by UnreadNotifications
+-- through WriteBehindCounters instead of a COUNT(*) on every poll.
+ALTER TABLE `users` ADD COLUMN `unread_notifications` INT NOT NULL DEFAULT 0;
+
+UPDATE `users` u
+JOIN (
+    SELECT `to_user_id` AS id, count(*) AS c
+    FROM `notifications`
+    WHERE `seen` = 0
+    GROUP BY `to_user_id`
+) s ON s.id = u.`id`
+SET u.`unread_notifications` = s.c;
@@ -0,0 +1,33 @@
+package app.core;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * Transaction manager without a resource: it runs the synchronizations of
+ * a commit or rollback like a real one, so afterCommit callbacks can be
+ * tested without a database.
+ */
+public class StubTransactionManager extends AbstractPlatformTransactionManager {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected Object doGetTransaction() {
+        return new Object();
+    }
+
+    @Override
+    protected void doBegin(final Object transaction, final TransactionDefinition definition) {
+    }
+
+    @Override
+    protected void doCommit(final DefaultTransactionStatus status) {
+    }
+
+    @Override
+    protected void doRollback(final DefaultTransactionStatus status) {
+    }
+
+}
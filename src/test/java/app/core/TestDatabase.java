@@ -0,0 +1,43 @@
+package app.core;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The scratch MySQL database that database tests run against. It is given
+ * through the environment, e.g. for the docker-compose MySQL:
+ *
+ *   TEST_DB_URL=jdbc:mysql://localhost:3306/twoter_test TEST_DB_USER=root TEST_DB_PASSWORD=root
+ *
+ * Tests using it are skipped unless TEST_DB_URL is set.
+ */
+public class TestDatabase {
+
+    /**
+     * Drops everything in the scratch database and runs the migrations.
+     */
+    public static DriverManagerDataSource migrated() {
+        final String url = System.getenv("TEST_DB_URL");
+        assumeTrue("TEST_DB_URL is not set", null != url && !url.isEmpty());
+        final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                url,
+                env("TEST_DB_USER", "root"),
+                env("TEST_DB_PASSWORD", "root")
+        );
+        final Flyway flyway = new Flyway();
+        flyway.setDataSource(dataSource);
+        flyway.clean();
+        flyway.migrate();
+
+        return dataSource;
+    }
+
+    private static String env(final String name, final String defaultValue) {
+        final String value = System.getenv(name);
+
+        return null == value ? defaultValue : value;
+    }
+
+}
@@ -0,0 +1,89 @@
+package app.core.cache;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruCacheTest {
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        final LruCache<Integer, String> cache = new LruCache<>(2, 0);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.get(1);
+        cache.put(3, "three");
+
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("three", cache.get(3));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void boundsTheTotalWeight() {
+        final LruCache<Integer, int[]> cache = new LruCache<>(100, 0, value -> value.length);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, new int[30]);
+            assertEquals(Math.min(i + 1, 3) * 30, cache.weight());
+        }
+        assertEquals(3, cache.size());
+
+        cache.put(10, new int[90]);
+        assertEquals(1, cache.size());
+        assertEquals(90, cache.weight());
+    }
+
+    @Test
+    public void reweighsAValueChangedInPlace() {
+        final LruCache<Integer, List<Integer>> cache = new LruCache<>(10, 0, List::size);
+        final List<Integer> growing = new ArrayList<>(Collections.nCopies(4, 0));
+        cache.put(1, growing);
+        cache.put(2, new ArrayList<>(Collections.nCopies(4, 0)));
+        assertEquals(8, cache.weight());
+
+        growing.addAll(Collections.nCopies(4, 0));
+        cache.reweigh(1);
+        assertEquals(8, cache.weight());
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void expiresEntriesAfterTheirTimeToLive() throws InterruptedException {
+        final LruCache<Integer, String> cache = new LruCache<>(10, 50);
+        cache.put(1, "one");
+        assertEquals("one", cache.get(1));
+
+        Thread.sleep(100);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void loadsOnlyTheMissingKeysInOneCall() {
+        final LruCache<Integer, String> cache = new LruCache<>(10, 0);
+        cache.put(1, "cached");
+        final AtomicInteger calls = new AtomicInteger();
+        final Map<Integer, String> values = cache.getAll(Arrays.asList(1, 2, 3), missing -> {
+            calls.incrementAndGet();
+            assertEquals(new HashSet<>(Arrays.asList(2, 3)), missing);
+            final Map<Integer, String> loaded = new HashMap<>();
+            loaded.put(2, "loaded");
+
+            return loaded;
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals("cached", values.get(1));
+        assertEquals("loaded", values.get(2));
+        assertEquals(2, values.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals("loaded", cache.get(2));
+    }
+
+}
@@ -0,0 +1,61 @@
+package app.core.cache;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SortedIntSetTest {
+
+    @Test
+    public void behavesLikeATreeSet() {
+        final Random random = new Random(13);
+        final SortedIntSet set = new SortedIntSet(new int[0], 0);
+        final TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            final int value = random.nextInt(2_000) - 1_000;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.add(value), set.add(value));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(value), set.remove(value));
+                    break;
+                default:
+                    assertEquals(expected.contains(value), set.contains(value));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+    }
+
+    @Test
+    public void sortsTheInitialValues() {
+        final SortedIntSet set = new SortedIntSet(new int[]{9, -3, 5, 0, 0}, 4);
+
+        assertEquals(4, set.size());
+        assertTrue(set.contains(-3));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(9));
+        assertFalse(set.contains(5 + 1));
+    }
+
+    @Test
+    public void bytesCountTheCapacity() {
+        final SortedIntSet set = new SortedIntSet(new int[100], 0);
+        final long empty = set.bytes();
+
+        assertEquals(24 + 16 + 400, empty);
+        set.add(1);
+        assertEquals(empty, set.bytes());
+        for (int i = 2; i <= 101; i++) {
+            set.add(i);
+        }
+        assertTrue(set.bytes() > empty);
+        assertEquals(0, set.bytes() % 8);
+    }
+
+}
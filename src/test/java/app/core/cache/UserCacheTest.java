@@ -0,0 +1,99 @@
+package app.core.cache;
+
+import app.pojo.User;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Users loaded through the cache, and a user renamed while they are being
+ * loaded.
+ */
+public class UserCacheTest {
+
+    private final UserCache cache = new UserCache();
+    private final Map<Integer, String> usernames = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void loadsOnlyMissingUsersAndServesTheRestFromTheCache() {
+        usernames.put(1, "ada");
+        usernames.put(2, "grace");
+
+        final Map<Integer, User> first = cache.getAll(ids(1, 2), this::load);
+        final Map<Integer, User> second = cache.getAll(ids(1, 2), this::load);
+
+        assertEquals(1, loads.get());
+        assertSame(first.get(1), second.get(1));
+        assertEquals("grace", second.get(2).getUsername());
+        assertEquals(2, metric("cache.user.miss"));
+        assertEquals(2, metric("cache.user.hit"));
+        assertEquals(2, metric("cache.user.size"));
+    }
+
+    @Test
+    public void loadsAnInvalidatedUserAgain() {
+        usernames.put(1, "ada");
+        cache.getAll(ids(1), this::load);
+
+        usernames.put(1, "countess");
+        cache.invalidate(1);
+
+        assertEquals("countess", cache.getAll(ids(1), this::load).get(1).getUsername());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void doesNotCacheAUserLoadedBeforeAConcurrentInvalidate() {
+        usernames.put(1, "ada");
+        usernames.put(2, "grace");
+
+        final Map<Integer, User> stale = cache.getAll(ids(1, 2), missing -> {
+            final Map<Integer, User> loaded = load(missing);
+            // renamed and invalidated after the row was read
+            usernames.put(1, "countess");
+            cache.invalidate(1);
+
+            return loaded;
+        });
+
+        assertEquals("ada", stale.get(1).getUsername());
+        assertEquals(1, metric("cache.user.size"));
+        assertEquals("countess", cache.getAll(ids(1), this::load).get(1).getUsername());
+        assertEquals("grace", cache.getAll(ids(2), this::load).get(2).getUsername());
+        assertEquals(2, loads.get());
+    }
+
+    private Map<Integer, User> load(final Set<Integer> ids) {
+        loads.incrementAndGet();
+        final Map<Integer, User> users = new HashMap<>();
+        for (final Integer id : ids) {
+            final User user = new User();
+            user.setId(id);
+            user.setUsername(usernames.get(id));
+            users.put(id, user);
+        }
+
+        return users;
+    }
+
+    private static Set<Integer> ids(final Integer... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private long metric(final String name) {
+        for (final Metric<?> metric : cache.metrics()) {
+            if (name.equals(metric.getName())) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+}
@@ -0,0 +1,21 @@
+package app.core.counters;
+
+import app.core.StubTransactionManager;
+import app.core.repos.CounterRepository;
+
+/**
+ * WriteBehindCounters over a stub repository and without a database
+ * transaction, for unit tests outside this package.
+ */
+public class TestWriteBehindCounters extends WriteBehindCounters {
+
+    public TestWriteBehindCounters(final CounterRepository counterRepository) {
+        super(counterRepository, new StubTransactionManager());
+    }
+
+    @Override
+    public void flush() {
+        super.flush();
+    }
+
+}
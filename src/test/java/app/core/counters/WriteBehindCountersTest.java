@@ -0,0 +1,252 @@
+package app.core.counters;
+
+import app.core.StubTransactionManager;
+import app.core.repos.RepositoryStubs;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Flushes against an in-memory counter table. A delta has to be counted
+ * exactly once by stored value plus pending() at any time, also while a
+ * flush is halfway through its batches.
+ */
+public class WriteBehindCountersTest {
+
+    private final Counters counters = new Counters();
+    private final WriteBehindCounters writeBehindCounters = new WriteBehindCounters(counters, new StubTransactionManager());
+
+    @After
+    public void shutdown() {
+        counters.failing = null;
+        counters.release.countDown();
+        writeBehindCounters.shutdown();
+    }
+
+    @Test
+    public void aCommittedBatchStopsCountingWhileLaterBatchesRun() throws Exception {
+        writeBehindCounters.add(CounterType.UPDATE_LIKES, 1, 3);
+        writeBehindCounters.add(CounterType.UPDATE_COMMENTS, 1, 2);
+        counters.blocking = CounterType.UPDATE_COMMENTS;
+
+        final Future<?> flush = flushInBackground();
+        assertTrue(counters.entered.await(5, TimeUnit.SECONDS));
+        assertEquals(3, counters.stored(CounterType.UPDATE_LIKES, 1));
+        assertEquals(0, writeBehindCounters.pending(CounterType.UPDATE_LIKES, 1));
+        assertEquals(2, writeBehindCounters.pending(CounterType.UPDATE_COMMENTS, 1));
+        counters.release.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, counters.stored(CounterType.UPDATE_COMMENTS, 1));
+        assertEquals(0, writeBehindCounters.pending(CounterType.UPDATE_COMMENTS, 1));
+    }
+
+    @Test
+    public void aRolledBackBatchIsBufferedAgainAndCountedOnce() throws Exception {
+        writeBehindCounters.add(CounterType.UPDATE_LIKES, 1, 3);
+        writeBehindCounters.add(CounterType.UPDATE_COMMENTS, 1, 2);
+        counters.failing = CounterType.UPDATE_LIKES;
+        counters.blocking = CounterType.UPDATE_COMMENTS;
+
+        final Future<?> flush = flushInBackground();
+        assertTrue(counters.entered.await(5, TimeUnit.SECONDS));
+        assertEquals(0, counters.stored(CounterType.UPDATE_LIKES, 1));
+        assertEquals(3, writeBehindCounters.pending(CounterType.UPDATE_LIKES, 1));
+        counters.release.countDown();
+        try {
+            flush.get(5, TimeUnit.SECONDS);
+        } catch (final Exception e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(3, writeBehindCounters.pending(CounterType.UPDATE_LIKES, 1));
+
+        counters.failing = null;
+        writeBehindCounters.flush();
+        assertEquals(3, counters.stored(CounterType.UPDATE_LIKES, 1));
+        assertEquals(0, writeBehindCounters.pending(CounterType.UPDATE_LIKES, 1));
+    }
+
+    @Test
+    public void readsAgainWhenABatchCommitsBetweenTheLoadAndTheMerge() {
+        writeBehindCounters.add(CounterType.UPDATE_LIKES, 1, 3);
+        final AtomicInteger loads = new AtomicInteger();
+
+        final long likes = writeBehindCounters.read(() -> {
+            final long stored = counters.stored(CounterType.UPDATE_LIKES, 1);
+            if (1 == loads.incrementAndGet()) {
+                // the batch commits after the load has read the row
+                writeBehindCounters.flush();
+            }
+
+            return stored;
+        }, stored -> stored + writeBehindCounters.pending(CounterType.UPDATE_LIKES, 1));
+
+        assertEquals(3, likes);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void doesNotUseALoadBetweenTheCommitAndTheSettle() throws Exception {
+        writeBehindCounters.add(CounterType.UPDATE_LIKES, 1, 3);
+        final CountDownLatch committed = new CountDownLatch(1);
+        final CountDownLatch merged = new CountDownLatch(1);
+        counters.afterCommit = () -> {
+            committed.countDown();
+            try {
+                // the batch is in the table and still in pending() while the read merges
+                assertTrue(merged.await(5, TimeUnit.SECONDS));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+
+        final ExecutorService reader = Executors.newSingleThreadExecutor();
+        final Future<Long> likes = reader.submit(() -> writeBehindCounters.read(() -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                committed.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return counters.stored(CounterType.UPDATE_LIKES, 1);
+        }, stored -> {
+            final long withPending = stored + writeBehindCounters.pending(CounterType.UPDATE_LIKES, 1);
+            merged.countDown();
+
+            return withPending;
+        }));
+        reader.shutdown();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        writeBehindCounters.flush();
+
+        assertEquals(3, (long) likes.get(5, TimeUnit.SECONDS));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void readsOnceWhenNoBatchCommitsMeanwhile() {
+        writeBehindCounters.add(CounterType.UPDATE_LIKES, 1, 3);
+        final AtomicInteger loads = new AtomicInteger();
+
+        final long likes = writeBehindCounters.read(() -> {
+            loads.incrementAndGet();
+
+            return counters.stored(CounterType.UPDATE_LIKES, 1);
+        }, stored -> stored + writeBehindCounters.pending(CounterType.UPDATE_LIKES, 1));
+
+        assertEquals(3, likes);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void addsDeltasOnlyWhenTheirTransactionCommits() {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(new StubTransactionManager());
+        transactionTemplate.execute(status -> {
+            writeBehindCounters.add(CounterType.USER_FOLLOWERS, 7, 1);
+            status.setRollbackOnly();
+
+            return null;
+        });
+        assertEquals(0, writeBehindCounters.pending(CounterType.USER_FOLLOWERS, 7));
+
+        transactionTemplate.execute(status -> {
+            writeBehindCounters.add(CounterType.USER_FOLLOWERS, 7, 1);
+            assertEquals(0, writeBehindCounters.pending(CounterType.USER_FOLLOWERS, 7));
+
+            return null;
+        });
+        assertEquals(1, writeBehindCounters.pending(CounterType.USER_FOLLOWERS, 7));
+    }
+
+    @Test
+    public void keepsEveryConcurrentDelta() throws Exception {
+        final ExecutorService threads = Executors.newFixedThreadPool(8);
+        final List<Future<?>> adders = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            adders.add(threads.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    writeBehindCounters.increment(CounterType.UPDATE_LIKES, i % 10);
+                }
+            }));
+        }
+        while (!adders.stream().allMatch(Future::isDone)) {
+            writeBehindCounters.flush();
+        }
+        threads.shutdown();
+        writeBehindCounters.flush();
+
+        for (int id = 0; id < 10; id++) {
+            assertEquals(8_000, counters.stored(CounterType.UPDATE_LIKES, id));
+            assertEquals(0, writeBehindCounters.pending(CounterType.UPDATE_LIKES, id));
+        }
+    }
+
+    private Future<?> flushInBackground() {
+        final ExecutorService thread = Executors.newSingleThreadExecutor();
+        try {
+            return thread.submit(writeBehindCounters::flush);
+        } finally {
+            thread.shutdown();
+        }
+    }
+
+    private static class Counters extends RepositoryStubs.Counters {
+        private final Map<CounterType, Map<Integer, Long>> stored = new ConcurrentHashMap<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile CounterType blocking;
+        private volatile CounterType failing;
+        private volatile Runnable afterCommit;
+
+        @Override
+        public void applyDeltas(final CounterType type, final Map<Integer, Long> deltas) {
+            if (type == blocking) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (type == failing) {
+                throw new IllegalStateException("deadlock");
+            }
+            final Map<Integer, Long> column = stored.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+            for (final Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+                column.merge(delta.getKey(), delta.getValue(), Long::sum);
+            }
+            if (null != afterCommit) {
+                final Runnable callback = afterCommit;
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        callback.run();
+                    }
+                });
+            }
+        }
+
+        private long stored(final CounterType type, final int id) {
+            return stored.getOrDefault(type, Collections.emptyMap()).getOrDefault(id, 0L);
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package app.core.repos;
+
+import app.core.DB;
+import app.core.TestDatabase;
+import app.pojo.Notification;
+import app.pojo.NotificationType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bulk acknowledgements against reopened aggregated notifications. Runs
+ * against the scratch database of {@link TestDatabase}.
+ */
+public class NotificationRepositoryTest {
+
+    private static DataSource dataSource;
+
+    private final NotificationRepository notifications = new NotificationRepository(new DB(dataSource));
+
+    @BeforeClass
+    public static void migrate() {
+        dataSource = TestDatabase.migrated();
+    }
+
+    @Test
+    public void aReopenedRowIsNotCoveredByAnAckOfNewerRows() {
+        write(like(2, 100, 100), 1);
+        final Notification old = find(like(2, 100, 0));
+        assertEquals(1, notifications.seeUpToCreatedAt(7, 100));
+
+        write(like(3, 200, 150), 2);
+        final Notification newer = find(like(3, 200, 0));
+        assertTrue(newer.getId() > old.getId());
+
+        // a new like reopens the old row while the client acks what it has
+        write(like(4, 100, 200), 3);
+        assertEquals(1, notifications.seeUpToCreatedAt(7, newer.getCreatedAt()));
+
+        final Notification reopened = find(like(4, 100, 0));
+        assertEquals(old.getId(), reopened.getId());
+        assertFalse(reopened.isSeen());
+        assertEquals(Collections.singletonList(4), reopened.getRecentActorIds());
+        assertTrue(find(like(3, 200, 0)).isSeen());
+
+        assertEquals(1, notifications.seeUpToCreatedAt(7, reopened.getCreatedAt()));
+        assertTrue(find(like(4, 100, 0)).isSeen());
+    }
+
+    private void write(final Notification notification, final long openToken) {
+        notifications.upsertAggregated(Collections.singletonList(notification), openToken);
+    }
+
+    private Notification find(final Notification key) {
+        final List<Notification> rows = notifications.findByKeys(Collections.singletonList(key));
+        assertEquals(1, rows.size());
+
+        return rows.get(0);
+    }
+
+    private static Notification like(final int fromUserId, final int updateId, final long createdAt) {
+        final Notification notification = new Notification();
+        notification.setToUserId(7);
+        notification.setFromUserId(fromUserId);
+        notification.setRelId(updateId);
+        notification.setType(NotificationType.UPDATE_LIKE);
+        notification.setCreatedAt(createdAt);
+        notification.setRecentActorIds(Collections.singletonList(fromUserId));
+
+        return notification;
+    }
+
+}
@@ -0,0 +1,354 @@
+package app.core.repos;
+
+import app.core.DB;
+import app.core.TestDatabase;
+import app.core.cache.UserCache;
+import app.core.counters.CounterType;
+import app.http.pojos.CursorPage;
+import app.http.pojos.Page;
+import app.pojo.ImageStatus;
+import app.pojo.Notification;
+import app.pojo.NotificationType;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+/**
+ * Calls the repository methods of the request paths against a migrated,
+ * seeded MySQL schema and runs every SELECT, UPDATE and DELETE they issue
+ * through EXPLAIN first, with the same parameters. A plan with a full table
+ * scan (type ALL) fails the test.
+ *
+ * It runs against the scratch database of {@link TestDatabase} and is
+ * skipped unless one is given.
+ */
+public class QueryPlanTest {
+
+    private static final int USERS = 500;
+    private static final int UPDATES_PER_USER = 20;
+    private static final int FOLLOWS_PER_USER = 20;
+
+    private static final List<String> scans = Collections.synchronizedList(new ArrayList<>());
+    private static AnnotationConfigApplicationContext context;
+
+    @BeforeClass
+    public static void migrateAndSeed() {
+        final DriverManagerDataSource dataSource = TestDatabase.migrated();
+        seed(new JdbcTemplate(dataSource));
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("db", new DB(new ExplainingDataSource(dataSource)));
+        context.register(UserCache.class);
+        context.scan("app.core.repos");
+        context.refresh();
+    }
+
+    @AfterClass
+    public static void close() {
+        if (null != context) {
+            context.close();
+        }
+    }
+
+    @Before
+    public void clearScans() {
+        scans.clear();
+    }
+
+    @Test
+    public void updateQueriesUseIndexes() {
+        final UpdateRepository updates = context.getBean(UpdateRepository.class);
+        final CursorPage next = new CursorPage(CursorPage.encode(USERS * UPDATES_PER_USER / 2, USERS * UPDATES_PER_USER / 2));
+        updates.findByCursor(new CursorPage(), null);
+        updates.findByCursor(next, null);
+        updates.findByCursor(next, 7);
+        updates.findByCursorForUsers(next, new HashSet<>(Arrays.asList(3, 4, 5)));
+        updates.findPagedByUserId(new Page(2), 7);
+        updates.findPagedByTag(new Page(1), "tag3");
+        updates.findById(42);
+        updates.findByIdAndUserId(42, 3);
+        updates.findFavoriteByUpdateIdAndUserId(42, 3);
+        updates.findOwnerId(42);
+        updates.exists(42);
+
+        assertNoScans();
+    }
+
+    @Test
+    public void timelineQueriesUseIndexes() {
+        final TimelineRepository timelines = context.getBean(TimelineRepository.class);
+        timelines.findByCursor(7, new CursorPage());
+        timelines.findByCursor(7, new CursorPage(CursorPage.encode(USERS * UPDATES_PER_USER / 2, USERS * UPDATES_PER_USER / 2)));
+        timelines.trim(7, 10);
+
+        assertNoScans();
+    }
+
+    @Test
+    public void commentAndLikeQueriesUseIndexes() {
+        final CommentRepository comments = context.getBean(CommentRepository.class);
+        comments.findByUpdateId(42);
+        comments.findByUpdateIdPaged(42, new Page(1));
+        comments.findById(42);
+        comments.findOwnerId(42);
+        comments.exists(42);
+
+        final LikeRepository likes = context.getBean(LikeRepository.class);
+        final Set<Integer> ids = new HashSet<>(Arrays.asList(40, 41, 42));
+        likes.findUpdateLikeByUserId(42, 3);
+        likes.findCommentLikeByUserId(42, 3);
+        likes.findUpdateLikesByIds(ids, 3);
+        likes.findCommentLikesByIds(ids, 3);
+        likes.findLikedUpdateIds(3, 100);
+        likes.findLikedCommentIds(3, 100);
+        likes.deleteUpdateLike(42, 3);
+        likes.deleteCommentLike(42, 3);
+
+        assertNoScans();
+    }
+
+    @Test
+    public void userFollowAndImageQueriesUseIndexes() {
+        final UserRepository users = context.getBean(UserRepository.class);
+        users.findById(7);
+        users.findByUsername("user7");
+        users.findByIds(new HashSet<>(Arrays.asList(3, 4, 5)));
+        users.findMostPopular();
+        users.isFanOutOnRead(7);
+
+        final FollowRepository follows = context.getBean(FollowRepository.class);
+        follows.isFollowd(7, 8);
+        follows.getFollowersOf(7, 0, 500);
+        follows.getFollowersOf(7, 3, 500);
+        follows.countFollowersOf(7, 5001);
+        follows.getFollowedFannedOutOnRead(7);
+        follows.unfollow(7, 8);
+
+        final ImageRepository images = context.getBean(ImageRepository.class);
+        images.findById(7);
+        images.findForUser(7);
+        images.findCurrentForUsers(new HashSet<>(Arrays.asList(3, 4, 5)));
+        images.findIdsByStatus(ImageStatus.PROCESSING);
+
+        assertNoScans();
+    }
+
+    @Test
+    public void tagAndNotificationQueriesUseIndexes() {
+        final TagRepository tags = context.getBean(TagRepository.class);
+        tags.findByName(new HashSet<>(Arrays.asList("tag3", "tag4")));
+        tags.findMostUsed(5);
+        tags.findUpdateTagsByUpdateId(42);
+        tags.findUpdateTagsByUpdateIds(new HashSet<>(Arrays.asList(40, 41, 42)));
+
+        final NotificationRepository notifications = context.getBean(NotificationRepository.class);
+        final Notification key = new Notification();
+        key.setToUserId(7);
+        key.setRelId(42);
+        key.setType(NotificationType.UPDATE_LIKE);
+        final Notification other = Notification.copy(key);
+        other.setRelId(43);
+        notifications.findByKeys(Arrays.asList(key, other));
+        final Map<Integer, List<Integer>> actors = new HashMap<>();
+        actors.put(42, Arrays.asList(3, 4));
+        actors.put(43, Collections.singletonList(5));
+        notifications.findActors(actors);
+        notifications.resetActors(Arrays.asList(42, 43));
+        key.setId(42);
+        key.setRecentActorIds(Arrays.asList(3, 4));
+        notifications.updateActors(Collections.singletonList(key));
+        notifications.findPaged(7, new Page(1));
+        notifications.getNotSeen(7);
+        notifications.see(42, 7);
+        notifications.seeUpToCreatedAt(7, 100);
+        notifications.seeIds(7, Arrays.asList(40, 41));
+
+        assertNoScans();
+    }
+
+    @Test
+    public void reconcileAndTrendingQueriesUseIndexes() {
+        final CounterRepository counters = context.getBean(CounterRepository.class);
+        for (final CounterType type : CounterType.values()) {
+            counters.findMaxId(type);
+            counters.findDrifted(type, 0, 100);
+        }
+
+        final TagRepository tags = context.getBean(TagRepository.class);
+        tags.forEachLinkBetween(100, 200, (tag, linkedAt) -> {
+        });
+
+        assertNoScans();
+    }
+
+    private static void assertNoScans() {
+        assertEquals(String.join("\n", scans), 0, scans.size());
+    }
+
+    /**
+     * Enough rows per table that the optimizer prefers an index over reading
+     * the whole table whenever one applies.
+     */
+    private static void seed(final JdbcTemplate db) {
+        final List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"user" + i, i});
+        }
+        db.batchUpdate("INSERT INTO `users` (`first_name`, `last_name`, `username`, `password`, `created_at`) VALUES ('f', 'l', ?, 'p', ?)", users);
+
+        final List<Object[]> updates = new ArrayList<>();
+        final List<Object[]> userPairs = new ArrayList<>();
+        final List<Object[]> tags = new ArrayList<>();
+        for (int i = 1; i <= USERS * UPDATES_PER_USER; i++) {
+            updates.add(new Object[]{"update " + i, 1 + i % USERS, i});
+            userPairs.add(new Object[]{i, 1 + i % USERS, i});
+            if (i <= USERS) {
+                tags.add(new Object[]{"tag" + i, i});
+            }
+        }
+        db.batchUpdate("INSERT INTO `updates` (`content`, `user_id`, `created_at`) VALUES (?, ?, ?)", updates);
+        db.batchUpdate("INSERT INTO `comments` (`content`, `update_id`, `user_id`, `created_at`) VALUES ('c', ?, ?, ?)", userPairs);
+        db.batchUpdate("INSERT INTO `update_likes` (`update_id`, `user_id`, `liked_at`) VALUES (?, ?, ?)", userPairs);
+        db.batchUpdate("INSERT INTO `comment_likes` (`comment_id`, `user_id`, `liked_at`) VALUES (?, ?, ?)", userPairs);
+        db.batchUpdate("INSERT INTO `favorites` (`update_id`, `user_id`, `favorited_at`) VALUES (?, ?, ?)", userPairs);
+        db.batchUpdate("INSERT INTO `tags` (`name`, `created_at`) VALUES (?, ?)", tags);
+        db.batchUpdate("INSERT INTO `update_tags` (`update_id`, `tag_id`) VALUES (?, ?)", pairsOf(userPairs));
+        db.batchUpdate("INSERT INTO `images` (`user_id`, `created_at`, `mime_type`) VALUES (?, ?, 'image/png')", pairsOf(userPairs));
+        db.batchUpdate(
+                "INSERT INTO `notifications` (`rel_id`, `to_user_id`, `created_at`, `from_user_id`, `rel_type`, `seen`) VALUES (?, ?, ?, 1, 'UPDATE_LIKE', 0)",
+                userPairs
+        );
+        db.batchUpdate("INSERT INTO `notification_actors` (`notification_id`, `actor_id`) VALUES (?, ?)", pairsOf(userPairs));
+
+        final List<Object[]> follows = new ArrayList<>();
+        final List<Object[]> timelines = new ArrayList<>();
+        for (int follower = 1; follower <= USERS; follower++) {
+            for (int i = 1; i <= FOLLOWS_PER_USER; i++) {
+                follows.add(new Object[]{follower, 1 + (follower + i) % USERS, i});
+                timelines.add(new Object[]{follower, follower * FOLLOWS_PER_USER + i - FOLLOWS_PER_USER, i});
+            }
+        }
+        db.batchUpdate("INSERT INTO `followers` (`follower_id`, `followed_id`, `followed_at`) VALUES (?, ?, ?)", follows);
+        db.batchUpdate("INSERT INTO `timelines` (`user_id`, `update_id`, `created_at`) VALUES (?, ?, ?)", timelines);
+
+        for (final String table : new String[]{"users", "updates", "comments", "update_likes", "comment_likes", "favorites",
+                "tags", "update_tags", "images", "notifications", "notification_actors", "followers", "timelines"}) {
+            db.queryForList("ANALYZE TABLE `" + table + "`");
+        }
+    }
+
+    private static List<Object[]> pairsOf(final List<Object[]> rows) {
+        final List<Object[]> pairs = new ArrayList<>(rows.size());
+        for (final Object[] row : rows) {
+            pairs.add(new Object[]{row[0], row[1]});
+        }
+
+        return pairs;
+    }
+
+    /**
+     * Hands out connections whose statements EXPLAIN themselves before they
+     * run and record the tables they would scan.
+     */
+    private static class ExplainingDataSource extends DelegatingDataSource {
+
+        private ExplainingDataSource(final DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            final Connection connection = super.getConnection();
+
+            return proxy(Connection.class, (proxy, method, args) -> {
+                final Object result = invoke(connection, method, args);
+                if ("prepareStatement".equals(method.getName()) && isExplainable((String) args[0])) {
+                    return proxy(PreparedStatement.class, new Explaining(connection, (String) args[0], result));
+                }
+                if ("createStatement".equals(method.getName())) {
+                    return proxy(Statement.class, new Explaining(connection, null, result));
+                }
+
+                return result;
+            });
+        }
+
+        private static boolean isExplainable(final String sql) {
+            final String statement = sql.trim().toUpperCase(Locale.ROOT);
+
+            return statement.startsWith("SELECT") || statement.startsWith("UPDATE") || statement.startsWith("DELETE");
+        }
+
+        private static class Explaining implements InvocationHandler {
+            private final Connection connection;
+            private final String sql;
+            private final Object statement;
+            private final List<Object[]> parameters = new ArrayList<>();
+
+            private Explaining(final Connection connection, final String sql, final Object statement) {
+                this.connection = connection;
+                this.sql = sql;
+                this.statement = statement;
+            }
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+                if (name.startsWith("set") && null != args && 1 < args.length && args[0] instanceof Integer) {
+                    parameters.add(new Object[]{method, args});
+                } else if (name.startsWith("execute") && !"executeBatch".equals(name)) {
+                    if (null != sql) {
+                        explain(sql);
+                    } else if (null != args && args[0] instanceof String && isExplainable((String) args[0])) {
+                        explain((String) args[0]);
+                    }
+                }
+
+                return ExplainingDataSource.invoke(statement, method, args);
+            }
+
+            private void explain(final String explained) throws Throwable {
+                try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + explained)) {
+                    for (final Object[] parameter : parameters) {
+                        ExplainingDataSource.invoke(explain, (Method) parameter[0], (Object[]) parameter[1]);
+                    }
+                    try (ResultSet plan = explain.executeQuery()) {
+                        while (plan.next()) {
+                            if ("ALL".equals(plan.getString("type"))) {
+                                scans.add(plan.getString("table") + " scanned by: " + explained.replaceAll("\\s+", " ").trim());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (final InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(QueryPlanTest.class.getClassLoader(), new Class[]{type}, handler);
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package app.core.repos;
+
+/**
+ * Repositories without a database, for unit tests of the classes using
+ * them. Tests extend these and override the queries they need; any other
+ * query fails on the missing DB.
+ */
+public class RepositoryStubs {
+
+    public static class Counters extends CounterRepository {
+        public Counters() {
+            super(null);
+        }
+    }
+
+    public static class Follows extends FollowRepository {
+        public Follows() {
+            super(null);
+        }
+    }
+
+    public static class Notifications extends NotificationRepository {
+        public Notifications() {
+            super(null);
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package app.http.controllers;
+
+import app.pojo.ImageFile;
+import app.pojo.ImageSize;
+import app.services.ImageService;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Conditional image requests: only a stored, final image is answered with
+ * 304, and only its own ETag is trusted before the image is looked up.
+ */
+public class ImageControllerTest {
+
+    private static final long CREATED_AT = 1_500_000_000L;
+
+    private final Images images = new Images();
+    private final ImageController controller = new ImageController(images);
+
+    @Test
+    public void theImagesOwnETagIsAnsweredWithoutALookup() throws IOException {
+        final MockHttpServletResponse response = get(7, ImageSize.small, HttpHeaders.IF_NONE_MATCH, "\"7-small\"");
+
+        assertEquals(304, response.getStatus());
+        assertEquals("\"7-small\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals(0, images.lookups);
+    }
+
+    @Test
+    public void aMissingImageIsNotFoundWhateverTheConditions() throws IOException {
+        assertEquals(404, get(8, null, HttpHeaders.IF_NONE_MATCH, "*").getStatus());
+        assertEquals(404, get(8, null, HttpHeaders.IF_MODIFIED_SINCE, "Sat, 01 Jan 2050 00:00:00 GMT").getStatus());
+    }
+
+    @Test
+    public void aProvisionalImageIsSentEvenToAWildcard() throws IOException {
+        images.add(9, ImageSize.small, true);
+
+        final MockHttpServletResponse response = get(9, ImageSize.small, HttpHeaders.IF_NONE_MATCH, "*");
+
+        assertEquals(200, response.getStatus());
+        assertEquals("no-cache", response.getHeader(HttpHeaders.CACHE_CONTROL));
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void aFinalImageMatchesAWildcardAndDatesFromItsCreation() throws IOException {
+        images.add(10, null, false);
+
+        assertEquals(304, get(10, null, HttpHeaders.IF_NONE_MATCH, "*").getStatus());
+        assertEquals(200, get(10, null, HttpHeaders.IF_NONE_MATCH, "\"11\"").getStatus());
+        assertEquals(304, get(10, null, HttpHeaders.IF_MODIFIED_SINCE, date(CREATED_AT)).getStatus());
+        assertEquals(200, get(10, null, HttpHeaders.IF_MODIFIED_SINCE, date(CREATED_AT - 1)).getStatus());
+
+        final MockHttpServletResponse response = get(10, null, HttpHeaders.IF_MODIFIED_SINCE, date(CREATED_AT - 1));
+        assertEquals("\"10\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals(3, response.getContentAsByteArray().length);
+    }
+
+    private MockHttpServletResponse get(final int imageId, final ImageSize size, final String header, final String value) throws IOException {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(header, value);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        if (null == size) {
+            controller.getImageSize(imageId, request, response);
+        } else {
+            controller.getImageSize(imageId, size, request, response);
+        }
+
+        return response;
+    }
+
+    private static String date(final long seconds) {
+        final MockHttpServletResponse formatter = new MockHttpServletResponse();
+        formatter.setDateHeader(HttpHeaders.DATE, seconds * 1000);
+
+        return formatter.getHeader(HttpHeaders.DATE);
+    }
+
+    private static class Images extends ImageService {
+        private final Map<String, ImageFile> files = new HashMap<>();
+        private int lookups;
+
+        private Images() {
+            super(null, null, null);
+        }
+
+        private void add(final int id, final ImageSize size, final boolean provisional) {
+            files.put(id + "-" + size, new ImageFile(id, "image/png", CREATED_AT, new ByteArrayResource(new byte[3]), provisional));
+        }
+
+        @Override
+        public ImageFile readById(final int id, final ImageSize size) {
+            lookups++;
+
+            return files.get(id + "-" + size);
+        }
+    }
+
+}
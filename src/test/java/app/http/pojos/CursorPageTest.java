@@ -0,0 +1,46 @@
+package app.http.pojos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CursorPageTest {
+
+    @Test
+    public void emptyCursorIsTheFirstPage() {
+        for (final String cursor : new String[]{null, "", "  "}) {
+            final CursorPage page = new CursorPage(cursor);
+            assertTrue(page.isFirst());
+            assertFalse(page.isMalformed());
+        }
+    }
+
+    @Test
+    public void decodesWhatItEncodes() {
+        final CursorPage page = new CursorPage(CursorPage.encode(1514764800L, 42));
+
+        assertFalse(page.isFirst());
+        assertFalse(page.isMalformed());
+        assertEquals(1514764800L, page.getCreatedAt());
+        assertEquals(42, page.getId());
+    }
+
+    @Test
+    public void malformedCursorIsRejectedNotRestarted() {
+        final String[] cursors = {
+                "not base64!",
+                CursorPage.encode(1, 0).substring(1),
+                "YWJj", // "abc", no separator
+                CursorPage.encode(-1, 5),
+                CursorPage.encode(5, -1),
+        };
+        for (final String cursor : cursors) {
+            final CursorPage page = new CursorPage(cursor);
+            assertTrue(cursor, page.isMalformed());
+            assertTrue(cursor, page.isFirst());
+        }
+    }
+
+}
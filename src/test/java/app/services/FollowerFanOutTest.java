@@ -0,0 +1,170 @@
+package app.services;
+
+import app.core.StubTransactionManager;
+import app.core.repos.RepositoryStubs;
+import app.pojo.Notification;
+import app.pojo.NotificationType;
+import app.pojo.Update;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Fan-out of one update against stub followers, timelines and
+ * notifications: the caller only hands the update over, the worker pages
+ * through the followers.
+ */
+public class FollowerFanOutTest {
+
+    private static final int AUTHOR = 7;
+    private static final int FOLLOWERS = 2 * FollowerFanOut.CHUNK_SIZE + 1;
+
+    private final StubTransactionManager transactionManager = new StubTransactionManager();
+    private final NotificationAggregator aggregator = new NotificationAggregator(new RepositoryStubs.Notifications(), transactionManager);
+    private final Follows follows = new Follows();
+    private final Timelines timelines = new Timelines();
+    private final Notifications notifications = new Notifications(aggregator);
+    private final FollowerFanOut fanOut = new FollowerFanOut(notifications, timelines, follows);
+
+    @After
+    public void shutdown() throws InterruptedException {
+        timelines.release.countDown();
+        fanOut.shutdown();
+        timelines.shutdown();
+        aggregator.shutdown();
+    }
+
+    @Test
+    public void pagesThroughTheFollowersOnTheWorkerAfterTheCommit() throws InterruptedException {
+        final Update update = update(100);
+        new TransactionTemplate(transactionManager).execute(status -> {
+            fanOut.fanOut(update, AUTHOR);
+            assertTrue(follows.pages.isEmpty());
+
+            return null;
+        });
+        fanOut.shutdown();
+
+        assertEquals(Arrays.asList(1, 500, 500, 1), sizes(timelines.pushes));
+        assertEquals(Arrays.asList(AUTHOR), timelines.pushes.get(0));
+        assertEquals(Arrays.asList(500, 500, 1), sizes(notifications.sent));
+        final Notification first = notifications.sent.get(0).get(0);
+        assertEquals(NotificationType.UPDATE_POSTED, first.getType());
+        assertEquals(AUTHOR, first.getFromUserId());
+        assertEquals(100, first.getRelId());
+        assertEquals(1, first.getToUserId());
+        assertEquals(FOLLOWERS, notifications.sent.get(2).get(0).getToUserId());
+        for (final String thread : follows.pages) {
+            assertTrue(thread, thread.startsWith("fan-out-"));
+        }
+    }
+
+    @Test
+    public void aRolledBackUpdateIsNotFannedOut() throws InterruptedException {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            fanOut.fanOut(update(100), AUTHOR);
+            status.setRollbackOnly();
+
+            return null;
+        });
+        fanOut.shutdown();
+
+        assertTrue(timelines.pushes.isEmpty());
+    }
+
+    @Test
+    public void refusesNewUpdatesOncePendingUpdatesReachTheLimitWithoutBlocking() {
+        timelines.release = new CountDownLatch(1);
+        int handedOver = 0;
+        try {
+            while (handedOver < 10_000) {
+                fanOut.admit();
+                fanOut.fanOut(update(handedOver), AUTHOR);
+                handedOver++;
+            }
+            fail("never refused");
+        } catch (final FanOutBusyException e) {
+            assertEquals(1000, handedOver);
+        }
+    }
+
+    private static Update update(final int id) {
+        final Update update = new Update();
+        update.setId(id);
+        update.setUserId(AUTHOR);
+
+        return update;
+    }
+
+    private static List<Integer> sizes(final List<? extends List<?>> batches) {
+        final List<Integer> sizes = new ArrayList<>();
+        for (final List<?> batch : batches) {
+            sizes.add(batch.size());
+        }
+
+        return sizes;
+    }
+
+    private static class Follows extends RepositoryStubs.Follows {
+        private final List<String> pages = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<Integer> getFollowersOf(final int userId, final int afterFollowerId, final int limit) {
+            pages.add(Thread.currentThread().getName());
+            final List<Integer> page = new ArrayList<>();
+            for (int followerId = afterFollowerId + 1; followerId <= FOLLOWERS && page.size() < limit; followerId++) {
+                page.add(followerId);
+            }
+
+            return page;
+        }
+    }
+
+    private static class Timelines extends TimelineService {
+        private final List<List<Integer>> pushes = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch release = new CountDownLatch(0);
+
+        private Timelines() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        public boolean pushesToFollowers(final int authorId) {
+            return true;
+        }
+
+        @Override
+        public void push(final Update update, final List<Integer> userIds) {
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pushes.add(new ArrayList<>(userIds));
+        }
+    }
+
+    private static class Notifications extends NotificationService {
+        private final List<List<Notification>> sent = new CopyOnWriteArrayList<>();
+
+        private Notifications(final NotificationAggregator aggregator) {
+            super(null, null, null, null, null, aggregator);
+        }
+
+        @Override
+        public void sendNotifications(final List<Notification> notifications) {
+            sent.add(new ArrayList<>(notifications));
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package app.services;
+
+import app.pojo.ImageFile;
+import app.pojo.ImageSize;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays avatar requests the way ImageService.readById does: a miss reads
+ * the variant from disk and puts it. Image popularity follows a Zipf
+ * distribution, as it does for the authors whose avatars fill feeds,
+ * comments and notifications. The measured hit ratio is compared with the
+ * best any cache of the same size could keep: the variants with the most
+ * requests per byte, for as many bytes as fit. LRU does not weigh an
+ * entry's size against its popularity and reaches about 80% of that; less
+ * than 75% points to entries weighed or evicted wrongly.
+ */
+public class HotImagesTest {
+
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+    private static final int IMAGES = 50_000;
+    private static final int WARM_UP = 100_000;
+    private static final int REQUESTS = 400_000;
+    private static final int SMALL_BYTES = 12 * 1024;
+    private static final int MEDIUM_BYTES = 60 * 1024;
+    private static final double SMALL_SHARE = 0.7;
+
+    private static File small;
+    private static File medium;
+    private static File large;
+
+    @BeforeClass
+    public static void writeVariants() throws Exception {
+        small = variant(SMALL_BYTES);
+        medium = variant(MEDIUM_BYTES);
+        large = variant(300 * 1024);
+    }
+
+    @AfterClass
+    public static void deleteVariants() {
+        for (final File file : new File[]{small, medium, large}) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void servesMostRequestsFromMemoryWithinTheByteBudget() {
+        final HotImages hotImages = new HotImages(MAX_BYTES);
+        final double[] cumulative = zipf(IMAGES, 1.0);
+        final Random random = new Random(25);
+
+        for (int i = 0; i < WARM_UP; i++) {
+            request(hotImages, cumulative, random);
+        }
+        final long hitsBefore = metric(hotImages, "cache.image.hit");
+        final long missesBefore = metric(hotImages, "cache.image.miss");
+        for (int i = 0; i < REQUESTS; i++) {
+            request(hotImages, cumulative, random);
+        }
+        final long hits = metric(hotImages, "cache.image.hit") - hitsBefore;
+        final long misses = metric(hotImages, "cache.image.miss") - missesBefore;
+
+        final double ratio = (double) hits / (hits + misses);
+        final double best = bestHitRatio(cumulative);
+        assertTrue("hit ratio " + ratio + ", best possible " + best, 0.75 * best < ratio);
+        assertTrue(metric(hotImages, "cache.image.bytes") <= MAX_BYTES);
+    }
+
+    @Test
+    public void servesLargeVariantsFromDisk() {
+        final HotImages hotImages = new HotImages(MAX_BYTES);
+        final ImageFile file = file(7, large);
+
+        assertSame(file, hotImages.put(ImageSize.medium, file));
+        assertNull(hotImages.get(7, ImageSize.medium));
+        assertEquals(0, metric(hotImages, "cache.image.size"));
+    }
+
+    @Test
+    public void keysEntriesByImageAndSize() {
+        final HotImages hotImages = new HotImages(MAX_BYTES);
+        final ImageFile cached = hotImages.put(ImageSize.small, file(7, small));
+
+        assertSame(cached, hotImages.get(7, ImageSize.small));
+        assertNull(hotImages.get(7, ImageSize.medium));
+        assertNull(hotImages.get(8, ImageSize.small));
+    }
+
+    private static void request(final HotImages hotImages, final double[] cumulative, final Random random) {
+        int imageId = Arrays.binarySearch(cumulative, random.nextDouble());
+        imageId = imageId < 0 ? -imageId - 1 : imageId;
+        final ImageSize size = random.nextDouble() < SMALL_SHARE ? ImageSize.small : ImageSize.medium;
+        if (null == hotImages.get(imageId, size)) {
+            hotImages.put(size, file(imageId, ImageSize.small == size ? small : medium));
+        }
+    }
+
+    /**
+     * Share of requests for the variants with the most requests per byte
+     * that fit into MAX_BYTES, counting each entry's overhead like the cache
+     * does. Popularity falls with the image's rank, so the best set is a
+     * prefix of the small variants and a shorter prefix of the medium ones.
+     */
+    private static double bestHitRatio(final double[] cumulative) {
+        final long smallWeight = SMALL_BYTES + 160;
+        final long mediumWeight = MEDIUM_BYTES + 160;
+        int smallCount = 0;
+        int mediumCount = 0;
+        long bytes = 0;
+        while (true) {
+            final double smallDensity = smallCount < IMAGES ? SMALL_SHARE * probability(cumulative, smallCount) / smallWeight : 0;
+            final double mediumDensity = mediumCount < IMAGES ? (1 - SMALL_SHARE) * probability(cumulative, mediumCount) / mediumWeight : 0;
+            final long weight = smallDensity >= mediumDensity ? smallWeight : mediumWeight;
+            if (bytes + weight > MAX_BYTES || 0 == smallDensity + mediumDensity) {
+                break;
+            }
+            bytes += weight;
+            if (smallDensity >= mediumDensity) {
+                smallCount++;
+            } else {
+                mediumCount++;
+            }
+        }
+
+        return SMALL_SHARE * (0 == smallCount ? 0 : cumulative[smallCount - 1])
+                + (1 - SMALL_SHARE) * (0 == mediumCount ? 0 : cumulative[mediumCount - 1]);
+    }
+
+    private static double probability(final double[] cumulative, final int rank) {
+        return cumulative[rank] - (0 == rank ? 0 : cumulative[rank - 1]);
+    }
+
+    private static double[] zipf(final int count, final double exponent) {
+        final double[] cumulative = new double[count];
+        double sum = 0;
+        for (int rank = 1; rank <= count; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= sum;
+        }
+
+        return cumulative;
+    }
+
+    private static ImageFile file(final int imageId, final File variant) {
+        return new ImageFile(imageId, "image/png", 0, new FileSystemResource(variant), false);
+    }
+
+    private static File variant(final int bytes) throws Exception {
+        final File file = File.createTempFile("variant", ".png");
+        Files.write(file.toPath(), new byte[bytes]);
+
+        return file;
+    }
+
+    private static long metric(final HotImages hotImages, final String name) {
+        for (final Metric<?> metric : hotImages.metrics()) {
+            if (name.equals(metric.getName())) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+}
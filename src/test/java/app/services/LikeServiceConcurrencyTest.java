@@ -0,0 +1,181 @@
+package app.services;
+
+import app.core.DB;
+import app.core.TestDatabase;
+import app.core.counters.WriteBehindCounters;
+import app.core.repos.CommentRepository;
+import app.core.repos.CounterRepository;
+import app.core.repos.LikeRepository;
+import app.core.repos.UpdateRepository;
+import app.pojo.Notification;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Many users like and unlike one update and one comment at the same time.
+ * Every call that reports a change must have changed exactly one like row,
+ * and the counters flushed by WriteBehindCounters must end up equal to the
+ * rows. Runs against the scratch database of {@link TestDatabase}.
+ */
+public class LikeServiceConcurrencyTest {
+
+    private static final int USERS = 50;
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 500;
+    private static final int UPDATE_ID = 1;
+    private static final int COMMENT_ID = 1;
+    private static final int OWNER_ID = 1;
+
+    private static DataSource dataSource;
+    private static AnnotationConfigApplicationContext context;
+    private static final AtomicInteger notifications = new AtomicInteger();
+
+    @BeforeClass
+    public static void migrateAndSeed() {
+        dataSource = TestDatabase.migrated();
+        final JdbcTemplate db = new JdbcTemplate(dataSource);
+        final List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"user" + i});
+        }
+        db.batchUpdate("INSERT INTO `users` (`first_name`, `last_name`, `username`, `password`, `created_at`) VALUES ('f', 'l', ?, 'p', 0)", users);
+        db.update("INSERT INTO `updates` (`id`, `content`, `user_id`, `created_at`) VALUES (?, 'u', ?, 0)", UPDATE_ID, OWNER_ID);
+        db.update("INSERT INTO `comments` (`id`, `content`, `update_id`, `user_id`, `created_at`) VALUES (?, 'c', ?, ?, 0)", COMMENT_ID, UPDATE_ID, OWNER_ID);
+
+        context = new AnnotationConfigApplicationContext();
+        context.register(
+                Config.class,
+                LikeRepository.class,
+                UpdateRepository.class,
+                CommentRepository.class,
+                CounterRepository.class,
+                WriteBehindCounters.class,
+                LikedItems.class,
+                LikeService.class
+        );
+        context.refresh();
+    }
+
+    @AfterClass
+    public static void close() {
+        if (null != context) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void countersStayExactUnderConcurrentLikesAndUnlikes() throws Exception {
+        final LikeService likeService = context.getBean(LikeService.class);
+        final AtomicInteger updateLikes = new AtomicInteger();
+        final AtomicInteger commentLikes = new AtomicInteger();
+        final AtomicInteger notifiedLikes = new AtomicInteger();
+
+        final ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final Random random = new Random(t);
+            workers.add(threads.submit(() -> {
+                for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                    final int userId = 1 + random.nextInt(USERS);
+                    final boolean notified = OWNER_ID != userId;
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            if (likeService.likeUpdate(UPDATE_ID, userId)) {
+                                updateLikes.incrementAndGet();
+                                notifiedLikes.addAndGet(notified ? 1 : 0);
+                            }
+                            break;
+                        case 1:
+                            if (likeService.unlikeUpdate(UPDATE_ID, userId)) {
+                                updateLikes.decrementAndGet();
+                            }
+                            break;
+                        case 2:
+                            if (likeService.likeComment(COMMENT_ID, userId)) {
+                                commentLikes.incrementAndGet();
+                                notifiedLikes.addAndGet(notified ? 1 : 0);
+                            }
+                            break;
+                        default:
+                            if (likeService.unlikeComment(COMMENT_ID, userId)) {
+                                commentLikes.decrementAndGet();
+                            }
+                    }
+                }
+            }));
+        }
+        for (final Future<?> worker : workers) {
+            worker.get(5, TimeUnit.MINUTES);
+        }
+        threads.shutdown();
+        // flushes whatever is still buffered
+        context.getBean(WriteBehindCounters.class).shutdown();
+
+        final JdbcTemplate db = new JdbcTemplate(dataSource);
+        final int updateRows = db.queryForObject("SELECT count(*) FROM `update_likes` WHERE `update_id` = ?", Integer.class, UPDATE_ID);
+        final int commentRows = db.queryForObject("SELECT count(*) FROM `comment_likes` WHERE `comment_id` = ?", Integer.class, COMMENT_ID);
+        assertEquals(updateLikes.get(), updateRows);
+        assertEquals(commentLikes.get(), commentRows);
+        assertEquals(updateRows, (int) db.queryForObject("SELECT `likes` FROM `updates` WHERE `id` = ?", Integer.class, UPDATE_ID));
+        assertEquals(commentRows, (int) db.queryForObject("SELECT `likes` FROM `comments` WHERE `id` = ?", Integer.class, COMMENT_ID));
+        assertEquals(notifiedLikes.get(), notifications.get());
+    }
+
+    @Configuration
+    static class Config {
+
+        @Bean
+        DB db() {
+            return new DB(dataSource);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new DataSourceTransactionManager(dataSource);
+        }
+
+        @Bean
+        NotificationService notificationService(final PlatformTransactionManager transactionManager) {
+            return new CountingNotifications(new NotificationAggregator(null, transactionManager));
+        }
+    }
+
+    /**
+     * Counts the notifications of committed likes instead of storing them.
+     */
+    private static class CountingNotifications extends NotificationService {
+        private CountingNotifications(final NotificationAggregator aggregator) {
+            super(null, null, null, null, null, aggregator);
+        }
+
+        @Override
+        public void sendNotification(final int toUserId, final Notification notification) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    notifications.incrementAndGet();
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package app.services;
+
+import app.core.repos.LikeRepository;
+import app.pojo.Like;
+import app.pojo.LikeType;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class LikedItemsTest {
+
+    @Test
+    public void resolvesLikesFromTheLoadedSet() {
+        final Likes likes = new Likes(Arrays.asList(1, 3));
+        final LikedItems likedItems = new LikedItems(likes);
+
+        assertEquals(set(1, 3), likedItems.likedUpdates(7, set(1, 2, 3)));
+        likedItems.liked(7, LikeType.UPDATE, 2);
+        likedItems.unliked(7, LikeType.UPDATE, 3);
+        assertEquals(set(1, 2), likedItems.likedUpdates(7, set(1, 2, 3)));
+        assertEquals(1, likes.loads);
+        assertEquals(0, likes.inQueries);
+    }
+
+    @Test
+    public void remembersUsersWithTooManyLikes() {
+        final List<Integer> many = new ArrayList<>();
+        for (int i = 1; i <= 20_001; i++) {
+            many.add(i);
+        }
+        final Likes likes = new Likes(many);
+        final LikedItems likedItems = new LikedItems(likes);
+
+        for (int page = 0; page < 5; page++) {
+            assertEquals(set(5), likedItems.likedUpdates(7, set(5, 30_000)));
+        }
+        likedItems.liked(7, LikeType.UPDATE, 30_000);
+        assertEquals(1, likes.loads);
+        assertEquals(5, likes.inQueries);
+    }
+
+    @Test
+    public void weighsEachSetByItsArrayPlusTheEntryOverhead() {
+        final List<Integer> hundred = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            hundred.add(i * 1_009);
+        }
+        final LikedItems likedItems = new LikedItems(new Likes(hundred));
+
+        likedItems.likedUpdates(7, set(1));
+        // 24 bytes of set, a 16-byte array header and 100 ints, and the 104-byte cache entry
+        assertEquals(24 + 416 + 104, metric(likedItems, "cache.liked.bytes"));
+
+        likedItems.likedUpdates(8, set(1));
+        assertEquals(2 * 544, metric(likedItems, "cache.liked.bytes"));
+
+        // the array grows to 150 ints
+        likedItems.liked(7, LikeType.UPDATE, 5);
+        assertEquals(24 + 616 + 104 + 544, metric(likedItems, "cache.liked.bytes"));
+    }
+
+    private static long metric(final LikedItems likedItems, final String name) {
+        for (final Metric<?> metric : likedItems.metrics()) {
+            if (name.equals(metric.getName())) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private static Set<Integer> set(final Integer... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private static class Likes extends LikeRepository {
+        private final List<Integer> liked;
+        private int loads;
+        private int inQueries;
+
+        private Likes(final List<Integer> liked) {
+            this.liked = liked;
+        }
+
+        @Override
+        public List<Integer> findLikedUpdateIds(final int userId, final int limit) {
+            loads++;
+
+            return new ArrayList<>(liked.subList(0, Math.min(limit, liked.size())));
+        }
+
+        @Override
+        public List<Like> findUpdateLikesByIds(final Set<Integer> updateIds, final int userId) {
+            inQueries++;
+            final List<Like> result = new ArrayList<>();
+            for (final Integer updateId : updateIds) {
+                if (liked.contains(updateId)) {
+                    result.add(Like.createUpdateLike(updateId, userId));
+                }
+            }
+
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package app.services;
+
+import app.core.repos.RepositoryStubs;
+import app.http.pojos.SeeNotificationsResource;
+import app.websocket.notification.RecordingNotificationHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntPredicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Acknowledgements against in-memory notifications: user 7 and user 8 each
+ * have unseen notifications 1 to 2000, created at id * 10.
+ */
+public class NotificationAcksTest {
+
+    private static final int MAX_IDS = SeeNotificationsResource.MAX_IDS;
+
+    private final Notifications notifications = new Notifications();
+    private final Map<Integer, Integer> seenByUser = new ConcurrentHashMap<>();
+    private final NotificationAcks acks = new NotificationAcks(notifications, new Unread(), new RecordingNotificationHandler());
+
+    @Before
+    public void stopBackgroundFlushes() {
+        // the tests flush themselves; the buffer is still empty here
+        acks.shutdown();
+        for (final int userId : new int[]{7, 8}) {
+            final Set<Integer> unseen = ConcurrentHashMap.newKeySet();
+            for (int id = 1; id <= 2_000; id++) {
+                unseen.add(id);
+            }
+            notifications.unseen.put(userId, unseen);
+        }
+    }
+
+    @Test
+    public void coalescesSingleAcksIntoOneStatementPerUser() {
+        acks.see(1, 7);
+        acks.see(2, 7);
+        acks.see(3, 7);
+        acks.see(2, 7);
+        acks.see(4, 8);
+        assertTrue(notifications.statements.isEmpty());
+
+        acks.flush();
+        assertEquals(2, notifications.statements.size());
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), notifications.idsOf(7));
+        assertEquals(Collections.singleton(4), notifications.idsOf(8));
+        assertEquals(3, (int) seenByUser.get(7));
+        assertEquals(1, (int) seenByUser.get(8));
+        assertEquals(0, metric("notification.acks.pending.users"));
+    }
+
+    @Test
+    public void writesABufferAsSoonAsItHoldsMaxIds() {
+        for (int id = 1; id < MAX_IDS; id++) {
+            acks.see(id, 7);
+        }
+        assertTrue(notifications.statements.isEmpty());
+
+        acks.see(MAX_IDS, 7);
+        assertEquals(1, notifications.statements.size());
+        assertEquals(MAX_IDS, notifications.idsOf(7).size());
+        assertEquals(MAX_IDS, (int) seenByUser.get(7));
+
+        acks.see(MAX_IDS + 1, 7);
+        acks.flush();
+        assertEquals(2, notifications.statements.size());
+        assertEquals(MAX_IDS + 1, (int) seenByUser.get(7));
+    }
+
+    @Test
+    public void appliesRangesAtOnceAndCountsEachNotificationOnce() {
+        assertEquals(10, acks.seeAll(7, new SeeNotificationsResource(100L, null)));
+        assertEquals(5, acks.seeAll(7, new SeeNotificationsResource(150L, null)));
+        assertEquals(2, acks.seeAll(7, new SeeNotificationsResource(120L, Arrays.asList(3, 16, 17))));
+        assertEquals(17, (int) seenByUser.get(7));
+        assertEquals(4, notifications.statements.size());
+        assertEquals(2_000 - 17, notifications.unseen.get(7).size());
+    }
+
+    @Test
+    public void buffersFailedIdsAgainAndWritesTheOtherUsers() {
+        acks.see(1, 7);
+        acks.see(2, 7);
+        acks.see(1, 8);
+        notifications.failing = 7;
+
+        acks.flush();
+        assertEquals(Collections.singleton(1), notifications.idsOf(8));
+        assertEquals(1, (int) seenByUser.get(8));
+        assertNull(seenByUser.get(7));
+        assertEquals(1, metric("notification.acks.pending.users"));
+        assertEquals(1, metric("notification.acks.failed"));
+
+        notifications.failing = null;
+        acks.flush();
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), notifications.idsOf(7));
+        assertEquals(2, (int) seenByUser.get(7));
+        assertEquals(0, metric("notification.acks.pending.users"));
+    }
+
+    @Test
+    public void buffersAFailedEarlyFlushAgain() {
+        notifications.failing = 7;
+        for (int id = 1; id <= MAX_IDS; id++) {
+            acks.see(id, 7);
+        }
+        assertEquals(1, metric("notification.acks.failed"));
+        assertEquals(1, metric("notification.acks.pending.users"));
+
+        notifications.failing = null;
+        acks.flush();
+        assertEquals(MAX_IDS, notifications.idsOf(7).size());
+        assertEquals(MAX_IDS, (int) seenByUser.get(7));
+    }
+
+    private long metric(final String name) {
+        for (final Metric<?> metric : acks.metrics()) {
+            if (name.equals(metric.getName())) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private class Unread extends UnreadNotifications {
+        private Unread() {
+            super(null, null, null);
+        }
+
+        @Override
+        public void seen(final int userId, final int count) {
+            seenByUser.merge(userId, count, Integer::sum);
+        }
+    }
+
+    private static class Notifications extends RepositoryStubs.Notifications {
+        private final Map<Integer, Set<Integer>> unseen = new ConcurrentHashMap<>();
+        private final List<Map.Entry<Integer, List<Integer>>> statements = new CopyOnWriteArrayList<>();
+        private volatile Integer failing;
+
+        @Override
+        public int seeUpToCreatedAt(final int userId, final long upToCreatedAt) {
+            statements.add(new AbstractMap.SimpleEntry<>(userId, Collections.emptyList()));
+
+            return see(userId, id -> id * 10L <= upToCreatedAt);
+        }
+
+        @Override
+        public int seeIds(final int userId, final Collection<Integer> ids) {
+            if (Objects.equals(failing, userId)) {
+                throw new IllegalStateException("lock wait timeout");
+            }
+            statements.add(new AbstractMap.SimpleEntry<>(userId, new ArrayList<>(ids)));
+
+            return see(userId, ids::contains);
+        }
+
+        private int see(final int userId, final IntPredicate matches) {
+            int seen = 0;
+            final Iterator<Integer> ids = unseen.get(userId).iterator();
+            while (ids.hasNext()) {
+                if (matches.test(ids.next())) {
+                    ids.remove();
+                    seen++;
+                }
+            }
+
+            return seen;
+        }
+
+        private Set<Integer> idsOf(final int userId) {
+            final Set<Integer> ids = new HashSet<>();
+            for (final Map.Entry<Integer, List<Integer>> statement : statements) {
+                if (userId == statement.getKey()) {
+                    ids.addAll(statement.getValue());
+                }
+            }
+
+            return ids;
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package app.services;
+
+import app.core.StubTransactionManager;
+import app.core.repos.RepositoryStubs;
+import app.pojo.Notification;
+import app.pojo.NotificationType;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Aggregation against an in-memory repository in which every written row
+ * is reopened by its write.
+ */
+public class NotificationAggregatorTest {
+
+    private final Notifications notifications = new Notifications();
+    private final NotificationAggregator aggregator = new NotificationAggregator(notifications, new StubTransactionManager());
+    private final List<Notification> pushed = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void stopBackgroundFlushes() {
+        // the tests flush themselves; the buffer is still empty here
+        aggregator.shutdown();
+        aggregator.onWritten((written, newlyUnseen) -> pushed.addAll(written));
+    }
+
+    @Test
+    public void collapsesEventsAboutTheSameItem() {
+        aggregator.add(like(1, 7, 100));
+        aggregator.add(like(2, 7, 100));
+        aggregator.add(like(1, 7, 100));
+        aggregator.add(like(3, 8, 100));
+
+        aggregator.flush();
+        assertEquals(1, notifications.upserts.size());
+        assertEquals(2, pushed.size());
+        assertEquals(Arrays.asList(1, 2), written(7).getRecentActorIds());
+        assertEquals(2, written(7).getActorCount());
+        assertEquals(0, metric("notification.aggregate.pending"));
+        assertEquals(4, metric("notification.aggregate.events"));
+        assertEquals(2, metric("notification.aggregate.written"));
+    }
+
+    @Test
+    public void buffersAFailedChunkAgainBeforeLaterActors() {
+        aggregator.add(like(1, 7, 100));
+        aggregator.add(like(2, 7, 100));
+        aggregator.add(like(4, 8, 100));
+        notifications.failing = 7;
+
+        aggregator.flush();
+        assertTrue(pushed.isEmpty());
+        assertEquals(2, metric("notification.aggregate.pending"));
+        assertEquals(1, metric("notification.aggregate.failed"));
+
+        aggregator.add(like(3, 7, 100));
+        aggregator.add(like(1, 7, 100));
+        notifications.failing = null;
+        aggregator.flush();
+        assertEquals(Arrays.asList(1, 3, 2), written(7).getRecentActorIds());
+        assertEquals(3, written(7).getActorCount());
+        assertEquals(1, written(7).getFromUserId());
+        assertEquals(Collections.singletonList(4), written(8).getRecentActorIds());
+        assertEquals(0, metric("notification.aggregate.pending"));
+    }
+
+    @Test
+    public void aFailingListenerDoesNotStopTheOthers() {
+        final List<Notification> afterFailure = new ArrayList<>();
+        aggregator.onWritten((written, newlyUnseen) -> {
+            throw new IllegalStateException("session closed");
+        });
+        aggregator.onWritten((written, newlyUnseen) -> afterFailure.addAll(written));
+        aggregator.add(like(1, 7, 100));
+
+        aggregator.flush();
+        assertEquals(1, pushed.size());
+        assertEquals(1, afterFailure.size());
+        assertEquals(0, metric("notification.aggregate.failed"));
+    }
+
+    private static Notification like(final int fromUserId, final int toUserId, final int updateId) {
+        final Notification notification = new Notification();
+        notification.setFromUserId(fromUserId);
+        notification.setToUserId(toUserId);
+        notification.setRelId(updateId);
+        notification.setType(NotificationType.UPDATE_LIKE);
+
+        return notification;
+    }
+
+    private Notification written(final int toUserId) {
+        Notification last = null;
+        for (final Notification notification : pushed) {
+            if (toUserId == notification.getToUserId()) {
+                last = notification;
+            }
+        }
+
+        return last;
+    }
+
+    private long metric(final String name) {
+        for (final Metric<?> metric : aggregator.metrics()) {
+            if (name.equals(metric.getName())) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private static class Notifications extends RepositoryStubs.Notifications {
+        private final List<List<Notification>> upserts = new CopyOnWriteArrayList<>();
+        private volatile Integer failing;
+        private long openToken;
+        private int nextId = 1;
+
+        @Override
+        public void upsertAggregated(final List<Notification> notifications, final long openToken) {
+            for (final Notification notification : notifications) {
+                if (Objects.equals(failing, notification.getToUserId())) {
+                    throw new IllegalStateException("lock wait timeout");
+                }
+            }
+            upserts.add(new ArrayList<>(notifications));
+            this.openToken = openToken;
+        }
+
+        @Override
+        public List<Notification> findByKeys(final List<Notification> keys) {
+            final List<Notification> rows = new ArrayList<>();
+            for (final Notification key : keys) {
+                final Notification row = Notification.copy(key);
+                row.setId(nextId++);
+                row.setActorCount(key.getActorCount());
+                row.setRecentActorIds(key.getRecentActorIds());
+                row.setOpenToken(openToken);
+                rows.add(row);
+            }
+
+            return rows;
+        }
+
+        @Override
+        public Map<Integer, Set<Integer>> findActors(final Map<Integer, ? extends Collection<Integer>> actorsByNotification) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void addActors(final Map<Integer, ? extends Collection<Integer>> actorsByNotification) {
+        }
+
+        @Override
+        public void resetActors(final Collection<Integer> notificationIds) {
+        }
+
+        @Override
+        public void updateActors(final List<Notification> notifications) {
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package app.services;
+
+import app.core.DB;
+import app.core.TestDatabase;
+import app.core.counters.WriteBehindCounters;
+import app.core.repos.CounterRepository;
+import app.core.repos.TagRepository;
+import app.pojo.Tag;
+import app.utils.Hashtags;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Many posts introduce the same new tags at the same moment, in both
+ * orders, the way UpdateService.addNew stores them: the update and its tags
+ * in one transaction. Runs against the scratch database of
+ * {@link TestDatabase}.
+ */
+public class TagServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int POSTS_PER_THREAD = 20;
+    private static final String[] CONTENTS = {"#launch #fresh day one", "so #fresh #launch", "#launch again #launch"};
+
+    private static DataSource dataSource;
+    private static AnnotationConfigApplicationContext context;
+
+    @BeforeClass
+    public static void migrate() {
+        dataSource = TestDatabase.migrated();
+        new JdbcTemplate(dataSource).update(
+                "INSERT INTO `users` (`first_name`, `last_name`, `username`, `password`, `created_at`) VALUES ('f', 'l', 'poster', 'p', 0)"
+        );
+
+        context = new AnnotationConfigApplicationContext();
+        context.register(
+                Config.class,
+                TagRepository.class,
+                TrendingTags.class,
+                CounterRepository.class,
+                WriteBehindCounters.class,
+                TagService.class
+        );
+        context.refresh();
+    }
+
+    @AfterClass
+    public static void close() {
+        if (null != context) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void storesEachNewTagOnceAndLinksEachPostOnce() throws Exception {
+        final TagService tagService = context.getBean(TagService.class);
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        final JdbcTemplate db = new JdbcTemplate(dataSource);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        final ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> posters = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            posters.add(threads.submit(() -> {
+                start.await();
+                for (int i = 0; i < POSTS_PER_THREAD; i++) {
+                    final String content = CONTENTS[(thread + i) % CONTENTS.length];
+                    transactionTemplate.execute(status -> {
+                        final int updateId = insertUpdate(db, content);
+                        final List<Tag> tags = tagService.addTags(Hashtags.names(content));
+                        tagService.addUpdateTagLink(tags, updateId);
+
+                        return null;
+                    });
+                }
+
+                return null;
+            }));
+        }
+        start.countDown();
+        for (final Future<?> poster : posters) {
+            poster.get(5, TimeUnit.MINUTES);
+        }
+        threads.shutdown();
+        // flushes the buffered uses
+        context.getBean(WriteBehindCounters.class).shutdown();
+
+        final int posts = THREADS * POSTS_PER_THREAD;
+        final int withFresh = db.queryForObject("SELECT count(*) FROM `updates` WHERE `content` LIKE '%#fresh%'", Integer.class);
+        assertEquals(Arrays.asList("fresh", "launch"), db.queryForList("SELECT `name` FROM `tags` ORDER BY `name`", String.class));
+        assertEquals(posts, (int) db.queryForObject("SELECT count(*) FROM `updates`", Integer.class));
+        assertEquals(0, db.queryForList(
+                "SELECT `tag_id`, `update_id` FROM `update_tags` GROUP BY `tag_id`, `update_id` HAVING count(*) > 1"
+        ).size());
+        assertEquals(posts, (int) linksOf(db, "launch"));
+        assertEquals(withFresh, (int) linksOf(db, "fresh"));
+        assertEquals(posts, (int) usesOf(db, "launch"));
+        assertEquals(withFresh, (int) usesOf(db, "fresh"));
+    }
+
+    private static int insertUpdate(final JdbcTemplate db, final String content) {
+        final KeyHolder keyHolder = new GeneratedKeyHolder();
+        db.update(connection -> {
+            final PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO `updates` (`content`, `user_id`, `created_at`) VALUES (?, 1, 0)",
+                    Statement.RETURN_GENERATED_KEYS
+            );
+            statement.setString(1, content);
+
+            return statement;
+        }, keyHolder);
+
+        return keyHolder.getKey().intValue();
+    }
+
+    private static Integer linksOf(final JdbcTemplate db, final String name) {
+        return db.queryForObject(
+                "SELECT count(*) FROM `update_tags` ut JOIN `tags` t ON t.`id` = ut.`tag_id` WHERE t.`name` = ?",
+                Integer.class,
+                name
+        );
+    }
+
+    private static Integer usesOf(final JdbcTemplate db, final String name) {
+        return db.queryForObject("SELECT `uses` FROM `tags` WHERE `name` = ?", Integer.class, name);
+    }
+
+    @Configuration
+    static class Config {
+
+        @Bean
+        DB db() {
+            return new DB(dataSource);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new DataSourceTransactionManager(dataSource);
+        }
+    }
+
+}
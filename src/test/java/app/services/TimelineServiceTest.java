@@ -0,0 +1,159 @@
+package app.services;
+
+import app.core.DB;
+import app.core.TestDatabase;
+import app.core.cache.UserCache;
+import app.core.counters.WriteBehindCounters;
+import app.core.repos.CounterRepository;
+import app.core.repos.FollowRepository;
+import app.core.repos.TimelineRepository;
+import app.core.repos.UpdateRepository;
+import app.core.repos.UserRepository;
+import app.http.pojos.CursorPage;
+import app.pojo.Update;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The home timeline follows the follow set: following an author shows their
+ * recent updates, unfollowing hides them again, whether the author is pushed
+ * on write or pulled on read. Runs against the scratch database of
+ * {@link TestDatabase}.
+ */
+public class TimelineServiceTest {
+
+    private static final int READER = 1;
+    private static final int PUSHED_AUTHOR = 2;
+    private static final int PULLED_AUTHOR = 3;
+
+    private static DataSource dataSource;
+    private static AnnotationConfigApplicationContext context;
+
+    private FollowService followService;
+    private TimelineService timelineService;
+
+    @BeforeClass
+    public static void migrate() {
+        dataSource = TestDatabase.migrated();
+        context = new AnnotationConfigApplicationContext();
+        context.register(
+                Config.class,
+                UserCache.class,
+                UserRepository.class,
+                FollowRepository.class,
+                UpdateRepository.class,
+                TimelineRepository.class,
+                CounterRepository.class,
+                WriteBehindCounters.class,
+                TimelineService.class,
+                FollowService.class
+        );
+        context.refresh();
+    }
+
+    @AfterClass
+    public static void close() {
+        if (null != context) {
+            context.close();
+        }
+    }
+
+    @Before
+    public void seed() {
+        final JdbcTemplate db = new JdbcTemplate(dataSource);
+        for (final String table : new String[]{"timelines", "followers", "updates", "users"}) {
+            db.update("DELETE FROM `" + table + "`");
+        }
+        for (final int userId : new int[]{READER, PUSHED_AUTHOR, PULLED_AUTHOR}) {
+            db.update(
+                    "INSERT INTO `users` (`id`, `first_name`, `last_name`, `username`, `password`, `created_at`, `fan_out_on_read`) VALUES (?, 'f', 'l', ?, 'p', 0, ?)",
+                    userId, "user" + userId, PULLED_AUTHOR == userId ? 1 : 0
+            );
+        }
+        // the reader's own update is in their timeline already
+        db.update("INSERT INTO `updates` (`id`, `content`, `user_id`, `created_at`) VALUES (1, 'own', ?, 15)", READER);
+        db.update("INSERT INTO `timelines` (`user_id`, `update_id`, `created_at`) VALUES (?, 1, 15)", READER);
+        for (int id = 10; id < 13; id++) {
+            db.update("INSERT INTO `updates` (`id`, `content`, `user_id`, `created_at`) VALUES (?, 'pushed', ?, ?)", id, PUSHED_AUTHOR, id);
+            db.update("INSERT INTO `updates` (`id`, `content`, `user_id`, `created_at`) VALUES (?, 'pulled', ?, ?)", id + 10, PULLED_AUTHOR, id + 10);
+        }
+
+        followService = context.getBean(FollowService.class);
+        timelineService = context.getBean(TimelineService.class);
+    }
+
+    @Test
+    public void followingShowsAnAuthorsRecentUpdates() {
+        assertEquals(Collections.singletonList(1), home());
+
+        followService.follow(READER, PUSHED_AUTHOR);
+        assertEquals(Arrays.asList(1, 12, 11, 10), home());
+
+        followService.follow(READER, PULLED_AUTHOR);
+        assertEquals(Arrays.asList(22, 21, 20, 1, 12, 11, 10), home());
+    }
+
+    @Test
+    public void unfollowingHidesThemAgain() {
+        followService.follow(READER, PUSHED_AUTHOR);
+        followService.follow(READER, PULLED_AUTHOR);
+
+        followService.unfollow(READER, PUSHED_AUTHOR);
+        assertEquals(Arrays.asList(22, 21, 20, 1), home());
+
+        followService.unfollow(READER, PULLED_AUTHOR);
+        assertEquals(Collections.singletonList(1), home());
+    }
+
+    @Test
+    public void leavesOtherTimelinesAlone() {
+        followService.follow(READER, PUSHED_AUTHOR);
+        followService.follow(PULLED_AUTHOR, PUSHED_AUTHOR);
+
+        followService.unfollow(READER, PUSHED_AUTHOR);
+        assertEquals(Arrays.asList(12, 11, 10), ids(timelineService.findByCursor(PULLED_AUTHOR, new CursorPage())));
+    }
+
+    private List<Integer> home() {
+        return ids(timelineService.findByCursor(READER, new CursorPage()));
+    }
+
+    private static List<Integer> ids(final List<Update> updates) {
+        final List<Integer> ids = new ArrayList<>();
+        for (final Update update : updates) {
+            ids.add(update.getId());
+        }
+
+        return ids;
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    static class Config {
+
+        @Bean
+        DB db() {
+            return new DB(dataSource);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new DataSourceTransactionManager(dataSource);
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+package app.services;
+
+import app.core.StubTransactionManager;
+import app.core.counters.CounterType;
+import app.core.counters.TestWriteBehindCounters;
+import app.core.repos.RepositoryStubs;
+import app.websocket.notification.RecordingNotificationHandler;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unread counts over an in-memory users.unread_notifications column that
+ * the write-behind counters flush into.
+ */
+public class UnreadNotificationsTest {
+
+    private final Map<Integer, Long> column = new ConcurrentHashMap<>();
+    private final RecordingNotificationHandler handler = new RecordingNotificationHandler();
+    private volatile Runnable afterBuffering;
+    private volatile Runnable afterColumnRead;
+    private volatile CountDownLatch blocking;
+    private final TestWriteBehindCounters counters = new TestWriteBehindCounters(new Counters()) {
+        @Override
+        public void addCommitted(final CounterType type, final int id, final long delta) {
+            super.addCommitted(type, id, delta);
+            final Runnable hook = afterBuffering;
+            if (null != hook) {
+                hook.run();
+            }
+        }
+    };
+    private final UnreadNotifications unread = new UnreadNotifications(new Notifications(), counters, handler);
+
+    @After
+    public void shutdown() {
+        if (null != blocking) {
+            blocking.countDown();
+        }
+        counters.shutdown();
+    }
+
+    @Test
+    public void aLoadRacingAChangeDoesNotCountItTwice() throws Exception {
+        final ExecutorService loader = Executors.newSingleThreadExecutor();
+        final List<Future<Integer>> loads = new ArrayList<>();
+        afterBuffering = () -> {
+            // the delta is buffered, the cached count not yet changed
+            afterBuffering = null;
+            final AtomicReference<Thread> thread = new AtomicReference<>();
+            loads.add(loader.submit(() -> {
+                thread.set(Thread.currentThread());
+                return unread.get(7);
+            }));
+            awaitBlockedOrDone(loads.get(0), thread);
+        };
+
+        unread.added(Collections.singletonMap(7, 1));
+        assertEquals(1, (int) loads.get(0).get(5, TimeUnit.SECONDS));
+        loader.shutdown();
+
+        assertEquals(1, unread.get(7));
+        unread.added(Collections.singletonMap(7, 1));
+        assertEquals(2, unread.get(7));
+        assertEquals(Arrays.asList(counts(7, 1), counts(7, 2)), handler.getSentCounts());
+    }
+
+    @Test
+    public void pushesCountsOfUsersNotCachedWithoutCachingThem() {
+        column.put(1, 5L);
+        unread.get(3);
+        final Map<Integer, Integer> added = new HashMap<>();
+        added.put(1, 2);
+        added.put(2, 1);
+        added.put(3, 4);
+        unread.added(added);
+
+        final Map<Integer, Integer> expected = new HashMap<>();
+        expected.put(1, 7);
+        expected.put(2, 1);
+        expected.put(3, 4);
+        assertEquals(Collections.singletonList(expected), handler.getSentCounts());
+        assertEquals(1, metric("cache.unread.size"));
+    }
+
+    @Test
+    public void aFlushBetweenTheColumnReadAndTheBufferedDeltaIsNotMissed() {
+        unread.added(Collections.singletonMap(7, 2));
+        afterColumnRead = () -> {
+            // the delta moves from the buffer into the column just read
+            afterColumnRead = null;
+            counters.flush();
+        };
+
+        assertEquals(2, unread.get(7));
+        assertEquals(2L, (long) column.get(7));
+        assertEquals(0, counters.pending(CounterType.USER_UNREAD_NOTIFICATIONS, 7));
+        assertEquals(1, metric("cache.unread.size"));
+        assertEquals(2, unread.get(7));
+    }
+
+    @Test
+    public void aLoadWhileABatchIsInFlightIsNotCached() throws Exception {
+        unread.added(Collections.singletonMap(7, 2));
+        blocking = new CountDownLatch(1);
+        final ExecutorService flusher = Executors.newSingleThreadExecutor();
+        final Future<?> flush = flusher.submit(counters::flush);
+        flusher.shutdown();
+        while (!column.containsKey(7)) {
+            Thread.yield();
+        }
+
+        // the batch is in the column and still buffered until it settles
+        unread.get(7);
+        assertEquals(0, metric("cache.unread.size"));
+        blocking.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, unread.get(7));
+        assertEquals(1, metric("cache.unread.size"));
+    }
+
+    @Test
+    public void appliesChangesOnlyWhenTheirTransactionCommits() {
+        column.put(7, 3L);
+        assertEquals(3, unread.get(7));
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(new StubTransactionManager());
+
+        transactionTemplate.execute(status -> {
+            unread.seen(7, 2);
+            status.setRollbackOnly();
+
+            return null;
+        });
+        assertEquals(3, unread.get(7));
+        assertEquals(0, counters.pending(CounterType.USER_UNREAD_NOTIFICATIONS, 7));
+        assertTrue(handler.getSentCounts().isEmpty());
+
+        transactionTemplate.execute(status -> {
+            unread.seen(7, 2);
+            assertEquals(3, unread.get(7));
+
+            return null;
+        });
+        assertEquals(1, unread.get(7));
+        assertEquals(Collections.singletonList(counts(7, 1)), handler.getSentCounts());
+    }
+
+    @Test
+    public void staysExactUnderConcurrentChangesAndLoads() throws Exception {
+        final ExecutorService threads = Executors.newFixedThreadPool(8);
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(threads.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    final int userId = i % 500;
+                    unread.added(Collections.singletonMap(userId, 2));
+                    unread.seen(userId, 1);
+                    unread.get(userId);
+                }
+            }));
+        }
+        for (final Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        threads.shutdown();
+
+        for (int userId = 0; userId < 500; userId++) {
+            assertEquals(32, unread.get(userId));
+        }
+    }
+
+    private static void awaitBlockedOrDone(final Future<?> load, final AtomicReference<Thread> thread) {
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (!load.isDone() && System.currentTimeMillis() < deadline) {
+            if (null != thread.get() && Thread.State.BLOCKED == thread.get().getState()) {
+                return;
+            }
+            Thread.yield();
+        }
+    }
+
+    private static Map<Integer, Integer> counts(final int userId, final int count) {
+        return Collections.singletonMap(userId, count);
+    }
+
+    private long metric(final String name) {
+        for (final Metric<?> metric : unread.metrics()) {
+            if (name.equals(metric.getName())) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private class Counters extends RepositoryStubs.Counters {
+        @Override
+        public void applyDeltas(final CounterType type, final Map<Integer, Long> deltas) {
+            for (final Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+                column.merge(delta.getKey(), delta.getValue(), Long::sum);
+            }
+            final CountDownLatch latch = blocking;
+            if (null != latch) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private class Notifications extends RepositoryStubs.Notifications {
+        @Override
+        public int getNotSeen(final int userId) {
+            final int stored = column.getOrDefault(userId, 0L).intValue();
+            final Runnable hook = afterColumnRead;
+            if (null != hook) {
+                hook.run();
+            }
+
+            return stored;
+        }
+
+        @Override
+        public Map<Integer, Integer> getNotSeen(final Collection<Integer> userIds) {
+            final Map<Integer, Integer> result = new HashMap<>();
+            for (final Integer userId : userIds) {
+                if (column.containsKey(userId)) {
+                    result.put(userId, column.get(userId).intValue());
+                }
+            }
+
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package app.utils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FileResponses.send of a file on disk, written to an output stream that
+ * only counts the bytes. The heap it allocates per request is measured by
+ * FileResponsesBenchmark.
+ */
+public class FileResponsesTest {
+
+    private static final int FILE_SIZE = 2 * 1024 * 1024;
+
+    private static File file;
+
+    @BeforeClass
+    public static void writeFile() throws IOException {
+        file = File.createTempFile("image", ".png");
+        final byte[] data = new byte[FILE_SIZE];
+        new Random(21).nextBytes(data);
+        try (final OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    @AfterClass
+    public static void deleteFile() {
+        if (null != file) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void sendsTheWholeFileOrTheRequestedRange() throws IOException {
+        final CountingResponse whole = new CountingResponse();
+        sendStreamed(new MockHttpServletRequest(), whole);
+        assertEquals(FILE_SIZE, whole.written);
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-199");
+        final CountingResponse range = new CountingResponse();
+        sendStreamed(request, range);
+        assertEquals(206, range.getStatus());
+        assertEquals(100, range.written);
+    }
+
+    private void sendStreamed(final MockHttpServletRequest request, final HttpServletResponse response) throws IOException {
+        FileResponses.send(request, response, new FileSystemResource(file), "image/png");
+    }
+
+    private static class CountingResponse extends HttpServletResponseWrapper {
+        private long written;
+
+        private CountingResponse() {
+            super(new MockHttpServletResponse());
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(final int b) {
+                    written++;
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) {
+                    written += len;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(final WriteListener writeListener) {
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package app.utils;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Property tests over random content. The scanner must agree with the
+ * regex-per-character parser it replaced wherever that parser was right,
+ * and differ only where it was wrong: a tag at the very start, empty tags
+ * and non-ASCII spaces.
+ */
+public class HashtagsTest {
+
+    private static final int RUNS = 20_000;
+    private static final String[] ASCII = {"#", "#", " ", "\t", "\n", "a", "b", "Z", "1", "_", "-", "\u00e9"};
+    private static final String[] UNICODE = {"#", " ", "\u00a0", "\u2003", "\u3000", "a", "\u00e9", "\u00df", "\u65e5\u672c", "\ud83d\ude00"};
+
+    @Test
+    public void matchesThePreviousParserOnAsciiWhitespace() {
+        final Random random = new Random(8);
+        for (int run = 0; run < RUNS; run++) {
+            // the previous parser only saw tags after a whitespace character
+            final String content = " " + randomContent(random, ASCII);
+            final Set<String> expected = legacyTags(content);
+            expected.remove("");
+
+            assertEquals(content, expected, new HashSet<>(Hashtags.names(content)));
+        }
+    }
+
+    @Test
+    public void findsATagAtTheStart() {
+        final Random random = new Random(9);
+        for (int run = 0; run < RUNS; run++) {
+            final String content = "#lead" + (random.nextBoolean() ? " " : "\u00a0") + randomContent(random, UNICODE);
+
+            assertEquals(content, "lead", Hashtags.find(content).get(0).getName());
+        }
+    }
+
+    @Test
+    public void offsetsPointAtTheTags() {
+        final Random random = new Random(10);
+        for (int run = 0; run < RUNS; run++) {
+            final String content = randomContent(random, UNICODE);
+            int previousEnd = 0;
+            for (final Hashtags.Hashtag tag : Hashtags.find(content)) {
+                final String name = tag.getName();
+                assertEquals(content, "#" + name, content.substring(tag.getStart(), tag.getEnd()));
+                assertFalse(content, name.isEmpty());
+                assertTrue(content, tag.getStart() >= previousEnd);
+                assertTrue(content, 0 == tag.getStart() || isSpace(content.codePointBefore(tag.getStart())));
+                assertTrue(content, tag.getEnd() == content.length()
+                        || '#' == content.charAt(tag.getEnd())
+                        || isSpace(content.codePointAt(tag.getEnd())));
+                name.codePoints().forEach(c -> assertTrue(content, '#' != c && !isSpace(c)));
+                previousEnd = tag.getEnd();
+            }
+        }
+    }
+
+    @Test
+    public void namesAreDistinctInOrderOfAppearance() {
+        final Random random = new Random(11);
+        for (int run = 0; run < RUNS; run++) {
+            final String content = randomContent(random, UNICODE);
+            final List<String> all = new ArrayList<>();
+            for (final Hashtags.Hashtag tag : Hashtags.find(content)) {
+                all.add(tag.getName());
+            }
+
+            assertEquals(content, new ArrayList<>(new LinkedHashSet<>(all)), new ArrayList<>(Hashtags.names(content)));
+        }
+    }
+
+    @Test
+    public void emptyContentHasNoTags() {
+        assertTrue(Hashtags.find(null).isEmpty());
+        assertTrue(Hashtags.find("").isEmpty());
+        assertTrue(Hashtags.find("#").isEmpty());
+        assertTrue(Hashtags.find("# #\u00a0#").isEmpty());
+    }
+
+    private static String randomContent(final Random random, final String[] alphabet) {
+        final StringBuilder content = new StringBuilder();
+        final int length = random.nextInt(40);
+        for (int i = 0; i < length; i++) {
+            content.append(alphabet[random.nextInt(alphabet.length)]);
+        }
+
+        return content.toString();
+    }
+
+    private static boolean isSpace(final int codePoint) {
+        return Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint);
+    }
+
+    /**
+     * UpdateService.getTagsFromContent as it was before the scanner.
+     */
+    static Set<String> legacyTags(final String content) {
+        final Set<String> tags = new HashSet<>();
+        final char[] c = content.toCharArray();
+        String tag = "";
+        for (int i = 0; i < c.length; ) {
+            if (Pattern.matches("\\s", "" + c[i])) {
+                if (i < c.length - 1 && '#' == c[i + 1]) {
+                    int j;
+                    for (j = i + 2; j < c.length && '#' != c[j] && !Pattern.matches("\\s", "" + c[j]); j++) {
+                        tag += c[j];
+                    }
+                    i = j;
+                    tags.add(tag);
+                    tag = "";
+                } else {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+
+        return tags;
+    }
+
+}
@@ -0,0 +1,155 @@
+package app.utils;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ImageScalerTest {
+
+    @Test
+    public void cropFillsTheBoxExactly() {
+        assertSize(100, 100, ImageScaler.scale(solid(1600, 900, BufferedImage.TYPE_INT_RGB, 0x336699), 100, 100, ImageScaler.Mode.CROP));
+        assertSize(200, 50, ImageScaler.scale(solid(300, 1000, BufferedImage.TYPE_INT_RGB, 0x336699), 200, 50, ImageScaler.Mode.CROP));
+        assertSize(64, 64, ImageScaler.scale(solid(33, 17, BufferedImage.TYPE_INT_RGB, 0x336699), 64, 64, ImageScaler.Mode.CROP));
+        assertSize(1, 1, ImageScaler.scale(solid(3001, 2999, BufferedImage.TYPE_INT_RGB, 0x336699), 1, 1, ImageScaler.Mode.CROP));
+    }
+
+    @Test
+    public void fitKeepsTheAspectRatioAndNeverUpscales() {
+        assertSize(400, 225, ImageScaler.scale(solid(1600, 900, BufferedImage.TYPE_INT_RGB, 0x336699), 400, 400, ImageScaler.Mode.FIT));
+        assertSize(120, 400, ImageScaler.scale(solid(900, 3000, BufferedImage.TYPE_INT_RGB, 0x336699), 400, 400, ImageScaler.Mode.FIT));
+        assertSize(50, 30, ImageScaler.scale(solid(50, 30, BufferedImage.TYPE_INT_RGB, 0x336699), 400, 400, ImageScaler.Mode.FIT));
+        assertSize(1, 400, ImageScaler.scale(solid(2, 4000, BufferedImage.TYPE_INT_RGB, 0x336699), 400, 400, ImageScaler.Mode.FIT));
+    }
+
+    @Test
+    public void outputHasAlphaOnlyWhenTheSourceHasIt() {
+        final int[] opaqueTypes = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_GRAY};
+        for (final int type : opaqueTypes) {
+            assertEquals(BufferedImage.TYPE_INT_RGB, ImageScaler.scale(solid(800, 600, type, 0x808080), 100, 100, ImageScaler.Mode.CROP).getType());
+        }
+        final int[] alphaTypes = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR};
+        for (final int type : alphaTypes) {
+            assertEquals(BufferedImage.TYPE_INT_ARGB, ImageScaler.scale(solid(800, 600, type, 0x80808080), 100, 100, ImageScaler.Mode.CROP).getType());
+        }
+    }
+
+    @Test
+    public void keepsAUniformColourOnEveryReadPath() {
+        final int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_BGR};
+        for (final int type : types) {
+            final BufferedImage scaled = ImageScaler.scale(solid(2000, 1500, type, 0x3c78b4), 100, 100, ImageScaler.Mode.CROP);
+            for (final int pixel : scaled.getRGB(0, 0, 100, 100, null, 0, 100)) {
+                assertClose(0xff3c78b4, pixel, 1);
+            }
+        }
+    }
+
+    @Test
+    public void transparentPixelsDoNotBleedTheirColour() {
+        for (final int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR}) {
+            // transparent green and opaque red stripes, 3 pixels wide
+            final BufferedImage source = new BufferedImage(1200, 1200, type);
+            for (int x = 0; x < 1200; x++) {
+                for (int y = 0; y < 1200; y++) {
+                    source.setRGB(x, y, 0 == (x / 3) % 2 ? 0x0000ff00 : 0xffff0000);
+                }
+            }
+
+            final BufferedImage scaled = ImageScaler.scale(source, 50, 50, ImageScaler.Mode.CROP);
+            for (final int pixel : scaled.getRGB(0, 0, 50, 50, null, 0, 50)) {
+                final int alpha = pixel >>> 24;
+                assertTrue(Integer.toHexString(pixel), 100 < alpha && alpha < 160);
+                assertClose(0xff0000, pixel & 0xffffff, 2);
+            }
+        }
+    }
+
+    @Test
+    public void keepsFullyTransparentImagesTransparent() {
+        final BufferedImage scaled = ImageScaler.scale(solid(900, 900, BufferedImage.TYPE_INT_ARGB, 0x00ffffff), 30, 30, ImageScaler.Mode.CROP);
+
+        for (final int pixel : scaled.getRGB(0, 0, 30, 30, null, 0, 30)) {
+            assertEquals(0, pixel >>> 24);
+        }
+    }
+
+    @Test
+    public void reducesByHalvingAndReturnsSmallImagesAsIs() {
+        final BufferedImage small = solid(300, 200, BufferedImage.TYPE_INT_RGB, 0x336699);
+        assertSame(small, ImageScaler.reduce(small, 200, 200));
+
+        final BufferedImage reduced = ImageScaler.reduce(solid(4000, 3000, BufferedImage.TYPE_3BYTE_BGR, 0x336699), 400, 400);
+        assertSize(1000, 750, reduced);
+        assertEquals(BufferedImage.TYPE_INT_RGB, reduced.getType());
+    }
+
+    @Test
+    public void reusedScratchImagesGiveTheSamePixels() throws Exception {
+        final BufferedImage source = gradient(1000, 800);
+        final BufferedImage unkept = ImageScaler.scale(source, 120, 90, ImageScaler.Mode.FIT);
+
+        // a worker thread that keeps its scratch images between calls
+        final BufferedImage[] scaled = new BufferedImage[2];
+        final Thread worker = new Thread(() -> {
+            ImageScaler.keepScratch();
+            scaled[0] = ImageScaler.scale(source, 120, 90, ImageScaler.Mode.FIT);
+            ImageScaler.scale(gradient(3000, 500), 40, 40, ImageScaler.Mode.CROP);
+            scaled[1] = ImageScaler.scale(source, 120, 90, ImageScaler.Mode.FIT);
+        });
+        worker.start();
+        worker.join();
+
+        for (final BufferedImage kept : scaled) {
+            assertSize(unkept.getWidth(), unkept.getHeight(), kept);
+            for (int x = 0; x < unkept.getWidth(); x++) {
+                for (int y = 0; y < unkept.getHeight(); y++) {
+                    assertEquals(unkept.getRGB(x, y), kept.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    private static BufferedImage solid(final int width, final int height, final int type, final int argb) {
+        final BufferedImage image = new BufferedImage(width, height, type);
+        final Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setColor(new Color(argb, true));
+            g2d.fillRect(0, 0, width, height);
+        } finally {
+            g2d.dispose();
+        }
+
+        return image;
+    }
+
+    private static BufferedImage gradient(final int width, final int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | ((x + y) & 0xff));
+            }
+        }
+
+        return image;
+    }
+
+    private static void assertSize(final int width, final int height, final BufferedImage image) {
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+
+    private static void assertClose(final int expected, final int actual, final int tolerance) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            final int difference = Math.abs(((expected >>> shift) & 0xff) - ((actual >>> shift) & 0xff));
+            assertTrue(Integer.toHexString(expected) + " vs " + Integer.toHexString(actual), difference <= tolerance);
+        }
+    }
+
+}
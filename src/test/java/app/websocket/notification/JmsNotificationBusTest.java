@@ -0,0 +1,136 @@
+package app.websocket.notification;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import javax.jms.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Two application contexts, standing for two backend nodes, connect to one
+ * broker over TCP. A frame published on either node reaches the bus
+ * listeners of both.
+ */
+public class JmsNotificationBusTest {
+
+    private static final String TOPIC = "notifications";
+
+    private BrokerService broker;
+    private String brokerUrl;
+    private final List<AnnotationConfigApplicationContext> nodes = new ArrayList<>();
+
+    @Before
+    public void startBroker() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("notifications-test");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.addConnector("tcp://localhost:0");
+        broker.start();
+        brokerUrl = broker.getTransportConnectors().get(0).getPublishableConnectString();
+    }
+
+    @After
+    public void stop() throws Exception {
+        for (final AnnotationConfigApplicationContext node : nodes) {
+            node.close();
+        }
+        broker.stop();
+    }
+
+    @Test
+    public void framesPublishedOnOneNodeReachEveryNode() throws Exception {
+        final BlockingQueue<Delivery> first = new LinkedBlockingQueue<>();
+        final BlockingQueue<Delivery> second = new LinkedBlockingQueue<>();
+        node(first);
+        node(second);
+        awaitConsumers(2);
+
+        nodes.get(0).getBean(NotificationBus.class).publish(new Delivery(new int[]{1, 2}, new int[]{10, 20}, "{}"));
+        nodes.get(1).getBean(NotificationBus.class).publish(new Delivery(new int[]{3}, null, "{\"count\":1}"));
+
+        for (final BlockingQueue<Delivery> received : Arrays.asList(first, second)) {
+            final Map<String, Delivery> byPayload = new HashMap<>();
+            for (int i = 0; i < 2; i++) {
+                final Delivery delivery = received.poll(5, TimeUnit.SECONDS);
+                assertNotNull(delivery);
+                byPayload.put(delivery.getPayload(), delivery);
+            }
+            assertArrayEquals(new int[]{1, 2}, byPayload.get("{}").getUserIds());
+            assertArrayEquals(new int[]{10, 20}, byPayload.get("{}").getNotificationIds());
+            assertArrayEquals(new int[]{3}, byPayload.get("{\"count\":1}").getUserIds());
+            assertNull(byPayload.get("{\"count\":1}").getNotificationIds());
+            assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void publishesNonPersistentMessagesOverOneConnection() throws Exception {
+        node(new LinkedBlockingQueue<>());
+        final Connection connection = new ActiveMQConnectionFactory(brokerUrl).createConnection();
+        try {
+            connection.start();
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageConsumer consumer = session.createConsumer(session.createTopic(TOPIC));
+            awaitConsumers(2);
+
+            final NotificationBus bus = nodes.get(0).getBean(NotificationBus.class);
+            bus.publish(new Delivery(new int[]{0}, null, "{}"));
+            assertNotNull(consumer.receive(5_000));
+            final int connections = broker.getTransportConnectors().get(0).getConnections().size();
+            for (int i = 1; i <= 50; i++) {
+                bus.publish(new Delivery(new int[]{i}, null, "{}"));
+            }
+            for (int i = 1; i <= 50; i++) {
+                final Message message = consumer.receive(5_000);
+                assertNotNull(message);
+                assertEquals(DeliveryMode.NON_PERSISTENT, message.getJMSDeliveryMode());
+            }
+            assertEquals(connections, broker.getTransportConnectors().get(0).getConnections().size());
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void node(final BlockingQueue<Delivery> received) {
+        final AnnotationConfigApplicationContext node = new AnnotationConfigApplicationContext();
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("notification.bus", "jms");
+        properties.put("notification.bus.topic", TOPIC);
+        node.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        node.getBeanFactory().registerSingleton("connectionFactory", new ActiveMQConnectionFactory(brokerUrl));
+        node.register(JmsNotificationBus.class);
+        node.refresh();
+        node.getBean(NotificationBus.class).subscribe(received::add);
+        nodes.add(node);
+    }
+
+    private void awaitConsumers(final int consumers) throws Exception {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            final Set<Destination> topics = broker.getBroker().getDestinations(new ActiveMQTopic(TOPIC));
+            if (!topics.isEmpty() && consumers == topics.iterator().next().getConsumers().size()) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("topic consumers did not subscribe");
+    }
+
+}
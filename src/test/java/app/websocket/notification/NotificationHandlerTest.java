@@ -0,0 +1,153 @@
+package app.websocket.notification;
+
+import app.http.pojos.CustomUserDetails;
+import app.http.pojos.NotificationResponse;
+import app.pojo.Notification;
+import app.pojo.NotificationType;
+import app.pojo.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Broadcast frames, spliced from the shared payload and each recipient's
+ * fields, parsed back with Jackson.
+ */
+public class NotificationHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OutboundDispatcher outbound = new OutboundDispatcher(256, OverflowPolicy.DROP_OLDEST, 1, 10_000);
+    private final Map<String, List<TextMessage>> sent = new HashMap<>();
+    private final InMemoryNotificationBus bus = new InMemoryNotificationBus();
+    private final NotificationHandler handler = new NotificationHandler(outbound, bus) {
+        @Override
+        protected void sendMessage(final WebSocketSession session, final TextMessage frame) {
+            sent.computeIfAbsent(session.getId(), id -> new ArrayList<>()).add(frame);
+        }
+    };
+
+    @After
+    public void shutdown() {
+        outbound.shutdown();
+    }
+
+    @Test
+    public void everyRecipientGetsTheSharedPayloadWithItsOwnFields() throws Exception {
+        connect("a", 1);
+        connect("b", 2);
+        connect("c", 2);
+        final NotificationResponse shared = response();
+
+        handler.broadcast(shared, Arrays.asList(target(10, 1), target(11, 2), target(12, 3)));
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), sent.keySet());
+        assertEquals(expected(shared, 10, 1), parse(sent.get("a")));
+        assertEquals(expected(shared, 11, 2), parse(sent.get("b")));
+        assertSame(sent.get("b").get(0), sent.get("c").get(0));
+    }
+
+    @Test
+    public void anEmptySharedPayloadLeavesOnlyTheRecipientsFields() throws Exception {
+        final String frame = NotificationHandler.frame(new StringBuilder(), 10, 1, NotificationHandler.sharedFields("{}"));
+
+        final JsonNode parsed = objectMapper.readTree(frame);
+        assertEquals(2, parsed.size());
+        assertEquals(10, parsed.get("id").asInt());
+        assertEquals(1, parsed.get("toUserId").asInt());
+    }
+
+    @Test
+    public void aFrameWithoutPerUserFieldsIsSharedByAllSessions() {
+        connect("a", 1);
+        connect("b", 2);
+
+        bus.publish(new Delivery(new int[]{1, 2}, null, "{\"type\":\"PING\"}"));
+
+        assertEquals("{\"type\":\"PING\"}", sent.get("a").get(0).getPayload());
+        assertSame(sent.get("a").get(0), sent.get("b").get(0));
+    }
+
+    private void connect(final String sessionId, final int userId) {
+        final UsernamePasswordAuthenticationToken principal = new UsernamePasswordAuthenticationToken(
+                new CustomUserDetails(userId, "user" + userId, "p", Collections.emptyList()),
+                null
+        );
+        final WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(
+                NotificationHandlerTest.class.getClassLoader(),
+                new Class[]{WebSocketSession.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return sessionId;
+                        case "isOpen":
+                            return true;
+                        case "getPrincipal":
+                            return principal;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return sessionId;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+        );
+        try {
+            handler.afterConnectionEstablished(session);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JsonNode parse(final List<TextMessage> frames) throws Exception {
+        assertEquals(1, frames.size());
+
+        return objectMapper.readTree(frames.get(0).getPayload());
+    }
+
+    private JsonNode expected(final NotificationResponse shared, final int id, final int toUserId) throws Exception {
+        final ObjectNode response = (ObjectNode) objectMapper.readTree(objectMapper.writeValueAsString(shared));
+        response.put("id", id);
+        response.put("toUserId", toUserId);
+
+        return response;
+    }
+
+    private static NotificationResponse response() {
+        final User from = new User();
+        from.setId(5);
+        from.setUsername("poster \"quoted\" caf\u00e9");
+
+        final NotificationResponse response = new NotificationResponse();
+        response.setFromUserId(5);
+        response.setRelId(100);
+        response.setType(NotificationType.UPDATE_LIKE);
+        response.setCreatedAt(1_500_000_000L);
+        response.setActorCount(1);
+        response.setFrom(from);
+
+        return response;
+    }
+
+    private static Notification target(final int id, final int toUserId) {
+        final Notification notification = new Notification();
+        notification.setId(id);
+        notification.setToUserId(toUserId);
+
+        return notification;
+    }
+
+}
@@ -0,0 +1,221 @@
+package app.websocket.notification;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Overflow policies of the outbound queues. Every test holds the first send
+ * of a session until it has queued more frames, the way a client that
+ * stopped reading does.
+ */
+public class OutboundDispatcherTest {
+
+    private static final int QUEUE_SIZE = 4;
+
+    private final List<String> log = Collections.synchronizedList(new ArrayList<>());
+    private OutboundDispatcher dispatcher;
+
+    @After
+    public void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestFrames() throws InterruptedException {
+        dispatcher = new OutboundDispatcher(QUEUE_SIZE, OverflowPolicy.DROP_OLDEST, 1, 10_000);
+        final Client client = new Client("a");
+        dispatcher.open(client.session);
+
+        send(client, 0);
+        client.awaitSending();
+        for (int i = 1; i <= 10; i++) {
+            send(client, i);
+        }
+        client.release();
+        client.awaitReceived(5);
+
+        assertEquals(Arrays.asList("a0", "a7", "a8", "a9", "a10"), client.received);
+        assertEquals(6, metric("websocket.outbound.dropped"));
+        assertEquals(0, metric("websocket.outbound.queued"));
+        assertNull(client.closeStatus);
+    }
+
+    @Test
+    public void closePolicyClosesOnTheSenderThreadAfterTheCurrentSend() throws InterruptedException {
+        dispatcher = new OutboundDispatcher(QUEUE_SIZE, OverflowPolicy.CLOSE, 1, 10_000);
+        final Client client = new Client("a");
+        dispatcher.open(client.session);
+
+        send(client, 0);
+        client.awaitSending();
+        for (int i = 1; i <= QUEUE_SIZE + 1; i++) {
+            send(client, i);
+        }
+        assertFalse(client.closed.await(100, TimeUnit.MILLISECONDS));
+        client.release();
+
+        assertTrue(client.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, client.closeStatus);
+        assertTrue(client.closeThread, client.closeThread.startsWith("ws-sender-"));
+        assertFalse(client.overlapped.get());
+        send(client, 6);
+        assertEquals(Collections.singletonList("a0"), client.received);
+        assertEquals(QUEUE_SIZE + 1, metric("websocket.outbound.dropped"));
+        assertEquals(1, metric("websocket.outbound.closed.slow"));
+        assertEquals(0, metric("websocket.outbound.sessions"));
+        assertEquals(0, metric("websocket.outbound.queued"));
+    }
+
+    @Test
+    public void closesASessionStuckInASendLongerThanTheLimit() throws InterruptedException {
+        dispatcher = new OutboundDispatcher(QUEUE_SIZE, OverflowPolicy.DROP_OLDEST, 1, 100);
+        final Client client = new Client("a");
+        dispatcher.open(client.session);
+
+        send(client, 0);
+        client.awaitSending();
+        send(client, 1);
+        Thread.sleep(200);
+        send(client, 2);
+        assertFalse(client.closed.await(100, TimeUnit.MILLISECONDS));
+        client.release();
+
+        assertTrue(client.closed.await(5, TimeUnit.SECONDS));
+        assertTrue(client.closeThread, client.closeThread.startsWith("ws-sender-"));
+        assertFalse(client.overlapped.get());
+        assertEquals(Collections.singletonList("a0"), client.received);
+        assertEquals(2, metric("websocket.outbound.dropped"));
+    }
+
+    @Test
+    public void aBusySessionYieldsToOthers() throws InterruptedException {
+        dispatcher = new OutboundDispatcher(1_000, OverflowPolicy.DROP_OLDEST, 1, 10_000);
+        final Client busy = new Client("a");
+        final Client other = new Client("b");
+        dispatcher.open(busy.session);
+        dispatcher.open(other.session);
+        other.release();
+
+        send(busy, 0);
+        busy.awaitSending();
+        for (int i = 1; i < 200; i++) {
+            send(busy, i);
+        }
+        send(other, 0);
+        busy.release();
+        busy.awaitReceived(200);
+        other.awaitReceived(1);
+
+        assertEquals(OutboundDispatcher.MAX_BATCH, log.indexOf("b0"));
+        assertEquals(201, metric("websocket.outbound.sent"));
+    }
+
+    private void send(final Client client, final int frame) {
+        dispatcher.send(client.session, new TextMessage(client.id + frame));
+    }
+
+    private long metric(final String name) {
+        for (final Metric<?> metric : dispatcher.metrics()) {
+            if (name.equals(metric.getName())) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private class Client {
+        private final String id;
+        private final WebSocketSession session;
+        private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final AtomicBoolean inSend = new AtomicBoolean();
+        private final AtomicBoolean overlapped = new AtomicBoolean();
+        private volatile CloseStatus closeStatus;
+        private volatile String closeThread;
+
+        private Client(final String id) {
+            this.id = id;
+            this.session = (WebSocketSession) Proxy.newProxyInstance(
+                    OutboundDispatcherTest.class.getClassLoader(),
+                    new Class[]{WebSocketSession.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getId":
+                                return id;
+                            case "isOpen":
+                                return null == closeStatus;
+                            case "sendMessage":
+                                receive((TextMessage) args[0]);
+                                return null;
+                            case "close":
+                                close(null == args ? CloseStatus.NORMAL : (CloseStatus) args[0]);
+                                return null;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "toString":
+                                return id;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+            );
+        }
+
+        private void receive(final TextMessage message) throws InterruptedException {
+            if (!inSend.compareAndSet(false, true)) {
+                overlapped.set(true);
+            }
+            sending.countDown();
+            released.await();
+            received.add(message.getPayload());
+            log.add(message.getPayload());
+            inSend.set(false);
+        }
+
+        private void close(final CloseStatus status) {
+            if (inSend.get()) {
+                overlapped.set(true);
+            }
+            closeThread = Thread.currentThread().getName();
+            closeStatus = status;
+            closed.countDown();
+        }
+
+        private void awaitSending() throws InterruptedException {
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+        }
+
+        private void release() {
+            released.countDown();
+        }
+
+        private void awaitReceived(final int frames) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5_000;
+            while (received.size() < frames && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(frames, received.size());
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package app.websocket.notification;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * NotificationHandler without sessions that records the unread counts it
+ * is asked to push, for unit tests outside this package.
+ */
+public class RecordingNotificationHandler extends NotificationHandler {
+
+    private final List<Map<Integer, Integer>> sentCounts = new CopyOnWriteArrayList<>();
+
+    public RecordingNotificationHandler() {
+        super(null, new InMemoryNotificationBus());
+    }
+
+    @Override
+    public void sendCounts(final Map<Integer, Integer> countByUser) {
+        sentCounts.add(countByUser);
+    }
+
+    public List<Map<Integer, Integer>> getSentCounts() {
+        return sentCounts;
+    }
+
+}
@@ -0,0 +1,166 @@
+package app.websocket.notification;
+
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tens of thousands of sessions of a few thousand users connect and
+ * disconnect on several threads while other threads deliver to random
+ * users, so sessions of the same user are added and removed concurrently.
+ */
+public class SessionRegistryTest {
+
+    private static final int USERS = 2_000;
+    private static final int SESSIONS = 40_000;
+    private static final int CONNECTORS = 8;
+    private static final int RECEIVERS = 4;
+
+    @Test
+    public void staysConsistentUnderConcurrentConnectsDisconnectsAndDeliveries() throws Exception {
+        final SessionRegistry registry = new SessionRegistry();
+        final List<WebSocketSession> sessions = new ArrayList<>(SESSIONS);
+        final Map<String, Integer> owners = new HashMap<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            final WebSocketSession session = session("s" + i);
+            sessions.add(session);
+            owners.put(session.getId(), userOf(i));
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(CONNECTORS + RECEIVERS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean connecting = new AtomicBoolean(true);
+        final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        final AtomicLong delivered = new AtomicLong();
+        final List<Future<?>> connectors = new ArrayList<>();
+        for (int t = 0; t < CONNECTORS; t++) {
+            final int first = t;
+            connectors.add(pool.submit(() -> {
+                await(start);
+                // each connector takes one of CONNECTORS neighbouring sessions,
+                // which belong to the same user
+                for (int i = first; i < SESSIONS; i += CONNECTORS) {
+                    registry.register(userOf(i), sessions.get(i));
+                }
+                for (int i = first; i < SESSIONS; i += CONNECTORS) {
+                    if (closes(i)) {
+                        check(errors, userOf(i) == registry.unregister(sessions.get(i)), "unregister returned another user");
+                        check(errors, null == registry.unregister(sessions.get(i)), "closed twice");
+                    }
+                }
+            }));
+        }
+        for (int t = 0; t < RECEIVERS; t++) {
+            final Random random = new Random(t);
+            pool.submit(() -> {
+                await(start);
+                while (connecting.get()) {
+                    final int userId = random.nextInt(USERS);
+                    for (final WebSocketSession session : registry.getSessions(userId)) {
+                        check(errors, userId == owners.get(session.getId()), "delivered to a session of another user");
+                        delivered.incrementAndGet();
+                    }
+                    registry.hasSessions(userId);
+                }
+            });
+        }
+
+        start.countDown();
+        for (final Future<?> connector : connectors) {
+            connector.get(60, TimeUnit.SECONDS);
+        }
+        connecting.set(false);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertTrue(0 < delivered.get());
+        final Map<Integer, Set<WebSocketSession>> open = new HashMap<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            if (!closes(i)) {
+                open.computeIfAbsent(userOf(i), id -> new HashSet<>()).add(sessions.get(i));
+            }
+        }
+        assertEquals(open.values().stream().mapToInt(Set::size).sum(), registry.getSessionCount());
+        assertEquals(open.size(), registry.getUserCount());
+        for (int userId = 0; userId < USERS; userId++) {
+            final Set<WebSocketSession> expected = open.getOrDefault(userId, Collections.emptySet());
+            assertEquals(expected, new HashSet<>(registry.getSessions(userId)));
+            assertEquals(!expected.isEmpty(), registry.hasSessions(userId));
+        }
+    }
+
+    @Test
+    public void dropsAUserWithTheLastSession() {
+        final SessionRegistry registry = new SessionRegistry();
+        final WebSocketSession first = session("a");
+        final WebSocketSession second = session("b");
+        registry.register(7, first);
+        registry.register(7, second);
+
+        assertEquals(Integer.valueOf(7), registry.unregister(first));
+        assertTrue(registry.hasSessions(7));
+        assertEquals(Integer.valueOf(7), registry.unregister(second));
+        assertFalse(registry.hasSessions(7));
+        assertTrue(registry.getSessions(7).isEmpty());
+        assertNull(registry.unregister(second));
+        assertEquals(0, registry.getUserCount());
+        assertEquals(0, registry.getSessionCount());
+    }
+
+    private static int userOf(final int session) {
+        return session / CONNECTORS % USERS;
+    }
+
+    // all sessions of even users, so their sets are dropped while other
+    // connectors still add to them, and every third session of odd users
+    private static boolean closes(final int session) {
+        return 0 == userOf(session) % 2 || 0 == session % 3;
+    }
+
+    private static void check(final Queue<Throwable> errors, final boolean condition, final String message) {
+        if (!condition) {
+            errors.add(new AssertionError(message));
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static WebSocketSession session(final String id) {
+        return (WebSocketSession) Proxy.newProxyInstance(
+                SessionRegistryTest.class.getClassLoader(),
+                new Class[]{WebSocketSession.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return id;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+        );
+    }
+
+}